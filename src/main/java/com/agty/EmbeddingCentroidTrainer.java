@@ -0,0 +1,104 @@
+package com.agty;
+
+import com.agty.scoring.EmbeddingClassifier;
+import com.agty.scoring.EmbeddingVectorCache;
+import com.agty.utils.GlobalConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the label centroids of the embedding classifier (see EmbeddingClassifier) from labelled corpora.
+ *
+ * Usage: EmbeddingCentroidTrainer [--out data/embedding_centroids.json] <label>:<path> ...
+ * e.g. job:alerts.mbox newsletter:newsletters/ promo:promos.mbox job:src/main/resources/veri_negativi.txt
+ * Each path is an mbox, EML directory, EmailInfo .json or run log .txt (see LabelledCorpus).
+ * The centroid of a label is the normalized mean of the normalized embeddings of its emails.
+ */
+public class EmbeddingCentroidTrainer {
+
+    public static void main(String[] args) throws IOException {
+        String output = GlobalConfig.EMBEDDING_CENTROIDS_FILE;
+        Map<String, List<String>> corpora = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--out".equals(args[i])) {
+                output = args[++i];
+            } else if (args[i].indexOf(':') > 0) {
+                String label = args[i].substring(0, args[i].indexOf(':'));
+                corpora.computeIfAbsent(label, k -> new ArrayList<>()).add(args[i].substring(label.length() + 1));
+            } else {
+                System.err.println("Usage: EmbeddingCentroidTrainer [--out file] <label>:<path> ...");
+                return;
+            }
+        }
+        if (!corpora.containsKey(EmbeddingClassifier.JOB_LABEL)) {
+            System.err.println("A '" + EmbeddingClassifier.JOB_LABEL + ":<path>' corpus is required");
+            return;
+        }
+
+        EmbeddingVectorCache cache = EmbeddingClassifier.openDefaultCache();
+        EmbeddingClassifier embedder = new EmbeddingClassifier(Map.of(), cache);
+        Map<String, List<float[]>> vectors = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> corpus : corpora.entrySet()) {
+            List<float[]> labelVectors = vectors.computeIfAbsent(corpus.getKey(), k -> new ArrayList<>());
+            for (String path : corpus.getValue()) {
+                int before = labelVectors.size();
+                LabelledCorpus.forEach(Paths.get(path), (messageId, subject, body, from) ->
+                        labelVectors.add(embedder.embed(messageId, subject, body)));
+                System.out.println("📚 " + corpus.getKey() + ": " + (labelVectors.size() - before) + " emails from " + path);
+            }
+        }
+
+        Map<String, float[]> centroids = new LinkedHashMap<>();
+        for (Map.Entry<String, List<float[]>> label : vectors.entrySet()) {
+            float[] sum = new float[EmbeddingClassifier.DIMENSION];
+            for (float[] vector : label.getValue()) {
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += vector[i];
+                }
+            }
+            centroids.put(label.getKey(), EmbeddingClassifier.normalize(sum));
+        }
+
+        // Nearest-centroid accuracy on the training emails, as a sanity check of the labels
+        int correct = 0;
+        int total = 0;
+        for (Map.Entry<String, List<float[]>> label : vectors.entrySet()) {
+            for (float[] vector : label.getValue()) {
+                total++;
+                if (label.getKey().equals(nearest(centroids, vector))) {
+                    correct++;
+                }
+            }
+        }
+        System.out.println(String.format("📊 Nearest-centroid accuracy on training emails: %.1f%% (%d/%d)",
+                total > 0 ? 100.0 * correct / total : 0, correct, total));
+
+        EmbeddingClassifier.saveCentroids(centroids, new File(output));
+        System.out.println("💾 Centroids saved to " + output);
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    private static String nearest(Map<String, float[]> centroids, float[] vector) {
+        String best = null;
+        double bestSimilarity = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<String, float[]> centroid : centroids.entrySet()) {
+            double similarity = 0;
+            for (int i = 0; i < vector.length; i++) {
+                similarity += vector[i] * centroid.getValue()[i];
+            }
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = centroid.getKey();
+            }
+        }
+        return best;
+    }
+}
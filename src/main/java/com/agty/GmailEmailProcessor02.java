@@ -1,24 +1,49 @@
 package com.agty;
 
 
+import com.agty.mail.GmailRawSearchBackend;
+import com.agty.mail.JavaMailSearchBackend;
+import com.agty.mail.MailSearchBackend;
+import com.agty.mail.MessageIdentityIndex;
+import com.agty.mail.MessagePrefetcher;
+import com.agty.mail.MessageSource;
+import com.agty.mail.MimeMessageDecoder;
+import com.agty.mail.OrderedParallelProcessor;
+import com.agty.mail.RawMessageCache;
+import com.agty.mail.SearchQuery;
+import com.agty.mail.UidCheckpointStore;
+import com.agty.scoring.CompiledRules;
+import com.agty.scoring.EmbeddingClassifier;
+import com.agty.scoring.JobOfferClassifier;
+import com.agty.scoring.NormalizedText;
+import com.agty.scoring.ScoringRuleBook;
+import com.agty.scoring.SenderClassifier;
+import com.agty.store.RecordSchemas;
+import com.agty.store.RecordStore;
 import com.agty.utils.EmailStaticLib;
+import com.agty.utils.JsonMappers;
 import com.agty.utils.LLMCostCalculator;
 import com.agty.utils.LLMUsageInfo;
 import com.agty.utils.OpenAiRESTApiCaller;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import javax.mail.*;
 import javax.mail.Folder;
 import javax.mail.internet.*;
-import javax.mail.search.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.agty.utils.EmailStaticLib.findDraftsFolder;
+import static com.agty.utils.GlobalConfig.CLASSIFIER_MIN_PROBABILITY;
 import static com.agty.utils.GlobalConfig.DEV_MODE;
+import static com.agty.utils.GlobalConfig.IMAP_INCREMENTAL_SYNC;
+import static com.agty.utils.GlobalConfig.IMAP_SEARCH_BACKEND;
+import static com.agty.utils.GlobalConfig.LLM_MAX_CONCURRENCY;
+import static com.agty.utils.GlobalConfig.SCORING_MAX_IN_FLIGHT;
+import static com.agty.utils.GlobalConfig.SCORING_MODE;
+import static com.agty.utils.GlobalConfig.SCORING_PARALLEL;
 
 
 public class GmailEmailProcessor02 {
@@ -27,62 +52,22 @@ public class GmailEmailProcessor02 {
     private final String agentId;
     private final LLMCostCalculator.CostSummary costSummary;
 
-    // Topic-related keywords
-    private static final Map<String, String[]> TOPIC_KEYWORDS = new HashMap<>();
-
     // Important job-related domains/senders (TRUSTED JOB PLATFORMS)
-    public static String[] SENDER_DOMAIN_NAMES = {
-        "linkedin.com", "indeed.com", "glassdoor.com", "monster.com", "hellowork.com", "apec.fr", "cadremploi.fr",
-        "welcometothejungle.com", "angellist.com", "hired.com", "triplebyte.com", "talent.io",
-        "dice.com", "ziprecruiter.com", "careerbuilder.com", "workday.com",
-        "greenhouse.io", "lever.co", "smartrecruiters.com", "jobs.lever.co", "tekkit.io"
-    };
-
-    // NON-JOB domains (newsletters, events, promotions, etc.) - AUTO-REJECT
-    public static String[] NON_JOB_SENDER_DOMAIN_NAMES = {
-        // Event/Meetup platforms
-        "meetup.com", "eventbrite.com", "luma.co",
-        // Newsletter platforms
-        "substack.com", "beehiiv.com", "ghost.io",
-        // E-commerce and promotions
-        "darty.com", "fnac.com", "amazon.fr", "cdiscount.com", "news.darty.com",
-        "bolt.eu", "uber.com", "deliveroo.com", "skyscanner.com",
-        // Financial/Investment
-        "estateguru.co", "boursorama.fr", "fortuneo.fr", "ca-des-savoie.fr",
-        // Education/Training (not job offers)
-        "mygreatlearning.com", "coursera.org", "udemy.com", "edx.org",
-        // Social/Networking (non-job)
-        "facebook.com", "twitter.com", "instagram.com"
-    };
-
-    static {
-        // Initialize topic keywords - FOCUSED ON ACTUAL JOB OFFERS, NOT NEWS/MARKET INFO
-        // IMPORTANT: First 5 keywords are used in IMAP search - include multilingual terms!
-        TOPIC_KEYWORDS.put("job", new String[]{
-            // High-priority offer keywords (multilingual - used in IMAP search)
-            "offer", "offre", "opportunity", "poste", "apply",
-            // Additional offer keywords
-            "application", "interview", "vacancy", "hiring",
-            // Position-specific keywords
-            "position", "role", "opening",
-            // Recruiter/candidate keywords
-            "candidate", "recruiter", "recruitment",
-            // French additional keywords
-            "candidature", "recrutement",
-            // Italian equivalents
-            "candidato", "opportunità", "posizione"
-        });
-
-        TOPIC_KEYWORDS.put("freelance", new String[]{
-            "freelance", "contract", "consultant", "project", "gig",
-            "independent", "contractor", "remote work", "consulting"
-        });
-
-        TOPIC_KEYWORDS.put("internship", new String[]{
-            "internship", "intern", "stage", "stagiaire", "trainee",
-            "apprenticeship", "student position"
-        });
-    }
+    // and NON-JOB domains (newsletters, events, promotions, etc.) - AUTO-REJECT
+    // Both lists are defined in the scoring rules file (see ScoringRuleBook) and reloaded with it: read them
+    // from ScoringRuleBook.getDefault().current(). These copies keep the values at class load, for CadremployFilterTest.
+    @Deprecated
+    public static String[] SENDER_DOMAIN_NAMES = ScoringRuleBook.getDefault().current().getTrustedSenders();
+    @Deprecated
+    public static String[] NON_JOB_SENDER_DOMAIN_NAMES = ScoringRuleBook.getDefault().current().getNonJobSenders();
+
+    // Score given to an email with classifier probability 1.0 (rules scores of real offers are around 10-40)
+    private static final int CLASSIFIER_SCORE_SCALE = 20;
+
+    // Order of the results: relevance score, then most recent first
+    private static final Comparator<EmailInfo> BY_RELEVANCE = Comparator
+            .comparingInt(EmailInfo::getRelevanceScore).reversed()
+            .thenComparing(EmailInfo::getSentDate, Comparator.nullsLast(Comparator.reverseOrder()));
 
     public GmailEmailProcessor02(String username, String password, String agentId) {
         this.username = username;
@@ -121,10 +106,12 @@ public class GmailEmailProcessor02 {
         }
 
         // Load existing emails from file if incremental saving is enabled
-        List<EmailInfo> existingEmails = new ArrayList<>();
+        ExistingEmails existing = new ExistingEmails();
+        RecordStore<EmailInfo> emailStore = null;
         if (outputFilePath != null) {
-            existingEmails = loadExistingEmails(outputFilePath);
-            System.out.println("📂 Loaded " + existingEmails.size() + " existing emails from file");
+            emailStore = openStore(outputFilePath);
+            existing = loadExistingEmails(emailStore, maxResults);
+            System.out.println("📂 Loaded " + existing.count + " existing emails from file");
         }
 
         System.out.println("Connecting to Gmail IMAP server...");
@@ -132,6 +119,7 @@ public class GmailEmailProcessor02 {
         props.put("mail.store.protocol", "imaps");
         props.put("mail.imaps.host", "imap.gmail.com");
         props.put("mail.imaps.port", "993");
+        props.put("mail.imaps.peek", "true");  // fetch bodies with BODY.PEEK, never touch \Seen
 
         Session session = Session.getInstance(props, new Authenticator() {
             @Override
@@ -148,138 +136,274 @@ public class GmailEmailProcessor02 {
         inbox.open(Folder.READ_ONLY);
         System.out.println("Opened INBOX (total messages: " + inbox.getMessageCount() + ")");
 
-        // Build search term
-        System.out.println("Building search query for topic: " + topic + " (last " + daysBack + " days)...");
-        SearchTerm searchTerm = buildTopicSearchTerm(topic, daysBack, specificSenders);
+        // Incremental sync: only look at UIDs above the checkpoint stored next to the history file
+        UidCheckpointStore checkpoints = null;
+        String checkpointKey = null;
+        long uidValidity = 0;
+        long uidNext = 0;
+        long lastUid = 0;
+        if (outputFilePath != null && IMAP_INCREMENTAL_SYNC) {
+            UIDFolder uidInbox = (UIDFolder) inbox;
+            checkpoints = UidCheckpointStore.forHistoryFile(outputFilePath);
+            checkpointKey = buildCheckpointKey(inbox.getFullName(), topic, specificSenders);
+            uidValidity = uidInbox.getUIDValidity();
+            uidNext = uidInbox.getUIDNext();
+            lastUid = checkpoints.getLastUid(checkpointKey, uidValidity);
+        }
 
         // Search messages
-        System.out.println("Executing IMAP search...with search terms=" + searchTerm);
-        Message[] messages = inbox.search(searchTerm);
+        System.out.println("Building search query for topic: " + topic + " (last " + daysBack + " days)...");
+        CompiledRules rules = ScoringRuleBook.getDefault().current();
+        SearchQuery query = new SearchQuery(rules.getTopicKeywords(topic),
+                specificSenders, rules.getTrustedSenders(), daysBack, lastUid);
+        Message[] messages = searchMessages(inbox, query);
         System.out.println("Found " + messages.length + " messages matching search criteria");
 
         // Convert to EmailInfo and sort by relevance
         System.out.println("Processing and scoring messages...");
-        List<EmailInfo> emailInfos = new ArrayList<>(existingEmails);  // Start with existing emails
+        List<EmailInfo> emailInfos = existing.best;  // Start with the existing emails that can be returned
+        MessageIdentityIndex seen = existing.seen;
         int processed = 0;
         int newEmailsAdded = 0;
         int maxCount=10000;
         if (DEV_MODE) {
             maxCount=5;
         }
-        for (Message message : messages) {
-            if (processed >=maxCount) {
-                System.out.println("\n🛑 STOP - reached " + maxCount + " processed messages (DEV MODE limit)");
-                break;
+        // One bulk FETCH per chunk instead of one round-trip per getter and message
+        MessagePrefetcher.prefetch(inbox, messages.length > maxCount ? Arrays.copyOf(messages, maxCount + 1) : messages);
+
+        long highestUid = lastUid;
+        long stopUid = -1;
+        String scoringTopic = topic;
+        RecordStore<EmailInfo> historyStore = emailStore;
+        // Messages are decoded and scored concurrently, but collected (dedup, save, logs) in search order
+        ScoringProgress progress = new ScoringProgress(Math.min(messages.length, maxCount), existing.count);
+        try (OrderedParallelProcessor<ScoredMessage> pipeline = new OrderedParallelProcessor<>(
+                SCORING_PARALLEL, SCORING_MAX_IN_FLIGHT,
+                scored -> collectScored(scored, emailInfos, seen, historyStore, progress))) {
+            for (Message message : messages) {
+                long uid = checkpoints != null ? ((UIDFolder) inbox).getUID(message) : -1;
+                if (processed >=maxCount) {
+                    System.out.println("\n🛑 STOP - reached " + maxCount + " processed messages (DEV MODE limit)");
+                    stopUid = uid;
+                    break;
+                }
+                highestUid = Math.max(highestUid, uid);
+
+                processed++;
+                pipeline.submit(() -> scoreMessage(message, uid, scoringTopic));
             }
+        }
+        newEmailsAdded = progress.newEmailsAdded;
+        List<EmailInfo> results = sortAndLimit(emailInfos, maxResults);
+        loadContents(results, emailStore);
+        closeStore(emailStore);
+        // messages from this UID on must be looked at again next run
+        long firstUnfinishedUid = progress.firstUnfinishedUid >= 0 ? progress.firstUnfinishedUid : stopUid;
+        System.out.println("\n" + "═".repeat(70));
+        System.out.println("📊 Summary: Processed " + processed + " messages | " +
+                "New emails added: " + newEmailsAdded + " | Total in list: " + (existing.count + newEmailsAdded));
+        System.out.println("═".repeat(70));
+
+        if (checkpoints != null) {
+            long scannedUpTo;
+            if (firstUnfinishedUid > 0) {
+                scannedUpTo = firstUnfinishedUid - 1;
+            } else {
+                scannedUpTo = uidNext > 0 ? uidNext - 1 : highestUid;
+            }
+            checkpoints.update(checkpointKey, uidValidity, scannedUpTo);
+            System.out.println("📌 UID checkpoint for " + checkpointKey + " set to " + scannedUpTo);
+        }
 
-            processed++;
-            System.out.println(String.format("\n[%d/%d] Processing: %s",
-                    processed, Math.min(messages.length, maxCount),
-                    truncate(message.getSubject(), 60)));
-
-            EmailInfo info = extractEmailInfo(message, topic);
-            if (info != null && info.getRelevanceScore() > 0) {
-                // Check for duplicates before adding
-                if (!isDuplicate(info, emailInfos)) {
-                    emailInfos.add(info);
-                    newEmailsAdded++;
-                    System.out.println("  ✓ KEPT - Score: " + info.getRelevanceScore() +
-                            " | From: " + truncate(info.getFrom(), 40));
-
-                    // Save incrementally if outputFilePath is provided
-                    if (outputFilePath != null) {
-                        saveJobOpportunitiesToJson(emailInfos, outputFilePath, false);  // quiet save
-                        System.out.println("  💾 Saved to file (" + emailInfos.size() + " total emails)");
+        inbox.close(false);
+        store.close();
+        System.out.println("Disconnected from server\n");
+
+        return results;
+    }
+
+    /**
+     * Decode and score one message (runs on a worker thread in parallel mode)
+     */
+    private ScoredMessage scoreMessage(Message message, long uid, String topic) {
+        String subject;
+        try {
+            subject = message.getSubject();
+        } catch (MessagingException e) {
+            subject = null;
+        }
+        return new ScoredMessage(uid, subject, extractEmailInfo(message, topic));
+    }
+
+    /**
+     * Collect a scored message on the calling thread, in search order
+     */
+    private void collectScored(ScoredMessage scored, List<EmailInfo> emailInfos, MessageIdentityIndex seen,
+                               RecordStore<EmailInfo> store, ScoringProgress progress) {
+        progress.collected++;
+        String position = progress.total >= 0 ? progress.collected + "/" + progress.total : String.valueOf(progress.collected);
+        System.out.println(String.format("\n[%s] Processing: %s",
+                position, truncate(scored != null ? scored.subject : null, 60)));
+        if (scored == null) {
+            progress.failed++;
+            return;
+        }
+        if (collect(scored.info, emailInfos, seen, store, progress) == null) {
+            progress.failed++;
+            if (progress.firstUnfinishedUid < 0) {
+                progress.firstUnfinishedUid = scored.uid;
+            }
+        }
+    }
+
+    /**
+     * Add a scored email to emailInfos if relevant and not a duplicate
+     * (saving it into the history store when there is one)
+     *
+     * @return the info, or null if the message could not be read
+     */
+    private EmailInfo collect(EmailInfo info, List<EmailInfo> emailInfos, MessageIdentityIndex seen,
+                              RecordStore<EmailInfo> store, ScoringProgress progress) {
+        if (info != null && info.getRelevanceScore() > 0) {
+            // Check for duplicates before adding (constant-time lookup in the identity index)
+            if (seen.addIfAbsent(identityOf(info))) {
+                emailInfos.add(info);
+                progress.newEmailsAdded++;
+                System.out.println("  ✓ KEPT - Score: " + info.getRelevanceScore() +
+                        " | From: " + truncate(info.getFrom(), 40));
+
+                // Save incrementally: one transaction in the history store
+                if (store != null) {
+                    try {
+                        store.put(info);
+                        System.out.println("  💾 Saved to file (" + (progress.existingEmails + progress.newEmailsAdded) + " total emails)");
+                    } catch (IOException e) {
+                        System.err.println("ERROR: Failed to save email to history: " + e.getMessage());
                     }
-                } else {
-                    System.out.println("  ⊘ DUPLICATE - Already exists: " + truncate(info.getSubject(), 50));
                 }
             } else {
-                System.out.println("  ✗ Rejected - Score: " + (info != null ? info.getRelevanceScore() : "N/A"));
+                System.out.println("  ⊘ DUPLICATE - Already exists: " + truncate(info.getSubject(), 50));
             }
+        } else if (info != null && info.getContent() == null) {
+            System.out.println("  ✗ Rejected by sender/subject - body not downloaded");
+        } else {
+            System.out.println("  ✗ Rejected - Score: " + (info != null ? info.getRelevanceScore() : "N/A"));
         }
-        System.out.println("\n" + "═".repeat(70));
-        System.out.println("📊 Summary: Processed " + processed + " messages | " +
-                "New emails added: " + newEmailsAdded + " | Total in list: " + emailInfos.size());
-        System.out.println("═".repeat(70));
+        return info;
+    }
 
+    /**
+     * Sort by relevance score and date, and keep the first maxResults
+     */
+    private static List<EmailInfo> sortAndLimit(List<EmailInfo> emailInfos, int maxResults) {
         // Sort by relevance score and date
         System.out.println("Sorting by relevance and date...");
-        emailInfos.sort((e1, e2) -> {
-            int scoreCompare = Integer.compare(e2.getRelevanceScore(), e1.getRelevanceScore());
-            if (scoreCompare == 0) {
-                return e2.getSentDate().compareTo(e1.getSentDate());
-            }
-            return scoreCompare;
-        });
+        emailInfos.sort(BY_RELEVANCE);
 
         // Limit results
         if (emailInfos.size() > maxResults) {
             emailInfos = emailInfos.subList(0, maxResults);
             System.out.println("Limited to top " + maxResults + " results");
         }
-
-        inbox.close(false);
-        store.close();
-        System.out.println("Disconnected from server\n");
-
         return emailInfos;
     }
 
     /**
-     * Build a simplified search term for topic-based searching
-     * Simplified to avoid IMAP parsing errors with complex queries
+     * Score the messages of a local source (EML directory, mbox) exactly like searchTopicEmails
+     * does for the messages found on the server, without connecting to Gmail.
+     * Used to replay archived alerts and measure throughput reproducibly.
+     *
+     * @param source Message source (see MessageSource.open)
+     * @param topic The topic to score against (default: "job")
+     * @param maxResults Maximum number of results to return
+     * @param outputFilePath Path to save results incrementally (null to disable incremental saving)
      */
-    private SearchTerm buildTopicSearchTerm(String topic, int daysBack, List<String> specificSenders) {
-        // Start with date constraint
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DAY_OF_MONTH, -daysBack);
-        SearchTerm dateTerm = new ReceivedDateTerm(ComparisonTerm.GT, cal.getTime());
+    public List<EmailInfo> processMessageSource(MessageSource source, String topic, int maxResults, String outputFilePath) {
+        if (topic == null || topic.isEmpty()) {
+            topic = "job";
+        }
+        RecordStore<EmailInfo> historyStore = outputFilePath != null ? openStore(outputFilePath) : null;
+        ExistingEmails existing = loadExistingEmails(historyStore, maxResults);
+        if (outputFilePath != null) {
+            System.out.println("📂 Loaded " + existing.count + " existing emails from file");
+        }
+        List<EmailInfo> emailInfos = existing.best;
+        MessageIdentityIndex seen = existing.seen;
 
-        // If specific senders provided, combine with date
-        if (specificSenders != null && !specificSenders.isEmpty()) {
-            List<SearchTerm> senderTerms = new ArrayList<>();
-            for (String sender : specificSenders) {
+        System.out.println("📼 Replaying messages from " + source.getName() + "...");
+        long start = System.nanoTime();
+        int processed = 0;
+        int unreadable = 0;
+        String replayTopic = topic;
+        ScoringProgress progress = new ScoringProgress(-1, existing.count);
+        try (OrderedParallelProcessor<ScoredMessage> pipeline = new OrderedParallelProcessor<>(
+                SCORING_PARALLEL, SCORING_MAX_IN_FLIGHT,
+                scored -> collectScored(scored, emailInfos, seen, historyStore, progress))) {
+            Iterator<Message> messages = source.iterator();
+            while (messages.hasNext()) {
+                Message message;
                 try {
-                    senderTerms.add(new FromTerm(new InternetAddress(sender)));
-                } catch (AddressException e) {
-                    // Skip invalid addresses
-                }
-            }
-
-            if (!senderTerms.isEmpty()) {
-                SearchTerm senderTerm = senderTerms.get(0);
-                for (int i = 1; i < senderTerms.size(); i++) {
-                    senderTerm = new OrTerm(senderTerm, senderTerms.get(i));
+                    message = messages.next();
+                } catch (MessageSource.MessageSourceException e) {
+                    unreadable++;
+                    System.err.println("  ✗ " + e.getMessage());
+                    continue;
                 }
-                return new AndTerm(dateTerm, senderTerm);
+                processed++;
+                pipeline.submit(() -> scoreMessage(message, -1, replayTopic));
             }
         }
+        List<EmailInfo> results = sortAndLimit(emailInfos, maxResults);
+        loadContents(results, historyStore);
+        closeStore(historyStore);
+        int failed = unreadable + progress.failed;
+        int newEmailsAdded = progress.newEmailsAdded;
+        double seconds = (System.nanoTime() - start) / 1e9;
 
-        // For topic search, use a simplified approach with fewer OR terms
-        // Use only the most important keywords to avoid IMAP parse errors
-        String[] keywords = TOPIC_KEYWORDS.getOrDefault(topic.toLowerCase(), new String[]{topic});
+        System.out.println("\n" + "═".repeat(70));
+        System.out.println("📊 Replay summary: Processed " + processed + " messages | Failed: " + failed +
+                " | New emails added: " + newEmailsAdded + " | Total in list: " + (existing.count + newEmailsAdded));
+        System.out.println(String.format("⏱️  %.2f s, %.1f messages/s", seconds, seconds > 0 ? processed / seconds : 0));
+        System.out.println("═".repeat(70));
 
-        // Limit to first 5 keywords to avoid complex query issues
-        int keywordLimit = Math.min(5, keywords.length);
-        List<SearchTerm> keywordTerms = new ArrayList<>();
+        return results;
+    }
 
-        for (int i = 0; i < keywordLimit; i++) {
-            String keyword = keywords[i];
-            // Create OR term for subject OR body for each keyword
-            SearchTerm subjectTerm = new SubjectTerm(keyword);
-            SearchTerm bodyTerm = new BodyTerm(keyword);
-            keywordTerms.add(new OrTerm(subjectTerm, bodyTerm));
+    /**
+     * Checkpoint key: one per folder and query, since the same history file is fed by
+     * different topic / sender searches
+     */
+    private static String buildCheckpointKey(String folderName, String topic, List<String> specificSenders) {
+        String key = folderName + "|" + topic.toLowerCase();
+        if (specificSenders != null && !specificSenders.isEmpty()) {
+            key += "|" + String.join(",", specificSenders);
         }
+        return key;
+    }
 
-        // Combine keyword terms with OR
-        SearchTerm keywordTerm = keywordTerms.get(0);
-        for (int i = 1; i < keywordTerms.size(); i++) {
-            keywordTerm = new OrTerm(keywordTerm, keywordTerms.get(i));
+    /**
+     * Run the server-side search with the configured backend (GlobalConfig.IMAP_SEARCH_BACKEND),
+     * falling back to the plain JavaMail SearchTerm backend if it is not available or fails
+     */
+    private Message[] searchMessages(Folder folder, SearchQuery query) throws MessagingException {
+        MailSearchBackend fallback = new JavaMailSearchBackend();
+        if ("GMAIL_RAW".equalsIgnoreCase(IMAP_SEARCH_BACKEND)) {
+            MailSearchBackend gmailRaw = new GmailRawSearchBackend();
+            if (gmailRaw.isSupported(folder)) {
+                try {
+                    System.out.println("🔎 Search backend: " + gmailRaw.getBackendName());
+                    return gmailRaw.search(folder, query);
+                } catch (MessagingException e) {
+                    System.err.println("⚠️  " + gmailRaw.getBackendName() + " search failed (" + e.getMessage() +
+                            "), falling back to " + fallback.getBackendName());
+                }
+            } else {
+                System.out.println("⚠️  Server has no X-GM-EXT-1 capability, using " + fallback.getBackendName());
+            }
         }
-
-        // Combine date and keywords with AND
-        return new AndTerm(dateTerm, keywordTerm);
+        System.out.println("🔎 Search backend: " + fallback.getBackendName());
+        return fallback.search(folder, query);
     }
 
     /**
@@ -289,16 +413,14 @@ public class GmailEmailProcessor02 {
         try {
             EmailInfo info = new EmailInfo();
 
-            // Extract basic info
+            // Extract basic info (served from the prefetched envelope)
             Address[] from = message.getFrom();
             info.setFrom(from != null && from.length > 0 ? from[0].toString() : "Unknown");
             info.setSubject(message.getSubject());
             info.setSentDate(message.getSentDate());
-            info.setContent(getMessageContent(message));
-
-            // Calculate relevance score
-            int score = calculateRelevanceScore(info, topic, SENDER_DOMAIN_NAMES, NON_JOB_SENDER_DOMAIN_NAMES);
-            info.setRelevanceScore(score);
+            if (message instanceof MimeMessage) {
+                info.setMessageId(((MimeMessage) message).getMessageID());
+            }
 
             // Extract sender domain
             if (from != null && from.length > 0 && from[0] instanceof InternetAddress) {
@@ -309,6 +431,23 @@ public class GmailEmailProcessor02 {
                 }
             }
 
+            // Phase 1: header-only triage - rejected messages never have their body downloaded
+            // (one rule set for the whole email, even if the rules file is reloaded meanwhile)
+            CompiledRules rules = ScoringRuleBook.getDefault().current();
+            JobOfferClassifier classifier = classifierFor(topic);
+            boolean classifierOnly = classifier != null && "CLASSIFIER".equalsIgnoreCase(SCORING_MODE);
+            int senderClass = rules.classifySender(info.getFrom(), topic);
+            if (!classifierOnly && rules.isRejectedByHeaders(topic, info.getSubject(), senderClass)) {
+                info.setRelevanceScore(0);
+                return info;
+            }
+
+            // Phase 2: fetch the body (BODY.PEEK) only for messages that can still pass
+            info.setContent(getMessageContent(message));
+            int score = classifierOnly ? 0 : rules.scoreBody(topic, info.getSubject(), info.getContent(), senderClass);
+            score = withClassifier(score, info, classifier, rules);
+            info.setRelevanceScore(withEmbeddings(score, info, topic, info.getMessageId()));
+
             return info;
 
         } catch (Exception e) {
@@ -320,236 +459,67 @@ public class GmailEmailProcessor02 {
     /**
      * Calculate relevance score based on keywords and source
      * FOCUSED ON ACTUAL JOB OFFERS - filters out news, alerts, market info
+     * The rules come from the scoring rules file (see ScoringRuleBook); the sender lists are given explicitly.
      *
      * Package-private for testing purposes
      */
     public int calculateRelevanceScore(EmailInfo info, String topic, String[] senderDomainNames, String[] nonJobSenderDomainNames) {
-        int score = 0;
-        String[] keywords = TOPIC_KEYWORDS.getOrDefault(topic.toLowerCase(), new String[]{topic});
-
-        String subject = (info.getSubject() != null) ? info.getSubject().toLowerCase() : "";
-        String content = (info.getContent() != null) ? info.getContent().toLowerCase() : "";
-        String from = (info.getFrom() != null) ? info.getFrom().toLowerCase() : "";
-        String fullText = subject + " " + content;
-
-        // ===================================================================
-        // STEP 1: CHECK SENDER DOMAIN - AUTO-REJECT NON-JOB SENDERS
-        // ===================================================================
-        for (String nonJobDomain : nonJobSenderDomainNames) {
-            if (from.contains(nonJobDomain)) {
-                // Auto-reject emails from non-job domains (meetup, e-commerce, etc.)
-                return 0;
-            }
-        }
-
-        // ===================================================================
-        // STEP 1.5: CHECK IF EMAIL IS FROM WHITELISTED JOB PLATFORM
-        // ===================================================================
-        boolean fromTrustedJobPlatform = false;
-        if ("job".equalsIgnoreCase(topic)) {
-            for (String domain : senderDomainNames) {
-                if (from.contains(domain)) {
-                    fromTrustedJobPlatform = true;
-                    break;
-                }
-            }
-        }
-
-        // ===================================================================
-        // STEP 2: CONTENT-BASED EXCLUSIONS (not job offers)
-        // ===================================================================
-
-        // Promotional content patterns
-        String[] promotionalPatterns = {
-            "réduction", "discount", "promo", "bon plan", "deal", "sale",
-            "coupon", "voucher", "limited offer", "special price", "prix spécial",
-            "€", "$", "% off", "gratuit", "free shipping", "livraison gratuite"
-        };
-
-        for (String pattern : promotionalPatterns) {
-            if (subject.contains(pattern)) {
-                return 0;  // Promotional emails are not job offers
-            }
-        }
-
-        // Investment/Financial content patterns
-        String[] financialPatterns = {
-            "investment opportunity", "invest", "etf", "trading", "crypto",
-            "stock", "actions", "bourse", "dividende", "rendement"
-        };
-
-        for (String pattern : financialPatterns) {
-            if (subject.contains(pattern) || (fullText.contains(pattern) && !fullText.contains("apply"))) {
-                return 0;  // Financial opportunities are not job offers
-            }
-        }
-
-        // Event/Meetup patterns
-        String[] eventPatterns = {
-            "appena programmati", "just scheduled", "upcoming event", "rsvp",
-            "speaker series", "workshop", "demo night", "networking event",
-            "tech talk", "conference", "webinar", "événement à venir"
-        };
-
-        for (String pattern : eventPatterns) {
-            if (fullText.contains(pattern)) {
-                return 0;  // Events/meetups are not job offers
-            }
-        }
-
-        // Travel/Transportation patterns
-        String[] travelPatterns = {
-            "flight", "vol", "voyage", "booking", "reservation", "hotel",
-            "baisse de prix", "price drop", "travel alert"
-        };
-
-        for (String pattern : travelPatterns) {
-            if (fullText.contains(pattern)) {
-                return 0;  // Travel deals are not job offers
-            }
-        }
-
-        // Education/Course patterns (unless explicitly hiring)
-        String[] educationPatterns = {
-            "learn this", "past learners", "program enrollment", "course",
-            "formation en ligne", "online learning", "certification program"
-        };
-
-        boolean hasEducationPattern = false;
-        for (String pattern : educationPatterns) {
-            if (fullText.contains(pattern)) {
-                hasEducationPattern = true;
-                break;
-            }
-        }
-
-        if (hasEducationPattern && !fullText.contains("hiring") && !fullText.contains("recrut")) {
-            return 0;  // Educational content without hiring context
-        }
-
-        // Newsletter/Digest patterns
-        // Skip this check for trusted job platforms (they send legitimate job alerts)
-        if (!fromTrustedJobPlatform) {
-            String[] newsletterPatterns = {
-                "newsletter", "daily digest", "weekly roundup", "hebdomadaire",
-                "job alert", "job news", "recommended for you", "jobs you might like",
-                "new jobs matching", "career advice", "career tips", "guide to"
-            };
-
-            for (String pattern : newsletterPatterns) {
-                if (fullText.contains(pattern)) {
-                    return 0;  // Newsletters/alerts are not direct job offers
-                }
-            }
-        }
-
-        // ===================================================================
-        // STEP 3: POSITIVE SCORING - ACTUAL JOB OFFER INDICATORS
-        // ===================================================================
-
-        boolean hasOfferIndicator = false;
-        boolean hasStrongOfferIndicator = false;
-
-        // Strong job offer indicators (very specific)
-        String[] strongOfferIndicators = {
-            "apply now", "apply for this position", "submit your application",
-            "application deadline", "apply before", "submit resume",
-            "send your cv", "postuler maintenant", "envoyer votre cv",
-            "join our team as", "we're hiring a", "we are looking for a"
-        };
-
-        for (String indicator : strongOfferIndicators) {
-            if (fullText.contains(indicator)) {
-                hasStrongOfferIndicator = true;
-                hasOfferIndicator = true;
-                score += 10;  // Very high bonus for strong indicators
-                break;
-            }
-        }
-
-        // Moderate job offer indicators
-        String[] moderateOfferIndicators = {
-            "interview", "screening call", "position available", "opening for",
-            "vacancy", "recrut", "hiring", "join our team", "join us",
-            "offre de poste", "candidature", "poste à pourvoir"
-        };
-
-        if (!hasStrongOfferIndicator) {
-            for (String indicator : moderateOfferIndicators) {
-                if (fullText.contains(indicator)) {
-                    hasOfferIndicator = true;
-                    score += 5;
-                    break;
-                }
-            }
-        }
-
-        // Bonus for emails from TRUSTED job platforms (high confidence)
-        // Use the flag we already set in STEP 1.5
-        boolean fromJobPlatform = fromTrustedJobPlatform;
-        if (fromJobPlatform) {
-            score += 8;  // Increased bonus for trusted platforms
-            hasOfferIndicator = true;  // Trust job platforms
+        CompiledRules rules = ScoringRuleBook.getDefault().current();
+        JobOfferClassifier classifier = classifierFor(topic);
+        if (classifier != null && "CLASSIFIER".equalsIgnoreCase(SCORING_MODE)) {
+            return withClassifier(0, info, classifier, rules);
         }
+        int senderClass = rules.classifySender(info.getFrom(), topic, senderDomainNames, nonJobSenderDomainNames);
+        return withClassifier(rules.score(topic, info.getSubject(), info.getContent(), senderClass), info, classifier, rules);
+    }
 
-        // Very high bonus for explicit job offer phrases in SUBJECT
-        if ("job".equalsIgnoreCase(topic)) {
-            if (subject.contains("job offer") || subject.contains("offre d'emploi") ||
-                subject.contains("offre de travail")) {
-                score += 15;  // Extremely high priority
-                hasStrongOfferIndicator = true;
-            }
-            if (subject.contains("job opening") || subject.contains("poste disponible")) {
-                score += 12;
-            }
-            if (subject.contains("hiring") && (subject.contains("for") || subject.contains("seeking"))) {
-                score += 10;
-            }
+    /**
+     * Trained job offer classifier to use for this topic (GlobalConfig.SCORING_MODE), or null for rules only
+     */
+    private static JobOfferClassifier classifierFor(String topic) {
+        if ("RULES".equalsIgnoreCase(SCORING_MODE) || !"job".equalsIgnoreCase(topic)) {
+            return null;
         }
+        return JobOfferClassifier.getDefault();
+    }
 
-        // Specific position/role mentioned with action verbs
-        if (fullText.contains("position:") || fullText.contains("role:") ||
-            fullText.contains("poste :") || fullText.contains("ruolo:")) {
-            score += 4;
+    /**
+     * Combine the rules score with the classifier: an email the rules rejected (score 0) but that the
+     * classifier recognizes as a job offer gets a score from its probability (1..CLASSIFIER_SCORE_SCALE).
+     * In CLASSIFIER mode the rules score passed is always 0.
+     */
+    private static int withClassifier(int rulesScore, EmailInfo info, JobOfferClassifier classifier, CompiledRules rules) {
+        if (classifier == null || rulesScore > 0) {
+            return rulesScore;
         }
-
-        // Company hiring context
-        if ((fullText.contains("join") && fullText.contains("team")) ||
-            (fullText.contains("work with us") || fullText.contains("travaille avec nous"))) {
-            score += 3;
+        SenderClassifier.Classification sender = rules.getSenderClassifier().classify(info.getFrom());
+        double probability = classifier.probability(info.getSubject(), info.getContent(), sender);
+        if (probability < CLASSIFIER_MIN_PROBABILITY) {
+            return 0;
         }
+        return Math.max(1, (int) Math.round(probability * CLASSIFIER_SCORE_SCALE));
+    }
 
-        // ===================================================================
-        // STEP 4: FINAL FILTERING - REQUIRE STRONG EVIDENCE
-        // ===================================================================
-
-        // If from trusted job platform, more lenient
-        if (fromJobPlatform && score >= 5) {
+    /**
+     * Last chance for an email scored 0: kept if the embedding classifier (when enabled) puts it
+     * nearest to the job centroid, which catches alerts in languages / wordings the keyword lists miss
+     *
+     * @param messageId Message-ID used as embedding cache key (null = not cached)
+     */
+    private static int withEmbeddings(int score, EmailInfo info, String topic, String messageId) {
+        if (score > 0 || !"job".equalsIgnoreCase(topic)) {
             return score;
         }
-
-        // Otherwise, require strong offer indicators OR very high score
-        if (!hasOfferIndicator) {
-            return 0;  // No job offer indicators at all
-        }
-
-        if (!hasStrongOfferIndicator && score < 10) {
-            return 0;  // Weak indicators with low score = not a real offer
-        }
-
-        // Check for keyword relevance (at least some matching)
-        int keywordMatches = 0;
-        for (String keyword : keywords) {
-            if (subject.contains(keyword.toLowerCase()) || content.contains(keyword.toLowerCase())) {
-                keywordMatches++;
-            }
+        EmbeddingClassifier embeddings = EmbeddingClassifier.getDefault();
+        if (embeddings == null) {
+            return score;
         }
-
-        if (keywordMatches == 0 && !fromJobPlatform) {
-            return 0;  // No keyword matches and not from job platform = irrelevant
+        EmbeddingClassifier.Prediction prediction = embeddings.classify(messageId, info.getSubject(), info.getContent());
+        if (!prediction.isJobOffer()) {
+            return score;
         }
-
-        return Math.max(0, score);
+        System.out.println("  🧭 Kept by embeddings: " + prediction);
+        return Math.max(1, (int) Math.round(prediction.getJobSimilarity() * CLASSIFIER_SCORE_SCALE));
     }
 
     /**
@@ -589,28 +559,82 @@ public class GmailEmailProcessor02 {
     }
 
     private boolean containsDirectOffer(EmailInfo email) {
-        String content = (email.getSubject() + " " + email.getContent()).toLowerCase();
-        return content.contains("offer") || content.contains("propose") ||
-               content.contains("salary") || content.contains("compensation");
+        return email.getNormalized().containsAny("offer", "propose", "salary", "compensation");
     }
 
     private boolean isFromJobBoard(EmailInfo email) {
-        if (email.getSenderDomain() == null) return false;
-        for (String domain : SENDER_DOMAIN_NAMES) {
-            if (email.getSenderDomain().contains(domain)) {
+        SenderClassifier senders = ScoringRuleBook.getDefault().current().getSenderClassifier();
+        return senders.classifyDomain(email.getSenderDomain()).isTrustedPortal();
+    }
+
+    private boolean isFromRecruiter(EmailInfo email) {
+        String[] needles = {"recruiter", "recruitment", "talent acquisition", "headhunter"};
+        String from = email.getFrom() != null ? email.getFrom().toLowerCase() : "null";
+        for (String needle : needles) {
+            if (from.contains(needle)) {
                 return true;
             }
         }
-        return false;
+        return email.getNormalized().bodyContainsAny(needles);
     }
 
-    private boolean isFromRecruiter(EmailInfo email) {
-        String content = (email.getFrom() + " " + email.getContent()).toLowerCase();
-        return content.contains("recruiter") || content.contains("recruitment") ||
-               content.contains("talent acquisition") || content.contains("headhunter");
+    // ... [Keep all existing methods like getMessageContent, createDraft, etc.]
+
+    /**
+     * Result of scoring one message, handed back in search order
+     */
+    private static class ScoredMessage {
+        final long uid;
+        final String subject;
+        final EmailInfo info;
+
+        ScoredMessage(long uid, String subject, EmailInfo info) {
+            this.uid = uid;
+            this.subject = subject;
+            this.info = info;
+        }
     }
 
-    // ... [Keep all existing methods like getMessageContent, createDraft, etc.]
+    /**
+     * Emails of the history loaded for a run: identities of all of them, best ones without content
+     */
+    private static class ExistingEmails {
+        final MessageIdentityIndex seen = new MessageIdentityIndex();
+        final List<EmailInfo> best = new ArrayList<>();
+        int count = 0;
+    }
+
+    /**
+     * Counters of a scoring run, only touched by the collecting thread
+     */
+    private static class ScoringProgress {
+        final int total;  // -1 if unknown (streamed source)
+        final int existingEmails;  // in the history before the run
+        int collected = 0;
+        int failed = 0;
+        int newEmailsAdded = 0;
+        long firstUnfinishedUid = -1;
+
+        ScoringProgress(int total, int existingEmails) {
+            this.total = total;
+            this.existingEmails = existingEmails;
+        }
+    }
+
+    /**
+     * Response generated for an opportunity by createMultipleDrafts (error if the generation failed)
+     */
+    private static class DraftReply {
+        final EmailInfo opportunity;
+        final String response;
+        final Exception error;
+
+        DraftReply(EmailInfo opportunity, String response, Exception error) {
+            this.opportunity = opportunity;
+            this.response = response;
+            this.error = error;
+        }
+    }
 
     /**
      * Inner class to hold email information
@@ -622,19 +646,21 @@ public class GmailEmailProcessor02 {
         private String content;
         private int relevanceScore;
         private String senderDomain;
+        private String messageId;
+        private NormalizedText normalized;  // lowercased view, built on first keyword check
 
         // Getters and setters
         public String getFrom() { return from; }
         public void setFrom(String from) { this.from = from; }
 
         public String getSubject() { return subject; }
-        public void setSubject(String subject) { this.subject = subject; }
+        public void setSubject(String subject) { this.subject = subject; this.normalized = null; }
 
         public Date getSentDate() { return sentDate; }
         public void setSentDate(Date sentDate) { this.sentDate = sentDate; }
 
         public String getContent() { return content; }
-        public void setContent(String content) { this.content = content; }
+        public void setContent(String content) { this.content = content; this.normalized = null; }
 
         public int getRelevanceScore() { return relevanceScore; }
         public void setRelevanceScore(int relevanceScore) { this.relevanceScore = relevanceScore; }
@@ -642,6 +668,22 @@ public class GmailEmailProcessor02 {
         public String getSenderDomain() { return senderDomain; }
         public void setSenderDomain(String senderDomain) { this.senderDomain = senderDomain; }
 
+        public String getMessageId() { return messageId; }
+        public void setMessageId(String messageId) { this.messageId = messageId; }
+
+        /**
+         * Lowercased subject and body, computed once per email (not serialized)
+         */
+        @JsonIgnore
+        public NormalizedText getNormalized() {
+            NormalizedText result = normalized;
+            if (result == null) {
+                result = new NormalizedText(subject, content);
+                normalized = result;
+            }
+            return result;
+        }
+
         @Override
         public String toString() {
             return String.format("EmailInfo{from='%s', subject='%s', date=%s, score=%d}",
@@ -666,25 +708,10 @@ public class GmailEmailProcessor02 {
                 System.err.println("Error reading message metadata: " + e.getMessage());
             }
 
-            // Add message content
-            Object content = message.getContent();
-            if (content instanceof String) {
-                fullContent.append((String) content);
-            } else if (content instanceof Multipart) {
-                Multipart multipart = (Multipart) content;
-                for (int i = 0; i < multipart.getCount(); i++) {
-                    BodyPart bodyPart = multipart.getBodyPart(i);
-                    if (bodyPart.getContentType().toLowerCase().startsWith("text/plain")) {
-                        fullContent.append(bodyPart.getContent().toString());
-                    } else if (bodyPart.getContentType().toLowerCase().startsWith("text/html")) {
-                        // Optionally handle HTML content
-                        // You might want to strip HTML tags or convert to plain text
-                        String htmlContent = bodyPart.getContent().toString();
-                        // For now, just append as is
-                        fullContent.append(htmlContent);
-                    }
-                }
-            }
+            // Add message content (all text/plain and text/html parts, HTML kept as is)
+            // Bodies come from the local raw-message cache when this message was already downloaded
+            Message local = RawMessageCache.cached(message, message.getFolder() != null ? message.getFolder().getFullName() : "");
+            fullContent.append(MimeMessageDecoder.decode(local).getAllText());
             return fullContent.toString();
         } catch (Exception e) {
             return "Error extracting content: " + e.getMessage();
@@ -692,52 +719,89 @@ public class GmailEmailProcessor02 {
     }
 
     /**
-     * Load existing emails from JSON file
-     * @param filePath Path to the JSON file
-     * @return List of existing EmailInfo objects, or empty list if file doesn't exist
+     * Load existing emails from the history store, streamed without their content: the identity
+     * of every email goes into the index, and only the best maxResults emails are kept (the others
+     * can never be returned; loadContents reads back the content of those that are)
+     * @param store Store of the history file, null if it could not be opened
      */
-    private static List<EmailInfo> loadExistingEmails(String filePath) {
+    private static ExistingEmails loadExistingEmails(RecordStore<EmailInfo> store, int maxResults) {
+        ExistingEmails existing = new ExistingEmails();
+        if (store == null) {
+            return existing;
+        }
+        PriorityQueue<EmailInfo> best = new PriorityQueue<>(BY_RELEVANCE.reversed());  // worst first
         try {
-            File file = new File(filePath);
-            if (!file.exists()) {
-                System.out.println("📄 No existing file found, starting fresh");
-                return new ArrayList<>();
+            store.forEach(Set.of("content"), email -> {
+                existing.seen.add(identityOf(email));
+                existing.count++;
+                best.add(email);
+                if (best.size() > maxResults) {
+                    best.poll();
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("⚠️  Warning: Could not load existing emails: " + e.getMessage());
+        }
+        existing.best.addAll(best);
+        if (existing.count == 0) {
+            System.out.println("📄 No existing emails found, starting fresh");
+        }
+        return existing;
+    }
+
+    /**
+     * Read back from the store the content of the history emails among the results
+     */
+    private static void loadContents(List<EmailInfo> emails, RecordStore<EmailInfo> store) {
+        if (store == null) {
+            return;
+        }
+        for (EmailInfo email : emails) {
+            if (email.getContent() != null) {
+                continue;
+            }
+            try {
+                List<EmailInfo> stored = store.get(identityOf(email).getPrimaryKey());
+                if (!stored.isEmpty()) {
+                    email.setContent(stored.get(0).getContent());
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️  Warning: Could not read the content of " + truncate(email.getSubject(), 50) + ": " + e.getMessage());
             }
+        }
+    }
 
-            ObjectMapper mapper = new ObjectMapper();
-            List<EmailInfo> existingEmails = mapper.readValue(
-                    file,
-                    mapper.getTypeFactory().constructCollectionType(List.class, EmailInfo.class)
-            );
-            return existingEmails;
+    /**
+     * Indexed store of the history file, or null if it cannot be opened (no incremental saving)
+     */
+    private static RecordStore<EmailInfo> openStore(String filePath) {
+        try {
+            return RecordStore.open(filePath, RecordSchemas.EMAILS, JsonMappers.mapper());
         } catch (IOException e) {
-            System.err.println("⚠️  Warning: Could not load existing emails: " + e.getMessage());
-            return new ArrayList<>();
+            System.err.println("⚠️  Warning: Could not open history store, results will not be saved: " + e.getMessage());
+            return null;
         }
     }
 
     /**
-     * Check if an email is a duplicate based on subject, sender, and date
-     * @param newEmail The new email to check
-     * @param existingEmails List of existing emails
-     * @return true if duplicate found, false otherwise
+     * Export the store to the history file (plain JSON array) and release it
      */
-    private static boolean isDuplicate(EmailInfo newEmail, List<EmailInfo> existingEmails) {
-        for (EmailInfo existing : existingEmails) {
-            // Consider it a duplicate if subject, from, and date match
-            boolean subjectMatch = newEmail.getSubject() != null &&
-                                   newEmail.getSubject().equals(existing.getSubject());
-            boolean fromMatch = newEmail.getFrom() != null &&
-                                newEmail.getFrom().equals(existing.getFrom());
-            boolean dateMatch = newEmail.getSentDate() != null &&
-                                existing.getSentDate() != null &&
-                                newEmail.getSentDate().equals(existing.getSentDate());
-
-            if (subjectMatch && fromMatch && dateMatch) {
-                return true;
+    private static void closeStore(RecordStore<EmailInfo> store) {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("⚠️  Warning: Could not export history store (kept in its .store.mv.db): " + e.getMessage());
             }
         }
-        return false;
+    }
+
+    /**
+     * Identity of an email: Message-ID, falling back to subject + from + sent date
+     */
+    private static MessageIdentityIndex.Identity identityOf(EmailInfo email) {
+        return MessageIdentityIndex.identity(email.getMessageId(), email.getSubject(), email.getFrom(),
+                email.getSentDate() != null ? email.getSentDate().getTime() : null);
     }
 
     /**
@@ -773,9 +837,6 @@ public class GmailEmailProcessor02 {
      */
     public static void saveJobOpportunitiesToJson(List<EmailInfo> jobOpportunities, String outputFilePath, boolean verbose) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-
             File outputFile = new File(outputFilePath);
 
             // Create parent directories if they don't exist
@@ -787,7 +848,10 @@ public class GmailEmailProcessor02 {
                 }
             }
 
-            mapper.writeValue(outputFile, jobOpportunities);
+            // Whole history replaced in one store transaction, then exported
+            try (RecordStore<EmailInfo> store = RecordStore.open(outputFilePath, RecordSchemas.EMAILS, JsonMappers.mapper())) {
+                store.replaceAll(jobOpportunities);
+            }
             if (verbose) {
                 System.out.println("\n✓ Successfully saved " + jobOpportunities.size() + " job opportunities to: " + outputFilePath);
                 System.out.println("  File size: " + outputFile.length() + " bytes");
@@ -848,7 +912,7 @@ public class GmailEmailProcessor02 {
             System.out.println();
             System.out.println("   ⚙️  HOW KEYWORD SEARCH WORKS:");
             System.out.println("   ═══════════════════════════════════════════════════════════════");
-            String[] jobKeywords = TOPIC_KEYWORDS.get("job");
+            String[] jobKeywords = ScoringRuleBook.getDefault().current().getTopicKeywords("job");
             System.out.println("   Search Focus: ACTUAL JOB OFFERS (not news/alerts/market info)");
             System.out.println("   Search Logic: BROAD retrieval + SMART filtering");
             System.out.println();
@@ -875,7 +939,8 @@ public class GmailEmailProcessor02 {
                 System.out.println("   IT: " + String.join(", ", Arrays.copyOfRange(jobKeywords, 23, jobKeywords.length)));
             }
             System.out.println();
-            System.out.println("   Note: Only first 5 keywords in IMAP query (performance).");
+            System.out.println("   Note: Gmail X-GM-RAW search sends all keywords to the server;");
+            System.out.println("         the JavaMail fallback only uses the first 5 (performance).");
             System.out.println("         All keywords used for scoring after retrieval.");
             System.out.println("   ═══════════════════════════════════════════════════════════════");
             System.out.println();
@@ -907,7 +972,7 @@ public class GmailEmailProcessor02 {
             System.out.println("   - Remote Work: " + (remoteAcceptable ? "Acceptable" : "Office only"));
             System.out.println();
             System.out.println("🏆 RELEVANCE SCORING:");
-            System.out.println("   Job domains boost: " + String.join(", ", SENDER_DOMAIN_NAMES));
+            System.out.println("   Job domains boost: " + String.join(", ", ScoringRuleBook.getDefault().current().getTrustedSenders()));
             System.out.println();
             System.out.println("════════════════════════════════════════════════════════════════════");
             System.out.println();
@@ -1283,41 +1348,55 @@ public class GmailEmailProcessor02 {
                                               Map<String, Object> jobCriteria,
                                               String modelName) throws MessagingException {
         List<Message> drafts = new ArrayList<>();
-
-        for (EmailInfo opportunity : opportunities) {
+        // Professional signature of the drafts
+        String signature = "Best regards,\n" +
+                "Frank Bullo\n" +
+                "Senior Technology Executive\n" +
+                "LinkedIn: linkedin.com/in/frankbullo";
+
+        // Responses generated LLM_MAX_CONCURRENCY at a time, paced by the OpenAI rate limiter
+        // (OpenAiRESTApiCaller); drafts created here, in the order of the opportunities
+        try (OrderedParallelProcessor<DraftReply> replies = new OrderedParallelProcessor<>(
+                LLM_MAX_CONCURRENCY > 1, LLM_MAX_CONCURRENCY, reply -> {
+            if (reply == null) {
+                return;
+            }
             try {
-                // Generate personalized response for each opportunity
-                String response = generateResponse(
-                        Arrays.asList(opportunity.getContent()),
-                        modelName,
-                        "",
-                        null,
-                        jobCriteria
-                );
-
-                // Create draft with professional signature
-                String signature = "Best regards,\n" +
-                        "Frank Bullo\n" +
-                        "Senior Technology Executive\n" +
-                        "LinkedIn: linkedin.com/in/frankbullo";
-
+                if (reply.error != null) {
+                    throw reply.error;
+                }
                 Message draft = createDraft(
-                        extractReplyEmail(opportunity),
-                        "Re: " + opportunity.getSubject(),
-                        response,
+                        extractReplyEmail(reply.opportunity),
+                        "Re: " + reply.opportunity.getSubject(),
+                        reply.response,
                         false,
                         signature
                 );
 
                 drafts.add(draft);
 
-                // Add delay to avoid rate limiting
-                Thread.sleep(1000);
-
             } catch (Exception e) {
-                System.err.println("Error creating draft for: " + opportunity.getSubject());
+                System.err.println("Error creating draft for: " + reply.opportunity.getSubject());
                 e.printStackTrace();
             }
+        })) {
+            for (EmailInfo opportunity : opportunities) {
+                replies.submit(() -> {
+                    try {
+                        // Generate personalized response for each opportunity
+                        String response = generateResponse(
+                                Arrays.asList(opportunity.getContent()),
+                                modelName,
+                                "",
+                                null,
+                                jobCriteria
+                        );
+                        return new DraftReply(opportunity, response, null);
+                    } catch (Exception e) {
+                        return new DraftReply(opportunity, null, e);
+                    }
+                });
+            }
         }
 
         return drafts;
@@ -1381,7 +1460,7 @@ public class GmailEmailProcessor02 {
         // Filter based on criteria
         List<EmailInfo> filtered = allJobs.stream()
                 .filter(email -> {
-                    String content = (email.getSubject() + " " + email.getContent()).toLowerCase();
+                    NormalizedText content = email.getNormalized();
 
                     int enhancedScore = email.getRelevanceScore();
                     boolean meetsRequirements = true;
@@ -1389,21 +1468,16 @@ public class GmailEmailProcessor02 {
                     // Check position match (optional)
                     boolean positionMatch = true;
                     if (position != null && !position.isEmpty()) {
-                        positionMatch = content.contains(position.toLowerCase()) ||
-                                content.contains("cto") ||
-                                content.contains("chief technology") ||
-                                content.contains("tech lead") ||
-                                content.contains("engineering director");
+                        positionMatch = content.containsAny(position.toLowerCase(),
+                                "cto", "chief technology", "tech lead", "engineering director");
                         if (positionMatch) enhancedScore += 5;
                     }
 
                     // Check seniority (optional)
                     boolean seniorityMatch = true;
                     if (seniority != null && !seniority.isEmpty()) {
-                        seniorityMatch = content.contains(seniority.toLowerCase()) ||
-                                content.contains("senior") ||
-                                content.contains("executive") ||
-                                content.contains("leadership");
+                        seniorityMatch = content.containsAny(seniority.toLowerCase(),
+                                "senior", "executive", "leadership");
                         if (seniorityMatch) enhancedScore += 3;
                     }
 
@@ -1411,7 +1485,7 @@ public class GmailEmailProcessor02 {
                     boolean contractMatch = true;
                     if (contractType != null && !contractType.isEmpty()) {
                         contractMatch = contractType.equals("Permanent Position") ?
-                                !content.contains("contract") && !content.contains("freelance") :
+                                !content.containsAny("contract", "freelance") :
                                 content.contains(contractType.toLowerCase());
                         if (contractMatch) enhancedScore += 2;
                     }
@@ -1457,12 +1531,8 @@ public class GmailEmailProcessor02 {
 
     // Helper method to check if position is relevant
     private static boolean isRelevantPosition(EmailInfo email, String targetPosition, String seniority) {
-        String content = (email.getSubject() + " " + email.getContent()).toLowerCase();
-        return content.contains(targetPosition.toLowerCase()) ||
-                content.contains("cto") ||
-                content.contains(seniority.toLowerCase()) ||
-                content.contains("executive") ||
-                content.contains("leadership");
+        return email.getNormalized().containsAny(targetPosition.toLowerCase(),
+                "cto", seniority.toLowerCase(), "executive", "leadership");
     }
 
     // Helper method to identify emails needing response
@@ -1471,14 +1541,10 @@ public class GmailEmailProcessor02 {
 
         return emails.stream()
                 .filter(email -> {
-                    String content = email.getContent().toLowerCase();
-                    // Check if it's a direct opportunity or invitation
-                    return (content.contains("interested") ||
-                            content.contains("opportunity") ||
-                            content.contains("would you") ||
-                            content.contains("invitation") ||
-                            content.contains("opening for")) &&
-                            email.getRelevanceScore() >= 10;
+                    // Check if it's a direct opportunity or invitation (body only, and only for high scores)
+                    return email.getRelevanceScore() >= 10 &&
+                            email.getNormalized().bodyContainsAny("interested", "opportunity",
+                                    "would you", "invitation", "opening for");
                 })
                 .limit(3)
                 .collect(Collectors.toList());
@@ -1517,11 +1583,11 @@ public class GmailEmailProcessor02 {
             System.out.println("   From: " + email.getFrom() + " | " + email.getSentDate());
 
             // Extract salary if mentioned
-            String content = email.getContent().toLowerCase();
-            if (content.contains("€") || content.contains("eur") || content.contains("salary")) {
+            NormalizedText content = email.getNormalized();
+            if (content.bodyContainsAny("€", "eur", "salary")) {
                 System.out.println("   💰 Contains salary information");
             }
-            if (content.contains("remote") || content.contains("hybrid")) {
+            if (content.bodyContainsAny("remote", "hybrid")) {
                 System.out.println("   🏠 Remote/Hybrid opportunity");
             }
             System.out.println();
@@ -0,0 +1,69 @@
+package com.agty;
+
+import com.agty.scoring.JobOfferClassifier;
+import com.agty.scoring.ScoringRuleBook;
+import com.agty.scoring.SenderClassifier;
+import com.agty.utils.GlobalConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Offline training of the job offer classifier (see JobOfferClassifier) from labelled corpora.
+ *
+ * Usage: JobClassifierTrainer [--bits 18] [--epochs 10] [--out data/job_classifier.bin] pos:<path> neg:<path> ...
+ * Each path is an mbox, EML directory, EmailInfo .json or run log .txt (see LabelledCorpus).
+ * Every 5th email is held out to print accuracy / precision / recall.
+ */
+public class JobClassifierTrainer {
+
+    private static final int HOLDOUT_EVERY = 5;
+
+    public static void main(String[] args) throws IOException {
+        int bits = JobOfferClassifier.DEFAULT_BITS;
+        int epochs = 10;
+        String output = GlobalConfig.CLASSIFIER_MODEL_FILE;
+        JobOfferClassifier.Trainer trainer = null;
+        SenderClassifier senders = ScoringRuleBook.getDefault().current().getSenderClassifier();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--bits".equals(arg)) {
+                bits = Integer.parseInt(args[++i]);
+            } else if ("--epochs".equals(arg)) {
+                epochs = Integer.parseInt(args[++i]);
+            } else if ("--out".equals(arg)) {
+                output = args[++i];
+            } else if (arg.startsWith("pos:") || arg.startsWith("neg:")) {
+                if (trainer == null) {
+                    trainer = new JobOfferClassifier.Trainer(bits);
+                }
+                boolean jobOffer = arg.startsWith("pos:");
+                Path path = Paths.get(arg.substring(4));
+                int before = trainer.size();
+                addCorpus(trainer, senders, path, jobOffer);
+                System.out.println("📚 " + (trainer.size() - before) + (jobOffer ? " job offers" : " non-job emails") + " from " + path);
+            } else {
+                System.err.println("Unknown argument: " + arg);
+                System.err.println("Usage: JobClassifierTrainer [--bits 18] [--epochs 10] [--out file] pos:<path> neg:<path> ...");
+                return;
+            }
+        }
+        if (trainer == null || trainer.size() == 0) {
+            System.err.println("Usage: JobClassifierTrainer [--bits 18] [--epochs 10] [--out file] pos:<path> neg:<path> ...");
+            return;
+        }
+
+        System.out.println("\n🏋️  Training on " + trainer.size() + " emails (2^" + bits + " features, " + epochs + " epochs)...");
+        JobOfferClassifier classifier = trainer.train(epochs, 0.5, 1e-6, HOLDOUT_EVERY);
+        classifier.save(new File(output));
+        System.out.println("💾 Model saved to " + output);
+    }
+
+    private static void addCorpus(JobOfferClassifier.Trainer trainer, SenderClassifier senders, Path path, boolean jobOffer) throws IOException {
+        LabelledCorpus.forEach(path, (messageId, subject, body, from) ->
+                trainer.add(subject, body, from != null ? senders.classify(from) : null, jobOffer));
+    }
+}
@@ -23,6 +23,9 @@ public class JobOfferExtraction {
     @JsonProperty("sentDateHumanReadable")
     private String sentDateHumanReadable;  // e.g., "2024-01-15 14:30:00"
 
+    @JsonProperty("messageId")
+    private String messageId;  // Message-ID header, used for duplicate detection
+
     @JsonProperty("source_folder")
     private String sourceFolder;  // e.g., "JobOffers_APEC", "JobOffers_CadreEmploi"
 
@@ -97,6 +100,10 @@ public class JobOfferExtraction {
     @JsonProperty("email_content_preview")
     private String emailContentPreview;  // First 500 chars
 
+    // Near-duplicate detection (see JobOfferDeduplicator)
+    @JsonProperty("offer_cluster_id")
+    private String offerClusterId;  // Shared by the copies of the same offer from several portals
+
     // Constructors
     public JobOfferExtraction() {
         this.extractionTimestamp = System.currentTimeMillis();
@@ -135,6 +142,14 @@ public class JobOfferExtraction {
         this.sentDateHumanReadable = sentDateHumanReadable;
     }
 
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
     public String getSourceFolder() {
         return sourceFolder;
     }
@@ -319,6 +334,14 @@ public class JobOfferExtraction {
         this.emailContentPreview = emailContentPreview;
     }
 
+    public String getOfferClusterId() {
+        return offerClusterId;
+    }
+
+    public void setOfferClusterId(String offerClusterId) {
+        this.offerClusterId = offerClusterId;
+    }
+
     @Override
     public String toString() {
         return "JobOfferExtraction{" +
@@ -79,6 +79,12 @@ public class JobOpportunity {
     @JsonProperty("source_email_date")
     private String sourceEmailDate;
 
+    @JsonProperty("source_email_message_id")
+    private String sourceEmailMessageId;
+
+    @JsonProperty("offer_cluster_id")
+    private String offerClusterId;  // Shared by the copies of the same offer from several portals
+
     // Constructors
     public JobOpportunity() {}
 
@@ -313,6 +319,22 @@ public class JobOpportunity {
         this.sourceEmailDate = sourceEmailDate;
     }
 
+    public String getSourceEmailMessageId() {
+        return sourceEmailMessageId;
+    }
+
+    public void setSourceEmailMessageId(String sourceEmailMessageId) {
+        this.sourceEmailMessageId = sourceEmailMessageId;
+    }
+
+    public String getOfferClusterId() {
+        return offerClusterId;
+    }
+
+    public void setOfferClusterId(String offerClusterId) {
+        this.offerClusterId = offerClusterId;
+    }
+
     @Override
     public String toString() {
         return String.format("JobOpportunity{title='%s', company='%s', location='%s', portal='%s', fitScore=%.2f}",
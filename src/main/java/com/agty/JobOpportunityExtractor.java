@@ -1,24 +1,40 @@
 package com.agty;
 
 import com.agty.GmailEmailProcessor02.*;
+import com.agty.dedup.NearDuplicateIndex;
+import com.agty.dedup.OfferSignature;
+import com.agty.mail.MessageIdentityIndex;
+import com.agty.mail.OrderedParallelProcessor;
+import com.agty.store.RecordSchemas;
+import com.agty.store.RecordStore;
 import com.agty.urlextractor.URLExtractorRegistry;
 import com.agty.urlextractor.URLExtractionResult;
 import com.agty.urlextractor.URLValidator;
+import com.agty.utils.JsonMappers;
 import com.agty.utils.LLMCostCalculator;
 import com.agty.utils.LLMUsageInfo;
 import com.agty.utils.OpenAiRESTApiCaller;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.agty.utils.GlobalConfig.LLM_MAX_CONCURRENCY;
+import static com.agty.utils.GlobalConfig.NEAR_DUPLICATE_DETECTION;
+import static com.agty.utils.GlobalConfig.NEAR_DUPLICATE_EMAIL_MAX_DISTANCE;
+import static com.agty.utils.GlobalConfig.NEAR_DUPLICATE_MAX_DISTANCE;
+import static com.agty.utils.GlobalConfig.PROCESSED_KEY_FILTER;
 
 /**
  * Extracts structured job opportunity data from email content using LLM.
@@ -36,8 +52,7 @@ public class JobOpportunityExtractor {
     public JobOpportunityExtractor(String agentId, String modelName) {
         this.agentId = agentId;
         this.modelName = modelName;
-        this.mapper = new ObjectMapper();
-        this.mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        this.mapper = JsonMappers.mapper();
         this.costSummary = new LLMCostCalculator.CostSummary();
         this.urlExtractorRegistry = new URLExtractorRegistry();
         System.out.println("  ✓ Initialized URL Extractor Registry with " +
@@ -49,7 +64,7 @@ public class JobOpportunityExtractor {
      * 
      * @param inputFilePath  Path to job_opportunities_emails.json
      * @param outputFilePath Path where to save job_opportunities.json
-     * @return List of extracted JobOpportunity objects
+     * @return JobOpportunity objects extracted by this run (the earlier ones stay in the output file)
      */
     public List<JobOpportunity> extractJobOpportunities(String inputFilePath, String outputFilePath)
             throws IOException {
@@ -60,119 +75,107 @@ public class JobOpportunityExtractor {
         System.out.println();
         System.out.println("📥 Reading emails from: " + inputFilePath);
 
-        // Load EmailInfo list from JSON
-        List<EmailInfo> emails = loadEmailsFromJson(inputFilePath);
-        System.out.println("✓ Loaded " + emails.size() + " emails to process");
+        // Emails streamed from their store, a page at a time (the input may not fit in memory)
+        RecordStore<EmailInfo> inputStore = openEmailsStore(inputFilePath);
+        int totalEmails = inputStore.size();
+        Iterator<EmailInfo> emails = inputStore.iterator(Collections.emptySet());
+        System.out.println("✓ Found " + totalEmails + " emails to process");
+
+        // Existing opportunities of the output file (resume functionality): streamed from the store,
+        // only their keys and offer signatures are kept
+        RecordStore<JobOpportunity> store = RecordStore.open(outputFilePath, RecordSchemas.OPPORTUNITIES, mapper);
+        int existingOpportunities = store.size();
+        List<JobOpportunity> jobOpportunities = new ArrayList<>();  // extracted by this run
+        // Track already processed emails by Message-ID, or source email subject + from
+        // (persisted next to the output file, or rebuilt from the opportunities)
+        Supplier<List<MessageIdentityIndex.Identity>> history = () -> {
+            List<MessageIdentityIndex.Identity> identities = new ArrayList<>();
+            forEachExistingOpportunity(store, opp -> identities.add(MessageIdentityIndex.identityWithoutDate(
+                    opp.getSourceEmailMessageId(), opp.getSourceEmailSubject(), opp.getSourceEmailFrom())));
+            return identities;
+        };
+        MessageIdentityIndex processedEmails;
+        if (PROCESSED_KEY_FILTER) {
+            processedEmails = MessageIdentityIndex.forHistoryFile(outputFilePath, history);
+        } else {
+            processedEmails = new MessageIdentityIndex();
+            history.get().forEach(processedEmails::add);
+        }
 
-        // Load existing opportunities if output file exists (resume functionality)
-        List<JobOpportunity> jobOpportunities = loadExistingOpportunities(outputFilePath);
-        Set<String> processedEmails = new HashSet<>();
-        for (JobOpportunity opp : jobOpportunities) {
-            // Track already processed emails by source email subject + from
-            String key = opp.getSourceEmailSubject() + "|" + opp.getSourceEmailFrom();
-            processedEmails.add(key);
+        // Near-duplicate offers (same position from several portals) share an offer_cluster_id
+        NearDuplicateIndex offerIndex = NEAR_DUPLICATE_DETECTION ? new NearDuplicateIndex(NEAR_DUPLICATE_MAX_DISTANCE) : null;
+        NearDuplicateIndex emailIndex = NEAR_DUPLICATE_DETECTION ? new NearDuplicateIndex(NEAR_DUPLICATE_EMAIL_MAX_DISTANCE) : null;
+        if (offerIndex != null) {
+            forEachExistingOpportunity(store, opp -> assignOfferCluster(offerIndex, opp));
         }
 
-        if (jobOpportunities.size() > 0) {
-            System.out.println("✓ Loaded " + jobOpportunities.size() + " existing job opportunities from output file");
+        if (existingOpportunities > 0) {
+            System.out.println("✓ Loaded " + existingOpportunities + " existing job opportunities from output file");
             System.out.println("  Will skip already processed emails and continue from where we left off");
         }
         System.out.println();
 
         int processed = 0;
-        int successful = 0;
-        int failed = 0;
         int skipped = 0;
+        ExtractionProgress progress = new ExtractionProgress();
+        InFlightEmails inFlight = new InFlightEmails();
 
         // Track errors with details for final report
         List<ErrorDetail> errors = new ArrayList<>();
 
-        for (EmailInfo email : emails) {
-            processed++;
-            System.out.println("─".repeat(70));
-            System.out.println(String.format("Processing [%d/%d]: %s", processed, emails.size(),
-                    truncate(email.getSubject(), 60)));
-            System.out.println("From: " + truncate(email.getFrom(), 60));
-
-            // Check if already processed
-            String emailKey = email.getSubject() + "|" + email.getFrom();
-            if (processedEmails.contains(emailKey)) {
-                skipped++;
-                System.out.println("⊘ Skipped - already processed");
-                continue;
-            }
-
-            try {
-                List<JobOpportunity> opportunities = extractFromEmail(email);
-                if (opportunities != null && !opportunities.isEmpty()) {
-                    jobOpportunities.addAll(opportunities);
-                    processedEmails.add(emailKey);
-                    successful++;
-                    System.out.println("✓ Extracted " + opportunities.size() + " opportunity(ies):");
-                    for (JobOpportunity opp : opportunities) {
-                        System.out.println("  - " + truncate(opp.getTitle(), 50));
-                        System.out.println("    Company: " + opp.getCompany());
-                        System.out.println("    Location: " + opp.getLocation());
-                    }
-
-                    // INCREMENTAL SAVE: Save after each successful extraction
-                    saveJobOpportunitiesToJson(jobOpportunities, outputFilePath);
-                    System.out.println("  💾 Saved to file (incremental)");
-                } else {
-                    failed++;
-                    System.out.println("✗ Failed to extract job opportunity (empty result)");
-                    errors.add(new ErrorDetail(
-                            email.getSubject(),
-                            email.getFrom(),
-                            "LLM returned null or empty response",
-                            "ExtractionFailure"));
-                }
-            } catch (NoSuchMethodError e) {
-                failed++;
-                System.err.println("✗ DEPENDENCY ERROR: " + e.getMessage());
-                System.err.println("  This is likely a Jackson library version conflict.");
-                System.err.println("  Please rebuild the project: mvn clean install");
-                System.err.println("  Continuing with next email...");
-                errors.add(new ErrorDetail(
-                        email.getSubject(),
-                        email.getFrom(),
-                        "Jackson library version conflict: " + e.getMessage(),
-                        "DependencyError"));
-            } catch (Exception e) {
-                failed++;
-                System.err.println("✗ Error processing email: " + e.getClass().getSimpleName());
-                System.err.println("  Message: " + e.getMessage());
-                System.err.println("  Continuing with next email...");
-                errors.add(new ErrorDetail(
-                        email.getSubject(),
-                        email.getFrom(),
-                        e.getMessage(),
-                        e.getClass().getSimpleName()));
-                // Only print stack trace in verbose mode to avoid cluttering output
-                if (System.getProperty("verbose") != null) {
-                    e.printStackTrace();
+        // LLM_MAX_CONCURRENCY emails are extracted at a time, paced by the OpenAI rate limiter
+        // (OpenAiRESTApiCaller); results are saved, clustered and reported here in input order
+        try (OrderedParallelProcessor<Extraction> pipeline = new OrderedParallelProcessor<>(
+                LLM_MAX_CONCURRENCY > 1, LLM_MAX_CONCURRENCY,
+                extraction -> collectExtraction(extraction, jobOpportunities, store, processedEmails,
+                        emailIndex, offerIndex, inFlight, errors, progress))) {
+            while (emails.hasNext()) {
+                EmailInfo email = emails.next();
+                processed++;
+                System.out.println("─".repeat(70));
+                System.out.println(String.format("Processing [%d/%d]: %s", processed, totalEmails,
+                        truncate(email.getSubject(), 60)));
+                System.out.println("From: " + truncate(email.getFrom(), 60));
+
+                // Check if already processed, or submitted and not collected yet
+                MessageIdentityIndex.Identity emailKey = MessageIdentityIndex.identityWithoutDate(
+                        email.getMessageId(), email.getSubject(), email.getFrom());
+                if (processedEmails.contains(emailKey) || inFlight.containsKey(emailKey)) {
+                    skipped++;
+                    System.out.println("⊘ Skipped - already processed");
+                    continue;
                 }
-            }
 
-            // Add delay to avoid rate limiting
-            if (processed < emails.size()) {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                // Near-identical to an email extracted earlier in this run (re-sent alert), or being extracted
+                long emailSignature = emailIndex != null ? OfferSignature.ofEmail(email.getSubject(), email.getContent()) : 0;
+                if (emailSignature != 0 && (emailIndex.findNearest(emailSignature) >= 0 || inFlight.hasNear(emailSignature))) {
+                    skipped++;
+                    System.out.println("⊘ Skipped - near-duplicate of an email already extracted");
+                    continue;
                 }
+
+                inFlight.add(emailKey, emailSignature);
+                pipeline.submit(() -> {
+                    Extraction extraction = new Extraction(email, emailKey, emailSignature);
+                    try {
+                        extraction.opportunities = extractFromEmail(email);
+                    } catch (NoSuchMethodError | Exception e) {
+                        extraction.error = e;
+                    }
+                    return extraction;
+                });
             }
         }
 
         System.out.println();
         System.out.println("═".repeat(70));
         System.out.println("📊 EXTRACTION SUMMARY:");
-        System.out.println("   Total emails in input: " + emails.size());
+        System.out.println("   Total emails in input: " + totalEmails);
         System.out.println("   Already processed (skipped): " + skipped);
         System.out.println("   Newly processed: " + (processed - skipped));
-        System.out.println("   Successfully extracted: " + successful);
-        System.out.println("   Failed extractions: " + failed);
-        System.out.println("   Total opportunities in file: " + jobOpportunities.size());
+        System.out.println("   Successfully extracted: " + progress.successful);
+        System.out.println("   Failed extractions: " + progress.failed);
+        System.out.println("   Total opportunities in file: " + (existingOpportunities + jobOpportunities.size()));
         System.out.println("═".repeat(70));
 
         // Display detailed error report if there were failures
@@ -211,22 +214,101 @@ public class JobOpportunityExtractor {
 
         // Final save with verbose output
         System.out.println();
-        saveJobOpportunitiesToJson(jobOpportunities, outputFilePath, true);
+        closeStore(store, existingOpportunities + jobOpportunities.size(), outputFilePath);
+        inputStore.release();
+        processedEmails.close();
 
         return jobOpportunities;
     }
 
+    /**
+     * Save, cluster and report the result of an email extraction (called in input order)
+     */
+    private void collectExtraction(Extraction extraction, List<JobOpportunity> jobOpportunities,
+                                   RecordStore<JobOpportunity> store, MessageIdentityIndex processedEmails,
+                                   NearDuplicateIndex emailIndex, NearDuplicateIndex offerIndex,
+                                   InFlightEmails inFlight, List<ErrorDetail> errors, ExtractionProgress progress) {
+        if (extraction == null) {
+            progress.failed++;
+            return;
+        }
+        inFlight.remove(extraction.emailKey, extraction.emailSignature);
+        EmailInfo email = extraction.email;
+        List<JobOpportunity> opportunities = extraction.opportunities;
+        System.out.println("─".repeat(70));
+        System.out.println("Result: " + truncate(email.getSubject(), 60));
+        try {
+            if (extraction.error != null) {
+                throw extraction.error;
+            }
+            if (opportunities != null && !opportunities.isEmpty()) {
+                jobOpportunities.addAll(opportunities);
+                if (extraction.emailSignature != 0 && opportunities.size() == 1) {
+                    emailIndex.add(extraction.emailSignature);  // digests share their template: never used to skip
+                }
+                progress.successful++;
+                System.out.println("✓ Extracted " + opportunities.size() + " opportunity(ies):");
+                for (JobOpportunity opp : opportunities) {
+                    boolean copy = offerIndex != null && assignOfferCluster(offerIndex, opp);
+                    System.out.println("  - " + truncate(opp.getTitle(), 50));
+                    System.out.println("    Company: " + opp.getCompany());
+                    System.out.println("    Location: " + opp.getLocation());
+                    if (copy) {
+                        System.out.println("    🔗 Same offer as " + opp.getOfferClusterId() + " (already received from another source)");
+                    }
+                }
+
+                // INCREMENTAL SAVE: the opportunities of the email in one store transaction, then mark the email as processed
+                store.putAll(opportunities);
+                processedEmails.add(extraction.emailKey);
+                System.out.println("  💾 Saved to file (incremental)");
+            } else {
+                progress.failed++;
+                System.out.println("✗ Failed to extract job opportunity (empty result)");
+                errors.add(new ErrorDetail(
+                        email.getSubject(),
+                        email.getFrom(),
+                        "LLM returned null or empty response",
+                        "ExtractionFailure"));
+            }
+        } catch (NoSuchMethodError e) {
+            progress.failed++;
+            System.err.println("✗ DEPENDENCY ERROR: " + e.getMessage());
+            System.err.println("  This is likely a Jackson library version conflict.");
+            System.err.println("  Please rebuild the project: mvn clean install");
+            System.err.println("  Continuing with next email...");
+            errors.add(new ErrorDetail(
+                    email.getSubject(),
+                    email.getFrom(),
+                    "Jackson library version conflict: " + e.getMessage(),
+                    "DependencyError"));
+        } catch (Throwable e) {
+            progress.failed++;
+            System.err.println("✗ Error processing email: " + e.getClass().getSimpleName());
+            System.err.println("  Message: " + e.getMessage());
+            System.err.println("  Continuing with next email...");
+            errors.add(new ErrorDetail(
+                    email.getSubject(),
+                    email.getFrom(),
+                    e.getMessage(),
+                    e.getClass().getSimpleName()));
+            // Only print stack trace in verbose mode to avoid cluttering output
+            if (System.getProperty("verbose") != null) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Extract JobOpportunities from a single email using URL extraction + LLM
      */
     private List<JobOpportunity> extractFromEmail(EmailInfo email) {
         // STEP 1: Try direct HTML parsing for Cadremploi (regex extraction)
-        if (email.getFrom() != null && email.getFrom().toLowerCase().contains("offres@alertes.cadremploi.fr")) {
+        com.agty.urlextractor.CadreMploiURLExtractor cadreMploiExtractor =
+            new com.agty.urlextractor.CadreMploiURLExtractor();
+        if (cadreMploiExtractor.canHandle(email.getFrom(), email.getSubject())) {
             System.out.println("  → Detected Cadremploi email - attempting REGEX extraction...");
 
-            com.agty.urlextractor.CadreMploiURLExtractor cadreMploiExtractor =
-                new com.agty.urlextractor.CadreMploiURLExtractor();
-
             List<JobOpportunity> regexOpportunities = cadreMploiExtractor.extractJobOpportunities(
                 email.getContent(),
                 email.getSubject()
@@ -240,6 +322,7 @@ public class JobOpportunityExtractor {
                 for (JobOpportunity opportunity : regexOpportunities) {
                     opportunity.setSourceEmailSubject(email.getSubject());
                     opportunity.setSourceEmailFrom(email.getFrom());
+                    opportunity.setSourceEmailMessageId(email.getMessageId());
                     opportunity.setSourceEmailDate(email.getSentDate() != null ? email.getSentDate().toString() : null);
                 }
 
@@ -300,6 +383,7 @@ public class JobOpportunityExtractor {
                 // Add source email metadata
                 opportunity.setSourceEmailSubject(email.getSubject());
                 opportunity.setSourceEmailFrom(email.getFrom());
+                opportunity.setSourceEmailMessageId(email.getMessageId());
                 opportunity.setSourceEmailDate(email.getSentDate() != null ? email.getSentDate().toString() : null);
 
                 // Set portal name if detected (even if URL extraction failed)
@@ -505,8 +589,8 @@ public class JobOpportunityExtractor {
                             "This likely means the LLM response was truncated. Try increasing max_tokens parameter. " +
                             "Response length: " + cleanedJson.length() + " chars");
                 }
-                return mapper.readValue(cleanedJson, new TypeReference<List<JobOpportunity>>() {
-                });
+                return JsonMappers.reader(new TypeReference<List<JobOpportunity>>() {
+                }).readValue(cleanedJson);
             } else if (cleanedJson.startsWith("{")) {
                 // Parse as Single Object
                 if (!cleanedJson.endsWith("}")) {
@@ -514,7 +598,7 @@ public class JobOpportunityExtractor {
                             "This likely means the LLM response was truncated. Try increasing max_tokens parameter. " +
                             "Response length: " + cleanedJson.length() + " chars");
                 }
-                JobOpportunity opp = mapper.readValue(cleanedJson, JobOpportunity.class);
+                JobOpportunity opp = JsonMappers.reader(JobOpportunity.class).readValue(cleanedJson);
                 List<JobOpportunity> list = new ArrayList<>();
                 list.add(opp);
                 return list;
@@ -537,74 +621,63 @@ public class JobOpportunityExtractor {
     }
 
     /**
-     * Load emails from JSON file
+     * Store of the input emails, shared with GmailEmailProcessor02 if it is still writing
+     * (imported from the JSON file on the first run)
      */
-    private List<EmailInfo> loadEmailsFromJson(String filePath) throws IOException {
-        File inputFile = new File(filePath);
-        if (!inputFile.exists()) {
+    private RecordStore<EmailInfo> openEmailsStore(String filePath) throws IOException {
+        if (!new File(filePath).exists() && !RecordStore.exists(filePath)) {
             throw new IOException("Input file not found: " + filePath);
         }
-
-        return mapper.readValue(inputFile, new TypeReference<List<EmailInfo>>() {
-        });
+        return RecordStore.open(filePath, RecordSchemas.EMAILS, mapper);
     }
 
     /**
-     * Load existing job opportunities from output file if it exists
+     * Stream the existing job opportunities of the output store, one at a time
      * This allows resuming from where we left off if the process was interrupted
      */
-    private List<JobOpportunity> loadExistingOpportunities(String filePath) {
-        File outputFile = new File(filePath);
-        if (!outputFile.exists()) {
-            return new ArrayList<>();
-        }
-
+    private static void forEachExistingOpportunity(RecordStore<JobOpportunity> store, Consumer<JobOpportunity> action) {
         try {
-            List<JobOpportunity> existing = mapper.readValue(outputFile,
-                    new TypeReference<List<JobOpportunity>>() {
-                    });
-            return existing;
+            store.forEach(action);
         } catch (IOException e) {
-            System.err.println("Warning: Could not load existing opportunities from " + filePath);
+            System.err.println("Warning: Could not load existing opportunities from the store");
             System.err.println("  " + e.getMessage());
             System.err.println("  Starting fresh...");
-            return new ArrayList<>();
         }
     }
 
     /**
-     * Save job opportunities to JSON file
+     * Export the store to the output file (plain JSON array) and release it
      */
-    private void saveJobOpportunitiesToJson(List<JobOpportunity> opportunities, String outputFilePath) {
-        saveJobOpportunitiesToJson(opportunities, outputFilePath, false);
-    }
-
-    private void saveJobOpportunitiesToJson(List<JobOpportunity> opportunities, String outputFilePath,
-            boolean verbose) {
+    private void closeStore(RecordStore<JobOpportunity> store, int count, String outputFilePath) {
         try {
-            File outputFile = new File(outputFilePath);
-
-            // Create parent directories if needed
-            File parentDir = outputFile.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-                if (verbose) {
-                    System.out.println("Created directory: " + parentDir.getAbsolutePath());
-                }
-            }
-
-            mapper.writeValue(outputFile, opportunities);
-            if (verbose) {
-                System.out.println("✓ Successfully saved " + opportunities.size() +
-                        " job opportunities to: " + outputFilePath);
-                System.out.println("  File size: " + outputFile.length() + " bytes");
-            }
+            store.close();
+            System.out.println("✓ Successfully saved " + count + " job opportunities to: " + outputFilePath);
+            System.out.println("  File size: " + new File(outputFilePath).length() + " bytes");
         } catch (IOException e) {
-            System.err.println("ERROR: Failed to save job opportunities: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("ERROR: Failed to export job opportunities store (kept in " + outputFilePath + ".store.mv.db): " + e.getMessage());
         }
     }
 
+    /**
+     * Index an opportunity in the near-duplicate index and set its offer_cluster_id
+     * (signature of the first copy of the offer); an empty opportunity (signature 0) is not
+     * indexed and gets no offer_cluster_id, as in JobOfferDeduplicator
+     *
+     * @return true if the opportunity is a copy of an offer already indexed
+     */
+    private static boolean assignOfferCluster(NearDuplicateIndex index, JobOpportunity opportunity) {
+        long signature = OfferSignature.of(opportunity.getTitle(), opportunity.getCompany(),
+                opportunity.getLocation(), opportunity.getResponsibilities());
+        if (signature == 0) {
+            opportunity.setOfferClusterId(null);  // nothing to compare
+            return false;
+        }
+        int id = index.add(signature);
+        int canonical = index.canonical(id);
+        opportunity.setOfferClusterId("offer-" + Long.toHexString(index.signature(canonical)));
+        return canonical != id;
+    }
+
     /**
      * Utility method to truncate strings for display
      */
@@ -684,6 +757,70 @@ public class JobOpportunityExtractor {
         return str.substring(0, maxLength - 3) + "...";
     }
 
+    /**
+     * Result of the extraction of an email, computed on a virtual thread
+     */
+    private static class Extraction {
+        final EmailInfo email;
+        final MessageIdentityIndex.Identity emailKey;
+        final long emailSignature;
+        List<JobOpportunity> opportunities;
+        Throwable error;
+
+        Extraction(EmailInfo email, MessageIdentityIndex.Identity emailKey, long emailSignature) {
+            this.email = email;
+            this.emailKey = emailKey;
+            this.emailSignature = emailSignature;
+        }
+    }
+
+    /**
+     * Keys and signatures of the emails submitted and not collected yet (touched by the submitting
+     * thread only). A copy submitted meanwhile is skipped like one already extracted; if the first
+     * extraction fails or gives a digest, the copy is not marked processed and comes back next run.
+     */
+    private static class InFlightEmails {
+        private final Set<String> keys = new HashSet<>();
+        private final List<Long> signatures = new ArrayList<>();  // at most LLM_MAX_CONCURRENCY
+
+        boolean containsKey(MessageIdentityIndex.Identity emailKey) {
+            return emailKey.getPrimaryKey() != null && keys.contains(emailKey.getPrimaryKey());
+        }
+
+        boolean hasNear(long signature) {
+            for (long other : signatures) {
+                if (OfferSignature.distance(signature, other) <= NEAR_DUPLICATE_EMAIL_MAX_DISTANCE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(MessageIdentityIndex.Identity emailKey, long signature) {
+            if (emailKey.getPrimaryKey() != null) {
+                keys.add(emailKey.getPrimaryKey());
+            }
+            if (signature != 0) {
+                signatures.add(signature);
+            }
+        }
+
+        void remove(MessageIdentityIndex.Identity emailKey, long signature) {
+            if (emailKey.getPrimaryKey() != null) {
+                keys.remove(emailKey.getPrimaryKey());
+            }
+            signatures.remove(Long.valueOf(signature));
+        }
+    }
+
+    /**
+     * Counters updated while collecting the extractions
+     */
+    private static class ExtractionProgress {
+        int successful = 0;
+        int failed = 0;
+    }
+
     /**
      * Inner class to track error details for reporting
      */
@@ -0,0 +1,78 @@
+package com.agty;
+
+import com.agty.mail.MessageSource;
+import com.agty.mail.MimeMessageDecoder;
+import com.agty.store.HistoryJsonFile;
+import com.agty.store.RecordSchemas;
+import com.agty.store.RecordStore;
+import com.agty.utils.JsonMappers;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Reader of the labelled corpora used to train the offline classifiers
+ * (JobClassifierTrainer, EmbeddingCentroidTrainer). A corpus path is one of:
+ * - an mbox file or a directory of .eml files (see MessageSource)
+ * - a .json list of EmailInfo (output of GmailEmailProcessor02), read from its store when it has one
+ * - a .txt run log: subjects of the "[n/m] Processing: <subject>" lines (e.g. veri_negativi.txt)
+ */
+public class LabelledCorpus {
+
+    /**
+     * Called for every email of a corpus (body and from may be null, e.g. for run logs)
+     */
+    public interface EmailVisitor {
+        void visit(String messageId, String subject, String body, String from);
+    }
+
+    /**
+     * Visit all the readable emails of a corpus; unreadable messages are skipped with a warning
+     */
+    public static void forEach(Path path, EmailVisitor visitor) throws IOException {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".json") && RecordStore.exists(path.toString())) {
+            // The history JSON is only rewritten on demand: its store holds the current emails
+            RecordStore<GmailEmailProcessor02.EmailInfo> store =
+                    RecordStore.open(path.toString(), RecordSchemas.EMAILS, JsonMappers.lenient());
+            try {
+                store.forEach(email -> visitor.visit(email.getMessageId(), email.getSubject(), email.getContent(), email.getFrom()));
+            } finally {
+                store.release();
+            }
+        } else if (name.endsWith(".json")) {
+            // Streamed one email at a time (history files hold up to ~80KB of content per email)
+            HistoryJsonFile.forEach(path.toString(), GmailEmailProcessor02.EmailInfo.class, JsonMappers.lenient(),
+                    email -> visitor.visit(email.getMessageId(), email.getSubject(), email.getContent(), email.getFrom()));
+        } else if (name.endsWith(".txt")) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                int index = line.indexOf("Processing: ");
+                if (index >= 0) {
+                    visitor.visit(null, line.substring(index + "Processing: ".length()).trim(), null, null);
+                }
+            }
+        } else {
+            try (MessageSource source = MessageSource.open(path)) {
+                Iterator<Message> messages = source.iterator();
+                while (messages.hasNext()) {
+                    try {
+                        Message message = messages.next();
+                        Address[] from = message.getFrom();
+                        String sender = from != null && from.length > 0 ? from[0].toString() : null;
+                        String messageId = message instanceof MimeMessage ? ((MimeMessage) message).getMessageID() : null;
+                        String body = MimeMessageDecoder.decode(message).getAllText();
+                        visitor.visit(messageId, message.getSubject(), body, sender);
+                    } catch (Exception e) {
+                        System.err.println("  ✗ Skipping unreadable message: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.agty;
+
+import com.agty.mail.MessageSource;
+import com.agty.version_fetch_folders.JobAlertEmailFoldersProcessor;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Offline replay of archived emails (mbox file or directory of .eml files) through the pipelines,
+ * without connecting to Gmail.
+ *
+ * Usage: OfflineReplayRunner <mbox file | eml dir> [score|extract] [output json]
+ * - score   : relevance scoring of GmailEmailProcessor02 (default)
+ * - extract : LLM extraction of JobAlertEmailFoldersProcessor (name the directory like the folder, e.g. JobOffers_CadreEmploi)
+ */
+public class OfflineReplayRunner {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: OfflineReplayRunner <mbox file | eml dir> [score|extract] [output json]");
+            return;
+        }
+        Path input = Paths.get(args[0]);
+        String mode = args.length > 1 ? args[1] : "score";
+        String outputPath = args.length > 2 ? args[2]
+                : System.getProperty("user.dir") + "/tools_data/replay_" + mode + "_" + input.getFileName() + ".json";
+
+        try (MessageSource source = MessageSource.open(input)) {
+            if ("extract".equalsIgnoreCase(mode)) {
+                JobAlertEmailFoldersProcessor processor = new JobAlertEmailFoldersProcessor(
+                        "offline", null, "http://localhost:11434", "llama3.2:latest");
+                List<JobOfferExtraction> extractions = processor.processMessageSource(source, outputPath);
+                System.out.println("\n🎉 " + extractions.size() + " new job offers in " + outputPath);
+            } else {
+                GmailEmailProcessor02 processor = new GmailEmailProcessor02("offline", null, "OfflineReplay");
+                List<GmailEmailProcessor02.EmailInfo> emails = processor.processMessageSource(source, "job", Integer.MAX_VALUE, outputPath);
+                System.out.println("\n🎉 " + emails.size() + " relevant emails in " + outputPath);
+            }
+        } catch (Exception e) {
+            System.err.println("\n❌ ERROR: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
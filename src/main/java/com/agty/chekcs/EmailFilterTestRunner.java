@@ -1,6 +1,8 @@
 package com.agty.chekcs;
 
 import com.agty.GmailEmailProcessor02;
+import com.agty.scoring.CompiledRules;
+import com.agty.scoring.ScoringRuleBook;
 
 import java.util.Date;
 
@@ -203,7 +205,8 @@ public class EmailFilterTestRunner {
     private static void testPositive(String testName, String from, String subject, String content, int minExpectedScore) {
         totalTests++;
         GmailEmailProcessor02.EmailInfo email = createEmail(from, subject, content);
-        int score = processor.calculateRelevanceScore(email, "job", GmailEmailProcessor02.SENDER_DOMAIN_NAMES, GmailEmailProcessor02.NON_JOB_SENDER_DOMAIN_NAMES);
+        CompiledRules rules = ScoringRuleBook.getDefault().current();
+        int score = processor.calculateRelevanceScore(email, "job", rules.getTrustedSenders(), rules.getNonJobSenders());
 
         boolean passed = score > 0 && score >= minExpectedScore;
 
@@ -223,7 +226,8 @@ public class EmailFilterTestRunner {
     private static void testNegative(String testName, String from, String subject, String content) {
         totalTests++;
         GmailEmailProcessor02.EmailInfo email = createEmail(from, subject, content);
-        int score = processor.calculateRelevanceScore(email, "job", GmailEmailProcessor02.SENDER_DOMAIN_NAMES, GmailEmailProcessor02.NON_JOB_SENDER_DOMAIN_NAMES);
+        CompiledRules rules = ScoringRuleBook.getDefault().current();
+        int score = processor.calculateRelevanceScore(email, "job", rules.getTrustedSenders(), rules.getNonJobSenders());
 
         boolean passed = (score == 0);
 
@@ -0,0 +1,85 @@
+package com.agty.chekcs;
+
+import com.agty.scoring.CompiledRules;
+import com.agty.scoring.ScoringRuleBook;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quick check of a scoring rules file against the subjects collected in veri_negativi*.txt
+ * (job alerts that the rules rejected in past runs), without connecting to Gmail.
+ *
+ * Usage: ScoringRulesCheck [rules.json] [subjects files...]
+ * Defaults: GlobalConfig.SCORING_RULES_FILE and src/main/resources/veri_negativi*.txt
+ */
+public class ScoringRulesCheck {
+
+    private static final String RESOURCES_DIR = "src/main/resources";
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("╔═══════════════════════════════════════════════════════════════════╗");
+        System.out.println("║          Scoring Rules Check - veri_negativi subjects             ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════════════╝");
+        System.out.println();
+
+        ScoringRuleBook ruleBook = args.length > 0 ? new ScoringRuleBook(new File(args[0])) : ScoringRuleBook.getDefault();
+        CompiledRules rules = ruleBook.current();
+        System.out.println("📏 Rules loaded: " + rules.getRuleCount());
+
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            files.add(Paths.get(args[i]));
+        }
+        if (files.isEmpty()) {
+            File[] defaults = new File(RESOURCES_DIR).listFiles((dir, name) -> name.startsWith("veri_negativi") && name.endsWith(".txt"));
+            if (defaults != null) {
+                for (File file : defaults) {
+                    files.add(file.toPath());
+                }
+            }
+        }
+
+        int total = 0;
+        int accepted = 0;
+        for (Path file : files) {
+            System.out.println();
+            System.out.println("📄 " + file);
+            for (String subject : readSubjects(file)) {
+                total++;
+                // Only the subject was logged: score it as an email with no body from an unknown sender
+                int senderClass = rules.classifySender("", "job");
+                int score = rules.score("job", subject, null, senderClass);
+                if (score > 0) {
+                    accepted++;
+                }
+                System.out.println((score > 0 ? "  ✓ " : "  ✗ ") + String.format("%3d", score) + "  " + subject);
+            }
+        }
+
+        System.out.println();
+        System.out.println("═══════════════════════════════════════════════════════════════════");
+        System.out.println("📊 " + accepted + "/" + total + " subjects accepted with these rules");
+        System.out.println("═══════════════════════════════════════════════════════════════════");
+    }
+
+    /**
+     * Subjects from the run logs ("[n/m] Processing: <subject>" lines)
+     */
+    private static List<String> readSubjects(Path file) throws IOException {
+        List<String> subjects = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int index = line.indexOf("Processing: ");
+            if (index >= 0) {
+                subjects.add(line.substring(index + "Processing: ".length()).trim());
+            }
+        }
+        return subjects;
+    }
+}
@@ -0,0 +1,175 @@
+package com.agty.dedup;
+
+import java.util.Arrays;
+
+/**
+ * In-memory index of SimHash signatures (see OfferSignature) that finds near duplicates and
+ * clusters them into canonical offers.
+ *
+ * Candidates come from LSH banding: the 64 bits are cut into maxDistance + 2 blocks, so two
+ * signatures at most maxDistance bits apart are equal on at least two blocks (pigeonhole).
+ * Every pair of blocks is a band, with its own hash table: near duplicates always meet in the
+ * bucket of at least one band, and a band key of two blocks keeps buckets small (distance 4:
+ * 6 blocks of ~11 bits, 15 bands keyed by ~21 bits, hashed into 2^16 buckets).
+ * Buckets are chained through int arrays (no object per entry), 12 + 4 * bands bytes per
+ * signature: 300,000 offers take ~25 MB and index in about a second.
+ * Matching signatures are merged with union-find; the canonical offer of a cluster is its
+ * first added member. Thread-safe.
+ */
+public class NearDuplicateIndex {
+
+    private static final int MAX_BUCKET_BITS = 16;
+
+    private final int maxDistance;
+    private final int bands;
+    private final long[] bandMask;   // bits of the two blocks of each band
+    private final int bucketBits;
+    private final int[][] heads;   // [band][bucket] -> last id in the bucket, -1 if empty
+    private int[][] next;          // [band][id] -> previous id in the same bucket, -1 at the end
+    private long[] signatures = new long[1024];
+    private int[] parents = new int[1024];
+    private int size = 0;
+
+    /**
+     * @param maxDistance Max Hamming distance (bits) between two near-duplicate signatures
+     */
+    public NearDuplicateIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > 12) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and 12: " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        int blocks = maxDistance + 2;
+        long[] blockMask = new long[blocks];
+        for (int block = 0; block < blocks; block++) {
+            int from = block * 64 / blocks;
+            int to = (block + 1) * 64 / blocks;
+            blockMask[block] = (to == 64 ? -1L : (1L << to) - 1) & ~((1L << from) - 1);
+        }
+        this.bands = blocks * (blocks - 1) / 2;
+        this.bandMask = new long[bands];
+        int band = 0;
+        int narrowest = 64;
+        for (int first = 0; first < blocks; first++) {
+            for (int second = first + 1; second < blocks; second++) {
+                bandMask[band] = blockMask[first] | blockMask[second];
+                narrowest = Math.min(narrowest, Long.bitCount(bandMask[band]));
+                band++;
+            }
+        }
+        this.bucketBits = Math.min(narrowest, MAX_BUCKET_BITS);
+        this.heads = new int[bands][1 << bucketBits];
+        this.next = new int[bands][1024];
+        for (int[] bandHeads : heads) {
+            Arrays.fill(bandHeads, -1);
+        }
+    }
+
+    /**
+     * Add a signature and merge it with the clusters of its near duplicates
+     *
+     * @return id of the signature (ids are 0, 1, 2... in order of addition)
+     */
+    public synchronized int add(long signature) {
+        int id = size++;
+        ensureCapacity(size);
+        signatures[id] = signature;
+        parents[id] = id;
+
+        boolean exactCopy = false;
+        for (int band = 0; band < bands; band++) {
+            for (int other = heads[band][bucket(signature, band)]; other >= 0; other = next[band][other]) {
+                int distance = OfferSignature.distance(signature, signatures[other]);
+                if (distance <= maxDistance) {
+                    union(id, other);
+                    exactCopy |= distance == 0;
+                }
+            }
+        }
+        // An exact copy finds the same candidates as the signature already indexed: not chained,
+        // so buckets do not grow with the number of copies of an offer
+        for (int band = 0; band < bands; band++) {
+            if (exactCopy) {
+                next[band][id] = -1;
+            } else {
+                int bucket = bucket(signature, band);
+                next[band][id] = heads[band][bucket];
+                heads[band][bucket] = id;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Id of the closest indexed signature within maxDistance bits, or -1
+     */
+    public synchronized int findNearest(long signature) {
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+        for (int band = 0; band < bands; band++) {
+            for (int other = heads[band][bucket(signature, band)]; other >= 0; other = next[band][other]) {
+                int distance = OfferSignature.distance(signature, signatures[other]);
+                if (distance < bestDistance || (distance == bestDistance && other < best)) {
+                    best = other;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Id of the canonical (first added) member of the cluster of an id
+     */
+    public synchronized int canonical(int id) {
+        return find(id);
+    }
+
+    public synchronized long signature(int id) {
+        return signatures[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Bucket of a signature in a band: multiplicative hash of the bits of the band's two blocks
+     */
+    private int bucket(long signature, int band) {
+        return (int) (((signature & bandMask[band]) * 0x9E3779B97F4A7C15L) >>> (64 - bucketBits));
+    }
+
+    private int find(int id) {
+        int root = id;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[id] != root) {  // path compression
+            int parent = parents[id];
+            parents[id] = root;
+            id = parent;
+        }
+        return root;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA != rootB) {
+            // The oldest member stays canonical
+            parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= signatures.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, signatures.length * 2);
+        signatures = Arrays.copyOf(signatures, newLength);
+        parents = Arrays.copyOf(parents, newLength);
+        for (int band = 0; band < bands; band++) {
+            next[band] = Arrays.copyOf(next[band], newLength);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.agty.dedup;
+
+import java.text.Normalizer;
+
+/**
+ * 64-bit SimHash signatures of job offers, for near-duplicate detection (see NearDuplicateIndex).
+ *
+ * The text is lowercased and stripped of accents, then every word is hashed to 64 bits; each
+ * bit of the signature is the sign of the weighted vote of the words. Words only (no word pairs):
+ * portals reorder and re-punctuate titles ("DSI - Directeur des SI" / "Directeur des SI (H/F)"),
+ * and pairs would double the weight of those differences. Offers that share most of their words
+ * get signatures a few bits apart, whatever the portal template around them: the Hamming
+ * distance approximates the textual distance.
+ * A signature of 0 means there is nothing to compare: such offers are not indexed and get no
+ * offer_cluster_id.
+ */
+public final class OfferSignature {
+
+    /**
+     * Number of email content chars in the email signature, same as the stored email_content_preview
+     */
+    public static final int EMAIL_CONTENT_CHARS = 500;
+
+    // Share of each field in the signature
+    private static final double TITLE_WEIGHT = 0.45;
+    private static final double COMPANY_WEIGHT = 0.3;
+    private static final double LOCATION_WEIGHT = 0.1;
+    private static final double DESCRIPTION_WEIGHT = 0.15;
+    private static final double SUBJECT_WEIGHT = 0.5;
+    private static final double CONTENT_WEIGHT = 0.5;
+    private static final int MAX_DESCRIPTION_CHARS = 4000;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private OfferSignature() {
+    }
+
+    /**
+     * Signature of an extracted offer, or 0 if all fields are empty
+     */
+    public static long of(String title, String company, String location, String description) {
+        double[] votes = new double[64];
+        int features = vote(votes, title, TITLE_WEIGHT)
+                + vote(votes, company, COMPANY_WEIGHT)
+                + vote(votes, location, LOCATION_WEIGHT)
+                + vote(votes, truncate(description, MAX_DESCRIPTION_CHARS), DESCRIPTION_WEIGHT);
+        return features > 0 ? fold(votes) : 0L;
+    }
+
+    /**
+     * Signature of a raw email before extraction: subject + first EMAIL_CONTENT_CHARS chars
+     * of the clean content, or 0 if both are empty
+     */
+    public static long ofEmail(String subject, String content) {
+        double[] votes = new double[64];
+        int features = vote(votes, subject, SUBJECT_WEIGHT)
+                + vote(votes, truncate(content, EMAIL_CONTENT_CHARS), CONTENT_WEIGHT);
+        return features > 0 ? fold(votes) : 0L;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Add the word features of a field to the bit votes. The votes of a field are
+     * divided by its number of features, so a long description weighs as much as a short one
+     * and never drowns the title and company.
+     *
+     * @return number of features of the field
+     */
+    private static int vote(double[] votes, String text, double weight) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        int[] fieldVotes = new int[64];
+        int features = 0;
+        long word = FNV_OFFSET;
+        int wordLength = 0;
+        for (int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;  // accent removed by the decomposition
+            }
+            if (Character.isLetterOrDigit(c)) {
+                word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+                wordLength++;
+            } else if (wordLength > 0) {
+                if (wordLength > 1) {  // single letters ("h", "f", "d") are noise
+                    add(fieldVotes, mix(word));
+                    features++;
+                }
+                word = FNV_OFFSET;
+                wordLength = 0;
+            }
+        }
+        for (int bit = 0; bit < 64 && features > 0; bit++) {
+            votes[bit] += weight * fieldVotes[bit] / features;
+        }
+        return features;
+    }
+
+    private static void add(int[] votes, long hash) {
+        for (int bit = 0; bit < 64; bit++) {
+            votes[bit] += ((hash >>> bit) & 1L) != 0 ? 1 : -1;
+        }
+    }
+
+    private static long fold(double[] votes) {
+        long signature = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                signature |= 1L << bit;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 64-bit finalizer (MurmurHash3 fmix64), so every FNV bit influences every signature bit
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static String truncate(String text, int maxChars) {
+        return text != null && text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+}
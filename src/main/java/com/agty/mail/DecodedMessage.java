@@ -0,0 +1,120 @@
+package com.agty.mail;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Result of decoding a message body once (see MimeMessageDecoder): the text/plain and text/html
+ * parts, the normalized text and the anchors of the HTML. The HTML is parsed with Jsoup on the
+ * first call to getCleanText() or getLinks() only, then kept: scoring only reads getAllText().
+ */
+public final class DecodedMessage {
+
+    private static final Pattern URL_PATTERN = Pattern.compile("https?://[^\\s\"'<>]+", Pattern.CASE_INSENSITIVE);
+
+    private final String plainText;
+    private final String html;
+    private final String allText;
+    private Document document;   // parsed on first use
+    private String cleanText;
+    private List<Link> links;
+
+    DecodedMessage(String plainText, String html, String allText) {
+        this.plainText = plainText;
+        this.html = html;
+        this.allText = allText;
+    }
+
+    /**
+     * Concatenated text/plain parts ("" if none)
+     */
+    public String getPlainText() { return plainText; }
+
+    /**
+     * Concatenated text/html parts, not converted ("" if none)
+     */
+    public String getHtml() { return html; }
+
+    public boolean hasHtml() { return !html.isEmpty(); }
+
+    /**
+     * Raw content for link extraction: HTML if available, otherwise plain text
+     */
+    public String getRawContent() { return hasHtml() ? html : plainText; }
+
+    /**
+     * All text and HTML parts in part order, unconverted
+     */
+    public String getAllText() { return allText; }
+
+    /**
+     * Normalized text: plain text if available, otherwise the text of the HTML,
+     * without invisible characters and with collapsed whitespace
+     */
+    public synchronized String getCleanText() {
+        if (cleanText == null) {
+            cleanText = MimeMessageDecoder.cleanText(plainText.isEmpty() && hasHtml() ? document().text() : plainText);
+        }
+        return cleanText;
+    }
+
+    /**
+     * Links of the message: anchors of the HTML, or URLs found in the plain text
+     */
+    public synchronized List<Link> getLinks() {
+        if (links == null) {
+            List<Link> found = new ArrayList<>();
+            if (hasHtml()) {
+                for (Element anchor : document().select("a[href]")) {
+                    found.add(new Link(anchor.attr("href"), anchor.text()));
+                }
+            } else {
+                Matcher matcher = URL_PATTERN.matcher(plainText);
+                while (matcher.find()) {
+                    found.add(new Link(matcher.group(), ""));
+                }
+            }
+            links = Collections.unmodifiableList(found);
+        }
+        return links;
+    }
+
+    private Document document() {
+        if (document == null) {
+            document = Jsoup.parse(html);
+        }
+        return document;
+    }
+
+    /**
+     * A link found in the message body
+     */
+    public static final class Link {
+        private final String href;
+        private final String text;
+
+        public Link(String href, String text) {
+            this.href = href;
+            this.text = text;
+        }
+
+        public String getHref() { return href; }
+
+        /**
+         * Anchor text ("" for links found in plain text)
+         */
+        public String getText() { return text; }
+
+        @Override
+        public String toString() {
+            return href;
+        }
+    }
+}
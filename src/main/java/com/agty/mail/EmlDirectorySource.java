@@ -0,0 +1,70 @@
+package com.agty.mail;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Message source reading every *.eml file of a directory tree (in path order).
+ * Files are parsed one at a time, when the iterator reaches them.
+ */
+public class EmlDirectorySource implements MessageSource {
+
+    private final Path dir;
+    private final Session session = Session.getInstance(new Properties());
+    private Stream<Path> files;
+
+    public EmlDirectorySource(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public String getName() {
+        return dir.getFileName() != null ? dir.getFileName().toString() : dir.toString();
+    }
+
+    @Override
+    public Iterator<Message> iterator() {
+        try {
+            files = Files.walk(dir)
+                    .filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().toLowerCase().endsWith(".eml"))
+                    .sorted();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Iterator<Path> paths = files.iterator();
+        return new Iterator<Message>() {
+            @Override
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
+
+            @Override
+            public Message next() {
+                Path path = paths.next();
+                try (InputStream in = Files.newInputStream(path)) {
+                    return new MimeMessage(session, in);
+                } catch (IOException | MessagingException e) {
+                    throw new MessageSourceException("Cannot read " + path, e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (files != null) {
+            files.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.agty.mail;
+
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.ProtocolException;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.IMAPResponse;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+
+/**
+ * Search backend using Gmail's X-GM-RAW IMAP extension.
+ *
+ * The whole query (all topic keywords, the trusted sender domains and the date range)
+ * is sent as one native Gmail search string, e.g.
+ * <pre>after:2025/01/10 {offer offre "remote work" from:linkedin.com from:apec.fr}</pre>
+ * so there is no keyword cap and the body search runs on Gmail's index.
+ * Only available on servers advertising the X-GM-EXT-1 capability.
+ */
+public class GmailRawSearchBackend implements MailSearchBackend {
+
+    private static final String GMAIL_EXTENSION = "X-GM-EXT-1";
+
+    @Override
+    public boolean isSupported(Folder folder) throws MessagingException {
+        return folder instanceof IMAPFolder
+                && folder.getStore() instanceof IMAPStore
+                && ((IMAPStore) folder.getStore()).hasCapability(GMAIL_EXTENSION);
+    }
+
+    @Override
+    public Message[] search(Folder folder, SearchQuery query) throws MessagingException {
+        IMAPFolder imapFolder = (IMAPFolder) folder;
+        String rawQuery = buildRawQuery(query);
+        long minUid = query.getMinUid();
+        System.out.println("Executing Gmail X-GM-RAW search: " + rawQuery +
+                (minUid > 0 ? " (UID > " + minUid + ")" : ""));
+
+        long[] uids = (long[]) imapFolder.doCommand(protocol -> {
+            Argument args = new Argument();
+            args.writeAtom("CHARSET");
+            args.writeAtom("UTF-8");
+            if (minUid > 0) {
+                args.writeAtom("UID");
+                args.writeAtom((minUid + 1) + ":*");
+            }
+            args.writeAtom("X-GM-RAW");
+            args.writeString(rawQuery, StandardCharsets.UTF_8);
+
+            Response[] responses = protocol.command("UID SEARCH", args);
+            Response result = responses[responses.length - 1];
+            long[] found = new long[0];
+            int count = 0;
+            if (result.isOK()) {
+                for (Response response : responses) {
+                    if (!(response instanceof IMAPResponse)) {
+                        continue;
+                    }
+                    IMAPResponse imapResponse = (IMAPResponse) response;
+                    if (imapResponse.keyEquals("SEARCH")) {
+                        long uid;
+                        while ((uid = imapResponse.readLong()) != -1) {
+                            if (count == found.length) {
+                                found = Arrays.copyOf(found, Math.max(16, count * 2));
+                            }
+                            found[count++] = uid;
+                        }
+                    }
+                }
+            }
+            protocol.notifyResponseHandlers(responses);
+            protocol.handleResult(result);
+            return Arrays.copyOf(found, count);
+        });
+
+        // "UID n:*" also returns the last message when nothing is newer
+        Arrays.sort(uids);
+        int from = 0;
+        while (from < uids.length && uids[from] <= minUid) {
+            from++;
+        }
+        long[] newUids = Arrays.copyOfRange(uids, from, uids.length);
+        if (newUids.length == 0) {
+            return new Message[0];
+        }
+        return imapFolder.getMessagesByUID(newUids);
+    }
+
+    @Override
+    public String getBackendName() {
+        return "Gmail X-GM-RAW";
+    }
+
+    /**
+     * Build the Gmail search string for a query.
+     * {a b c} is Gmail's OR group; plain words match subject and body.
+     */
+    static String buildRawQuery(SearchQuery query) {
+        StringBuilder raw = new StringBuilder();
+        raw.append("after:").append(new SimpleDateFormat("yyyy/MM/dd").format(query.getSinceDate()));
+
+        raw.append(" {");
+        boolean first = true;
+        if (query.hasSpecificSenders()) {
+            for (String sender : query.getSpecificSenders()) {
+                first = appendTerm(raw, "from:" + sender.trim(), first);
+            }
+        } else {
+            for (String keyword : query.getKeywords()) {
+                first = appendTerm(raw, quote(keyword), first);
+            }
+            for (String domain : query.getTrustedSenderDomains()) {
+                first = appendTerm(raw, "from:" + domain.trim(), first);
+            }
+        }
+        raw.append("}");
+
+        if (first) {
+            // Nothing to OR together, date range only
+            raw.setLength(raw.length() - 3);
+        }
+        return raw.toString();
+    }
+
+    private static boolean appendTerm(StringBuilder raw, String term, boolean first) {
+        if (!first) {
+            raw.append(' ');
+        }
+        raw.append(term);
+        return false;
+    }
+
+    private static String quote(String keyword) {
+        String trimmed = keyword.trim().replace("\"", "");
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                return "\"" + trimmed + "\"";
+            }
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,126 @@
+package com.agty.mail;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounded pool of authenticated IMAP Stores for one account.
+ *
+ * Idle Stores are reused and health-checked (isConnected, which sends a NOOP on IMAP)
+ * before being handed out; dead ones are closed and replaced.
+ * The number of Stores borrowed at the same time is capped per account, across all pools
+ * of that account, since Gmail refuses more than 15 simultaneous IMAP connections.
+ */
+public class ImapStorePool implements AutoCloseable {
+
+    // Connection permits shared by every pool of the same account
+    private static final Map<String, Semaphore> ACCOUNT_PERMITS = new ConcurrentHashMap<>();
+
+    private final Session session;
+    private final String host;
+    private final String username;
+    private final String password;
+    private final Semaphore permits;
+    private final Deque<Store> idle = new ArrayDeque<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param props          Session properties (protocol, ssl, peek, ...)
+     * @param host           IMAP host
+     * @param username       Account user
+     * @param password       Account (app) password
+     * @param maxConnections Max Stores open at the same time for this account
+     */
+    public ImapStorePool(Properties props, String host, String username, String password, int maxConnections) {
+        this.session = Session.getInstance(props);
+        this.host = host;
+        this.username = username;
+        this.password = password;
+        this.permits = ACCOUNT_PERMITS.computeIfAbsent(username + "@" + host,
+                k -> new Semaphore(Math.max(1, maxConnections), true));
+    }
+
+    /**
+     * Get a connected Store, waiting if the account's connection cap is reached.
+     * Every borrowed Store must be given back with release()
+     */
+    public Store borrow() throws MessagingException {
+        if (closed) {
+            throw new IllegalStateException("IMAP store pool is closed");
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for an IMAP connection", e);
+        }
+        try {
+            Store store;
+            while ((store = pollIdle()) != null) {
+                if (store.isConnected()) {
+                    return store;
+                }
+                System.out.println("⚠️  Dropping dead IMAP connection from pool");
+                closeQuietly(store);
+            }
+            store = session.getStore("imaps");
+            store.connect(host, username, password);
+            System.out.println("✓ Opened pooled IMAP connection (" + Thread.currentThread().getName() + ")");
+            return store;
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give a Store back to the pool
+     */
+    public void release(Store store) {
+        if (store == null) {
+            return;
+        }
+        boolean keep = !closed && store.isConnected();
+        if (keep) {
+            synchronized (idle) {
+                idle.push(store);
+            }
+        } else {
+            closeQuietly(store);
+        }
+        permits.release();
+    }
+
+    /**
+     * Close all idle Stores. Stores still borrowed are closed when released
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Store store;
+        while ((store = pollIdle()) != null) {
+            closeQuietly(store);
+        }
+    }
+
+    private Store pollIdle() {
+        synchronized (idle) {
+            return idle.poll();
+        }
+    }
+
+    private static void closeQuietly(Store store) {
+        try {
+            store.close();
+        } catch (MessagingException e) {
+            // Already broken, nothing to do
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.agty.mail;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.search.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Portable search backend built on JavaMail SearchTerms.
+ * Works on any IMAP server, but the nested OR(SUBJECT, BODY) tree has to be kept small
+ * to avoid IMAP parsing errors, so only the first keywords are used.
+ */
+public class JavaMailSearchBackend implements MailSearchBackend {
+
+    // Limit to first 5 keywords to avoid complex query issues
+    private static final int KEYWORD_LIMIT = 5;
+
+    @Override
+    public boolean isSupported(Folder folder) {
+        return true;
+    }
+
+    @Override
+    public Message[] search(Folder folder, SearchQuery query) throws MessagingException {
+        SearchTerm searchTerm = buildSearchTerm(query);
+        System.out.println("Executing IMAP search...with search terms=" + searchTerm);
+
+        if (query.getMinUid() > 0) {
+            Message[] newMessages = UidCheckpointStore.messagesAfter(folder, query.getMinUid());
+            System.out.println("Incremental sync: " + newMessages.length + " new messages since UID " + query.getMinUid());
+            return newMessages.length > 0 ? folder.search(searchTerm, newMessages) : newMessages;
+        }
+        return folder.search(searchTerm);
+    }
+
+    @Override
+    public String getBackendName() {
+        return "JavaMail SearchTerm";
+    }
+
+    /**
+     * Build a simplified search term for topic-based searching
+     * Simplified to avoid IMAP parsing errors with complex queries
+     */
+    static SearchTerm buildSearchTerm(SearchQuery query) {
+        // Start with date constraint
+        SearchTerm dateTerm = new ReceivedDateTerm(ComparisonTerm.GT, query.getSinceDate());
+
+        // If specific senders provided, combine with date
+        if (query.hasSpecificSenders()) {
+            List<SearchTerm> senderTerms = new ArrayList<>();
+            for (String sender : query.getSpecificSenders()) {
+                try {
+                    senderTerms.add(new FromTerm(new InternetAddress(sender)));
+                } catch (AddressException e) {
+                    // Skip invalid addresses
+                }
+            }
+
+            if (!senderTerms.isEmpty()) {
+                SearchTerm senderTerm = senderTerms.get(0);
+                for (int i = 1; i < senderTerms.size(); i++) {
+                    senderTerm = new OrTerm(senderTerm, senderTerms.get(i));
+                }
+                return new AndTerm(dateTerm, senderTerm);
+            }
+        }
+
+        // For topic search, use a simplified approach with fewer OR terms
+        // Use only the most important keywords to avoid IMAP parse errors
+        String[] keywords = query.getKeywords();
+        int keywordLimit = Math.min(KEYWORD_LIMIT, keywords.length);
+        if (keywordLimit == 0) {
+            return dateTerm;
+        }
+        List<SearchTerm> keywordTerms = new ArrayList<>();
+
+        for (int i = 0; i < keywordLimit; i++) {
+            String keyword = keywords[i];
+            // Create OR term for subject OR body for each keyword
+            SearchTerm subjectTerm = new SubjectTerm(keyword);
+            SearchTerm bodyTerm = new BodyTerm(keyword);
+            keywordTerms.add(new OrTerm(subjectTerm, bodyTerm));
+        }
+
+        // Combine keyword terms with OR
+        SearchTerm keywordTerm = keywordTerms.get(0);
+        for (int i = 1; i < keywordTerms.size(); i++) {
+            keywordTerm = new OrTerm(keywordTerm, keywordTerms.get(i));
+        }
+
+        // Combine date and keywords with AND
+        return new AndTerm(dateTerm, keywordTerm);
+    }
+}
@@ -0,0 +1,30 @@
+package com.agty.mail;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+
+/**
+ * Interface for the server-side part of a topic search.
+ * Different implementations translate a SearchQuery into different IMAP queries
+ * (plain JavaMail SearchTerm, Gmail X-GM-RAW, ...)
+ */
+public interface MailSearchBackend {
+
+    /**
+     * Check if this backend can run against the given (open) folder
+     */
+    boolean isSupported(Folder folder) throws MessagingException;
+
+    /**
+     * Run the search on an open folder
+     *
+     * @return matching messages in ascending UID order
+     */
+    Message[] search(Folder folder, SearchQuery query) throws MessagingException;
+
+    /**
+     * Get the name of this backend (for logging purposes)
+     */
+    String getBackendName();
+}
@@ -0,0 +1,112 @@
+package com.agty.mail;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+/**
+ * Message source reading an mbox file (e.g. a Google Takeout export).
+ *
+ * Messages are separated by "From " lines; ">From " quoting (mboxrd) is undone.
+ * The file is streamed: only the current message is held in memory. A message that cannot be
+ * parsed is reported (MessageSourceException) and iteration resumes at the next "From " line.
+ */
+public class MboxSource implements MessageSource {
+
+    private final Path file;
+    private final Session session = Session.getInstance(new Properties());
+    private BufferedReader reader;
+
+    public MboxSource(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return file.getFileName().toString();
+    }
+
+    @Override
+    public Iterator<Message> iterator() {
+        try {
+            // ISO-8859-1 maps every byte to one char, so raw 8-bit bodies survive the round trip
+            reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Iterator<Message>() {
+            private String pendingLine = skipToFirstSeparator();
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return pendingLine != null;
+            }
+
+            @Override
+            public Message next() {
+                if (pendingLine == null) {
+                    throw new NoSuchElementException();
+                }
+                index++;
+                ByteArrayOutputStream raw = new ByteArrayOutputStream(16 * 1024);
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null && !isSeparator(line)) {
+                        if (line.startsWith(">") && line.replaceFirst("^>+", "").startsWith("From ")) {
+                            line = line.substring(1);
+                        }
+                        raw.write(line.getBytes(StandardCharsets.ISO_8859_1));
+                        raw.write('\r');
+                        raw.write('\n');
+                    }
+                    pendingLine = line;
+                    return new MimeMessage(session, new ByteArrayInputStream(raw.toByteArray()));
+                } catch (MessagingException e) {
+                    // pendingLine already holds the next separator: the replay goes on from there
+                    throw new MessageSourceException("Cannot parse message #" + index + " of " + file, e);
+                } catch (IOException e) {
+                    pendingLine = null;
+                    throw new MessageSourceException("Cannot read message #" + index + " of " + file, e);
+                }
+            }
+        };
+    }
+
+    private String skipToFirstSeparator() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (isSeparator(line)) {
+                    return line;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isSeparator(String line) {
+        return line.startsWith("From ");
+    }
+
+    @Override
+    public void close() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+}
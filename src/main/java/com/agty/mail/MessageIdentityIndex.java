@@ -0,0 +1,169 @@
+package com.agty.mail;
+
+import com.agty.scoring.SenderClassifier;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Hash index of the messages already seen, so duplicate checks are constant-time whatever
+ * the size of the history.
+ *
+ * A message is identified by its Message-ID ("mid:") and by a normalized subject|from|sent-millis
+ * key ("msg:"); history records written before Message-IDs were stored only have the second one.
+ * A message is a duplicate if any of its keys is already in the index.
+ * The keys are kept in memory, or in a ProcessedKeyFilter persisted next to the history file.
+ * Thread-safe: shared by the workers of a run.
+ */
+public class MessageIdentityIndex {
+
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+    private final ProcessedKeyFilter persisted;  // null = in memory only
+
+    public MessageIdentityIndex() {
+        this(null);
+    }
+
+    public MessageIdentityIndex(ProcessedKeyFilter persisted) {
+        this.persisted = persisted;
+    }
+
+    /**
+     * Index persisted next to a history file (see ProcessedKeyFilter). The first time, it is
+     * filled with the identities of the history records; afterwards they are not needed.
+     * Falls back to an in-memory index of the history if the filter cannot be opened.
+     */
+    public static MessageIdentityIndex forHistoryFile(String historyFilePath, Supplier<List<Identity>> history) {
+        MessageIdentityIndex index;
+        try {
+            index = new MessageIdentityIndex(ProcessedKeyFilter.forHistoryFile(historyFilePath));
+            if (!index.persisted.isEmpty()) {
+                System.out.println("🔑 " + index.size() + " processed keys from " + historyFilePath + ".keys.*");
+                return index;
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️  Processed-key filter unavailable (" + e.getMessage() + "), indexing the history in memory");
+            index = new MessageIdentityIndex();
+        }
+        for (Identity identity : history.get()) {
+            index.add(identity);
+        }
+        return index;
+    }
+
+    /**
+     * Identity from the Message-ID and the subject / sender / sent date
+     * (no fallback key if one of them is missing, like the old subject+from+date comparison)
+     */
+    public static Identity identity(String messageId, String subject, String from, Long sentMillis) {
+        String fallback = subject != null && from != null && sentMillis != null
+                ? "msg:" + normalizeSubject(subject) + "|" + normalizeFrom(from) + "|" + sentMillis : null;
+        return new Identity(messageIdKey(messageId), fallback);
+    }
+
+    /**
+     * Identity from the Message-ID and the subject / sender only, for records without a
+     * precise sent date (e.g. JobOpportunity)
+     */
+    public static Identity identityWithoutDate(String messageId, String subject, String from) {
+        String fallback = subject != null || from != null
+                ? "sf:" + normalizeSubject(subject) + "|" + normalizeFrom(from) : null;
+        return new Identity(messageIdKey(messageId), fallback);
+    }
+
+    public boolean contains(Identity identity) {
+        return (identity.messageIdKey != null && containsKey(identity.messageIdKey))
+                || (identity.fallbackKey != null && containsKey(identity.fallbackKey));
+    }
+
+    public void add(Identity identity) {
+        if (identity.messageIdKey != null) {
+            addKey(identity.messageIdKey);
+        }
+        if (identity.fallbackKey != null) {
+            addKey(identity.fallbackKey);
+        }
+    }
+
+    /**
+     * Add the identity unless it is already known
+     *
+     * @return true if added, false if the message is a duplicate
+     */
+    public synchronized boolean addIfAbsent(Identity identity) {
+        if (contains(identity)) {
+            return false;
+        }
+        add(identity);
+        return true;
+    }
+
+    /**
+     * Release the persisted filter, if any
+     */
+    public void close() {
+        if (persisted != null) {
+            try {
+                persisted.close();
+            } catch (IOException e) {
+                System.err.println("⚠️  Could not close processed-key filter: " + e.getMessage());
+            }
+        }
+    }
+
+    public int size() {
+        return persisted != null ? persisted.size() : keys.size();
+    }
+
+    private boolean containsKey(String key) {
+        return persisted != null ? persisted.contains(key) : keys.contains(key);
+    }
+
+    private void addKey(String key) {
+        if (persisted != null) {
+            persisted.add(key);
+        } else {
+            keys.add(key);
+        }
+    }
+
+    private static String messageIdKey(String messageId) {
+        return messageId != null && !messageId.isBlank() ? "mid:" + messageId.trim() : null;
+    }
+
+    private static String normalizeSubject(String subject) {
+        return subject == null ? "" : subject.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalizeFrom(String from) {
+        if (from == null) {
+            return "";
+        }
+        String address = SenderClassifier.addressOf(from);
+        return (address != null ? address : from.trim()).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Keys of one message
+     */
+    public static final class Identity {
+        private final String messageIdKey;  // null if no Message-ID
+        private final String fallbackKey;   // null if not enough fields
+
+        private Identity(String messageIdKey, String fallbackKey) {
+            this.messageIdKey = messageIdKey;
+            this.fallbackKey = fallbackKey;
+        }
+
+        /**
+         * Main key (Message-ID if any), e.g. to mark a message as in progress; null if the message has no key at all
+         */
+        public String getPrimaryKey() {
+            return messageIdKey != null ? messageIdKey : fallbackKey;
+        }
+    }
+}
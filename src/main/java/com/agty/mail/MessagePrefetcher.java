@@ -0,0 +1,72 @@
+package com.agty.mail;
+
+import com.agty.utils.GlobalConfig;
+
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+import java.util.Arrays;
+
+/**
+ * Bulk prefetch of message metadata before the per-message loops.
+ *
+ * JavaMail loads envelope, flags, UID and structure lazily, one IMAP FETCH per
+ * getter call and per message. Issuing one Folder.fetch() per chunk for all of them
+ * collapses those round-trips into a handful per folder.
+ */
+public class MessagePrefetcher {
+
+    private static final FetchProfile HEADER_PROFILE = new FetchProfile();
+    private static final FetchProfile UID_PROFILE = new FetchProfile();
+
+    static {
+        HEADER_PROFILE.add(FetchProfile.Item.ENVELOPE);       // from, subject, dates, Message-ID
+        HEADER_PROFILE.add(FetchProfile.Item.FLAGS);
+        HEADER_PROFILE.add(UIDFolder.FetchProfileItem.UID);
+        HEADER_PROFILE.add(FetchProfile.Item.CONTENT_INFO);   // BODYSTRUCTURE
+        UID_PROFILE.add(UIDFolder.FetchProfileItem.UID);
+    }
+
+    /**
+     * Prefetch envelope, flags, UID and body structure of the given messages,
+     * using the chunk size configured in GlobalConfig.IMAP_FETCH_CHUNK_SIZE
+     */
+    public static void prefetch(Folder folder, Message[] messages) throws MessagingException {
+        prefetch(folder, messages, GlobalConfig.IMAP_FETCH_CHUNK_SIZE);
+    }
+
+    /**
+     * Prefetch in chunks of chunkSize messages (one FETCH command per chunk)
+     */
+    public static void prefetch(Folder folder, Message[] messages, int chunkSize) throws MessagingException {
+        if (messages == null || messages.length == 0) {
+            return;
+        }
+        int size = Math.max(1, chunkSize);
+        long start = System.currentTimeMillis();
+        int chunks = 0;
+        for (int from = 0; from < messages.length; from += size) {
+            int to = Math.min(messages.length, from + size);
+            Message[] chunk = (from == 0 && to == messages.length) ? messages : Arrays.copyOfRange(messages, from, to);
+            folder.fetch(chunk, HEADER_PROFILE);
+            chunks++;
+        }
+        System.out.println("⚡ Prefetched headers of " + messages.length + " messages in " + chunks +
+                " FETCH chunk(s) (" + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    /**
+     * UIDs of the given messages, fetched with a single FETCH (UID) command
+     */
+    public static long[] fetchUids(Folder folder, Message[] messages) throws MessagingException {
+        UIDFolder uidFolder = (UIDFolder) folder;
+        folder.fetch(messages, UID_PROFILE);
+        long[] uids = new long[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            uids[i] = uidFolder.getUID(messages[i]);
+        }
+        return uids;
+    }
+}
@@ -0,0 +1,54 @@
+package com.agty.mail;
+
+import javax.mail.Message;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Interface for a source of messages fed to the pipelines.
+ * Implementations stream messages lazily: a directory of .eml files, an mbox file.
+ *
+ * The iterator may throw MessageSourceException (unchecked) when a message cannot be read.
+ */
+public interface MessageSource extends Iterable<Message>, AutoCloseable {
+
+    /**
+     * Name used in logs and as folder name of the replayed messages
+     */
+    String getName();
+
+    /**
+     * Lazily iterate over the messages (a source is iterated once)
+     */
+    @Override
+    Iterator<Message> iterator();
+
+    @Override
+    void close();
+
+    /**
+     * Open a local archive: a directory is read as .eml files, a regular file as mbox
+     */
+    static MessageSource open(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new EmlDirectorySource(path);
+        }
+        if (Files.isRegularFile(path)) {
+            return new MboxSource(path);
+        }
+        throw new IOException("No such mbox file or EML directory: " + path);
+    }
+
+    /**
+     * Unchecked wrapper for read errors raised while iterating
+     */
+    class MessageSourceException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public MessageSourceException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.agty.mail;
+
+import javax.mail.BodyPart;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import java.io.IOException;
+
+/**
+ * Single-pass decoder of message bodies.
+ *
+ * Visits the MIME part tree once, calling getContent() once per part; the HTML (if any) is
+ * parsed once with Jsoup, when its text or its anchors are first asked for (see DecodedMessage).
+ * Shared by the processors and the enricher, which used to walk the tree separately.
+ */
+public class MimeMessageDecoder {
+
+    /**
+     * Decode a message (or any part)
+     */
+    public static DecodedMessage decode(Part part) throws MessagingException, IOException {
+        Collector collector = new Collector();
+        collect(part, collector);
+        return collector.build();
+    }
+
+    /**
+     * Decode an already extracted body (HTML if it starts with '<', otherwise plain text)
+     */
+    public static DecodedMessage decode(String content) {
+        Collector collector = new Collector();
+        if (content != null) {
+            collector.add(content, content.trim().startsWith("<"));
+        }
+        return collector.build();
+    }
+
+    /**
+     * Clean text content by removing invisible/special characters
+     * Removes: Zero Width Space, Zero Width Non-Joiner, Zero Width Joiner, etc.
+     */
+    public static String cleanText(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        return text
+            // Remove Zero Width Space (U+200B)
+            .replace("\u200B", "")
+            // Remove Zero Width Non-Joiner (U+200C)
+            .replace("\u200C", "")
+            // Remove Zero Width Joiner (U+200D)
+            .replace("\u200D", "")
+            // Remove Left-to-Right Mark (U+200E)
+            .replace("\u200E", "")
+            // Remove Right-to-Left Mark (U+200F)
+            .replace("\u200F", "")
+            // Remove Soft Hyphen (U+00AD)
+            .replace("\u00AD", "")
+            // Remove multiple spaces
+            .replaceAll("\\s+", " ")
+            // Trim
+            .trim();
+    }
+
+    private static void collect(Part part, Collector collector) throws MessagingException, IOException {
+        Object content = part.getContent();
+        if (content instanceof Multipart) {
+            Multipart multipart = (Multipart) content;
+            for (int i = 0; i < multipart.getCount(); i++) {
+                BodyPart bodyPart = multipart.getBodyPart(i);
+                collect(bodyPart, collector);
+            }
+        } else if (content instanceof String) {
+            String text = (String) content;
+            if (part.isMimeType("text/html")) {
+                collector.add(text, true);
+            } else if (part.isMimeType("text/plain")) {
+                collector.add(text, false);
+            } else if (part instanceof javax.mail.Message) {
+                // Top-level body with an unusual content type: guess from the content
+                collector.add(text, text.trim().startsWith("<"));
+            }
+        }
+    }
+
+    /**
+     * Accumulates the parts of one message during the walk
+     */
+    private static class Collector {
+        private final StringBuilder plain = new StringBuilder();
+        private final StringBuilder html = new StringBuilder();
+        private final StringBuilder all = new StringBuilder();
+
+        void add(String text, boolean isHtml) {
+            (isHtml ? html : plain).append(text);
+            all.append(text);
+        }
+
+        DecodedMessage build() {
+            return new DecodedMessage(plain.toString(), html.toString(), all.toString());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.agty.mail;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Runs per-message work (decoding, Jsoup, scoring) on virtual threads, so the CPU work of
+ * one message overlaps with the IMAP reads of the next ones, and hands the results back
+ * to the calling thread in submission order.
+ *
+ * A semaphore bounds the messages submitted but not yet handed back (running or waiting
+ * for an earlier message), which also bounds the bodies held in memory.
+ * In sequential mode every task runs on the calling thread as soon as it is submitted.
+ * Tasks that throw are handed back as null.
+ */
+public class OrderedParallelProcessor<R> implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Semaphore window;
+    private final Deque<Future<R>> pending = new ArrayDeque<>();
+    private final Consumer<R> consumer;
+
+    /**
+     * @param parallel    false = run each task on the calling thread (previous behaviour)
+     * @param maxInFlight Max tasks submitted and not yet handed back
+     * @param consumer    Called on the submitting thread with each result, in submission order
+     */
+    public OrderedParallelProcessor(boolean parallel, int maxInFlight, Consumer<R> consumer) {
+        this.executor = parallel ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        this.window = new Semaphore(Math.max(1, maxInFlight));
+        this.consumer = consumer;
+    }
+
+    /**
+     * Submit a task, first handing back the finished results at the head of the queue.
+     * Blocks (handing back results) while the window is full
+     */
+    public void submit(Callable<R> task) {
+        if (executor == null) {
+            consumer.accept(callQuietly(task));
+            return;
+        }
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            handBackHead();
+        }
+        while (!window.tryAcquire()) {
+            handBackHead();
+        }
+        pending.addLast(executor.submit(() -> callQuietly(task)));
+    }
+
+    /**
+     * Wait for all submitted tasks and hand back their results
+     */
+    public void drain() {
+        while (!pending.isEmpty()) {
+            handBackHead();
+        }
+    }
+
+    /**
+     * Drain and stop the virtual-thread executor
+     */
+    @Override
+    public void close() {
+        drain();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void handBackHead() {
+        Future<R> head = pending.pollFirst();
+        R result;
+        try {
+            result = head.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            head.cancel(true);
+            result = null;
+        } catch (ExecutionException e) {
+            result = null;
+        } finally {
+            window.release();
+        }
+        consumer.accept(result);
+    }
+
+    private static <R> R callQuietly(Callable<R> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            System.err.println("  ⚠️  Message task failed: " + e.getMessage());
+            return null;
+        }
+    }
+}
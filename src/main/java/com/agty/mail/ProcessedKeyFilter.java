@@ -0,0 +1,413 @@
+package com.agty.mail;
+
+import com.agty.store.RecordStore;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Persistent set of processed message keys, so a run does not rebuild its processed-key
+ * set from the whole history file.
+ *
+ * Three files live next to the history file (e.g. job_offers_extracted.json.keys.bloom / .log / .idx):
+ * - .keys.bloom: memory-mapped Bloom filter (~14 bits per key, 0.1% false positives)
+ * - .keys.log: append-only list of the keys, one per line, the exact reference
+ * - .keys.idx: the logged keys sorted, memory-mapped and binary-searched
+ * A negative answer of the filter is final; a positive one is confirmed in the sorted index, or
+ * among the keys logged since it was built (this run's keys, held in memory and merged into the
+ * index at close). Only a missing or damaged index is rebuilt by sorting the whole log.
+ * The filter bits are written before the log line, and the headers record how much of the log
+ * the filter and the index cover, so after a crash both are completed from the log tail
+ * (never a false negative).
+ */
+public class ProcessedKeyFilter implements AutoCloseable {
+
+    private static final String BLOOM_SUFFIX = ".keys.bloom";
+    private static final String LOG_SUFFIX = ".keys.log";
+    private static final String INDEX_SUFFIX = ".keys.idx";
+    private static final int MAGIC = 0x504B4246;  // "PKBF"
+    private static final int INDEX_MAGIC = 0x504B4958;  // "PKIX"
+    private static final int INDEX_HEADER_BYTES = 16;   // magic, count, log bytes (long); then count + 1 offsets (long), then the keys
+    private static final int HEADER_BYTES = 32;   // magic, hashes, bits (long), count, reserved, log bytes (long)
+    private static final int MIN_CAPACITY = 1 << 16;
+    private static final double BITS_PER_KEY = 14.4;  // 0.1% false positives with 10 hashes
+    private static final int HASHES = 10;
+
+    private final File bloomFile;
+    private final File logFile;
+    private final File indexFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long bits;
+    private int capacity;
+    private int count;
+    private long logBytes;
+    private OutputStream log;
+    private MappedByteBuffer index;  // null if there is no key to index
+    private int indexedKeys;
+    private final Set<String> recent = new HashSet<>();  // keys logged after the index was built
+    private final Set<String> unsaved = new HashSet<>();  // keys whose log write failed
+    private boolean closed = false;
+
+    public ProcessedKeyFilter(File bloomFile, File logFile, File indexFile) throws IOException {
+        this.bloomFile = bloomFile;
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+        open();
+    }
+
+    /**
+     * Filter scoped to a history file; a filter without its history (neither the JSON file nor
+     * its store: history deleted to start over) is reset
+     */
+    public static ProcessedKeyFilter forHistoryFile(String historyFilePath) throws IOException {
+        File bloomFile = new File(historyFilePath + BLOOM_SUFFIX);
+        File logFile = new File(historyFilePath + LOG_SUFFIX);
+        File indexFile = new File(historyFilePath + INDEX_SUFFIX);
+        if (!new File(historyFilePath).exists() && !RecordStore.exists(historyFilePath)) {
+            Files.deleteIfExists(bloomFile.toPath());
+            Files.deleteIfExists(logFile.toPath());
+            Files.deleteIfExists(indexFile.toPath());
+        }
+        return new ProcessedKeyFilter(bloomFile, logFile, indexFile);
+    }
+
+    /**
+     * True if the filter has no key and no log yet (to be filled from the history)
+     */
+    public synchronized boolean isEmpty() {
+        return count == 0 && logBytes == 0;
+    }
+
+    public synchronized boolean contains(String key) {
+        key = clean(key);
+        if (!mightContain(key)) {
+            return unsaved.contains(key);
+        }
+        return recent.contains(key) || indexContains(key) || unsaved.contains(key);
+    }
+
+    /**
+     * Add a key: filter bits first, then the log line
+     */
+    public synchronized void add(String key) {
+        key = clean(key);
+        if (contains(key)) {
+            return;
+        }
+        try {
+            if (count >= capacity) {
+                rebuild(Math.max(MIN_CAPACITY, capacity * 2));
+            }
+            setBits(key);
+            byte[] line = (key + "\n").getBytes(StandardCharsets.UTF_8);
+            log.write(line);
+            log.flush();
+            logBytes += line.length;
+            count++;
+            writeCounters();
+            recent.add(key);
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not persist processed key: " + e.getMessage());
+            unsaved.add(key);
+        }
+    }
+
+    public synchronized int size() {
+        return count + unsaved.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            buffer.force();
+            log.close();
+            if (!recent.isEmpty()) {
+                // This run's keys (already in memory) go into the index now, not at the next open
+                List<String> added = new ArrayList<>(recent);
+                Collections.sort(added);
+                writeIndex(added, logBytes);
+                recent.clear();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void open() throws IOException {
+        if (logFile.getParentFile() != null) {
+            logFile.getParentFile().mkdirs();
+        }
+        long logLength = logFile.exists() ? logFile.length() : 0;
+        channel = FileChannel.open(bloomFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean valid = channel.size() >= HEADER_BYTES;
+        if (valid) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            bits = header.getLong(8);
+            valid = header.getInt(0) == MAGIC && header.getInt(4) == HASHES && bits > 0
+                    && channel.size() >= HEADER_BYTES + bits / 8
+                    && header.getLong(24) <= logLength;
+            if (valid) {
+                capacity = (int) (bits / BITS_PER_KEY);
+                count = header.getInt(16);
+                logBytes = header.getLong(24);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + bits / 8);
+            }
+        }
+        log = new FileOutputStream(logFile, true);
+        if (!valid) {
+            // New filter, or a filter older than its log: rebuilt from the whole log
+            logBytes = 0;
+            count = 0;
+            rebuild(MIN_CAPACITY);
+        } else if (logBytes < logLength) {
+            // Keys logged after the last header update (crash): add their bits
+            count += forEachLogKey(logBytes, this::setBits);
+            logBytes = logLength;
+            writeCounters();
+        }
+        openIndex(logLength);
+    }
+
+    /**
+     * Write a filter of the given capacity with all the logged keys into a new file and swap it in
+     */
+    private void rebuild(int minCapacity) throws IOException {
+        int logged = forEachLogKey(0, key -> { });
+        int newCapacity = Math.max(minCapacity, logged * 2);
+        File tmp = new File(bloomFile.getPath() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        capacity = newCapacity;
+        bits = ((long) Math.ceil(newCapacity * BITS_PER_KEY) + 63) / 64 * 64;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + bits / 8);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, HASHES);
+        buffer.putLong(8, bits);
+        count = forEachLogKey(0, this::setBits);
+        logBytes = logFile.length();
+        writeCounters();
+        buffer.force();
+        Files.move(tmp.toPath(), bloomFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeCounters() {
+        buffer.putInt(16, count);
+        buffer.putLong(24, logBytes);
+    }
+
+    private boolean mightContain(String key) {
+        long hash = hash(key);
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            if ((buffer.get(HEADER_BYTES + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setBits(String key) {
+        long hash = hash(key);
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            int index = HEADER_BYTES + (int) (bit >>> 3);
+            buffer.put(index, (byte) (buffer.get(index) | (1 << (bit & 7))));
+        }
+    }
+
+    /**
+     * Map the sorted index, first merging into it the keys logged since it was built; a missing
+     * or damaged index is rebuilt from the whole log
+     */
+    private void openIndex(long logLength) throws IOException {
+        long indexedLogBytes = -1;
+        List<String> previous = Collections.emptyList();
+        if (indexFile.length() >= INDEX_HEADER_BYTES) {
+            try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+                int keys = mapped.getInt(4);
+                long covered = mapped.getLong(8);
+                if (mapped.getInt(0) == INDEX_MAGIC && keys >= 0 && covered <= logLength
+                        && indexChannel.size() >= INDEX_HEADER_BYTES + 8L * (keys + 1)
+                        && mapped.getLong(INDEX_HEADER_BYTES + 8 * keys) == indexChannel.size()) {
+                    index = mapped;
+                    indexedKeys = keys;
+                    indexedLogBytes = covered;
+                }
+            }
+        }
+        if (indexedLogBytes == logLength) {
+            return;
+        }
+        List<String> added = new ArrayList<>();
+        forEachLogKey(Math.max(0, indexedLogBytes), added::add);  // the log tail, or the whole log if no index
+        Collections.sort(added);
+        writeIndex(added, logLength);
+    }
+
+    /**
+     * Merge the current index with sorted keys into a new index file (streamed: offsets and keys
+     * are written to temporary files, then concatenated) and map it
+     */
+    private void writeIndex(List<String> sortedKeys, long coveredLogBytes) throws IOException {
+        File offsetsTmp = new File(indexFile.getPath() + ".offsets.tmp");
+        File keysTmp = new File(indexFile.getPath() + ".keys.tmp");
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        int written = 0;
+        long dataBytes = 0;
+        try (DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsTmp)));
+             OutputStream keys = new BufferedOutputStream(new FileOutputStream(keysTmp))) {
+            int i = 0;
+            int j = 0;
+            String last = null;
+            while (i < indexedKeys || j < sortedKeys.size()) {
+                String next;
+                if (j >= sortedKeys.size() || (i < indexedKeys && indexKey(i).compareTo(sortedKeys.get(j)) <= 0)) {
+                    next = indexKey(i++);
+                } else {
+                    next = sortedKeys.get(j++);
+                }
+                if (next.equals(last)) {
+                    continue;
+                }
+                byte[] bytes = next.getBytes(StandardCharsets.UTF_8);
+                offsets.writeLong(dataBytes);
+                keys.write(bytes);
+                dataBytes += bytes.length;
+                written++;
+                last = next;
+            }
+            offsets.writeLong(dataBytes);  // end of the last key
+        }
+        long dataStart = INDEX_HEADER_BYTES + 8L * (written + 1);
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataInputStream offsets = new DataInputStream(new BufferedInputStream(new FileInputStream(offsetsTmp)));
+             FileChannel keys = FileChannel.open(keysTmp.toPath(), StandardOpenOption.READ)) {
+            DataOutputStream header = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)));
+            header.writeInt(INDEX_MAGIC);
+            header.writeInt(written);
+            header.writeLong(coveredLogBytes);
+            for (int k = 0; k <= written; k++) {
+                header.writeLong(dataStart + offsets.readLong());  // absolute positions
+            }
+            header.flush();
+            for (long copied = 0; copied < dataBytes; ) {
+                copied += keys.transferTo(copied, dataBytes - copied, out);
+            }
+            out.force(true);
+        } finally {
+            Files.deleteIfExists(offsetsTmp.toPath());
+            Files.deleteIfExists(keysTmp.toPath());
+        }
+        index = null;
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        }
+        indexedKeys = written;
+    }
+
+    /**
+     * Binary search of the sorted index
+     */
+    private boolean indexContains(String key) {
+        int lo = 0;
+        int hi = indexedKeys - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int order = indexKey(mid).compareTo(key);
+            if (order < 0) {
+                lo = mid + 1;
+            } else if (order > 0) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Key at a position of the index (positions are ints: the index is mapped, so below 2 GB)
+     */
+    private String indexKey(int i) {
+        int start = (int) index.getLong(INDEX_HEADER_BYTES + 8 * i);
+        int end = (int) index.getLong(INDEX_HEADER_BYTES + 8 * (i + 1));
+        byte[] bytes = new byte[end - start];
+        index.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stream the keys of the log from a byte offset
+     *
+     * @return number of keys read
+     */
+    private int forEachLogKey(long offset, Consumer<String> consumer) {
+        int keys = 0;
+        if (!logFile.exists()) {
+            return keys;
+        }
+        try (FileInputStream in = new FileInputStream(logFile)) {
+            in.getChannel().position(offset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    consumer.accept(line);
+                    keys++;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not read processed keys log: " + e.getMessage());
+        }
+        return keys;
+    }
+
+    private static String clean(String key) {
+        return key.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * 64-bit FNV-1a with a MurmurHash3 finalizer
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,319 @@
+package com.agty.mail;
+
+import com.agty.utils.GlobalConfig;
+import com.agty.utils.JsonMappers;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.UIDFolder;
+import javax.mail.internet.MimeMessage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of raw RFC822 messages, so reruns never download the same body twice.
+ *
+ * Blobs are gzip-compressed and content-addressed (SHA-256 of the raw bytes, blobs/ab/abcd....eml.gz).
+ * The index maps two kinds of keys to a blob:
+ * - "mid:<Message-ID>" (stable across folders and UIDVALIDITY changes)
+ * - "uid:<folder>|<uidvalidity>|<uid>" (for messages without Message-ID)
+ * When the blobs exceed the size limit the least recently used ones are evicted, down to
+ * LOW_WATER of the limit, so the sort over all the blobs runs once per eviction pass, not per put.
+ */
+public class RawMessageCache {
+
+    private static final String INDEX_FILE = "index.json";
+    private static final int SAVE_INDEX_EVERY = 20;  // puts between two index writes
+    private static final double LOW_WATER = 0.9;     // share of the size limit an eviction pass goes down to
+
+    private static RawMessageCache defaultCache;
+
+    private final File dir;
+    private final long maxBytes;
+    private final Session session = Session.getInstance(new Properties());
+    private final Map<String, String> keys;      // key -> blob hash
+    private final Map<String, BlobInfo> blobs;   // blob hash -> size / last access
+    private final Map<String, Set<String>> keysOfBlob = new HashMap<>();  // blob hash -> keys (reverse of keys)
+    private long totalBytes;
+    private int unsavedPuts = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    public RawMessageCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Index index = loadIndex();
+        this.keys = index.keys;
+        this.blobs = index.blobs;
+        keys.forEach(this::indexKey);
+        this.totalBytes = blobs.values().stream().mapToLong(BlobInfo::getSize).sum();
+    }
+
+    /**
+     * Cache configured in GlobalConfig (MAIL_CACHE_DIR, MAIL_CACHE_MAX_MB), or null if MAIL_CACHE_ENABLED is false
+     */
+    public static synchronized RawMessageCache getDefault() {
+        if (!GlobalConfig.MAIL_CACHE_ENABLED) {
+            return null;
+        }
+        if (defaultCache == null) {
+            defaultCache = new RawMessageCache(new File(GlobalConfig.MAIL_CACHE_DIR), GlobalConfig.MAIL_CACHE_MAX_MB * 1024L * 1024L);
+            Runtime.getRuntime().addShutdownHook(new Thread(defaultCache::flush));
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Local copy of a server message through the default cache,
+     * or the server message itself when the cache is disabled or cannot be used
+     */
+    public static Message cached(Message message, String folderName) {
+        RawMessageCache cache = getDefault();
+        if (cache == null || message.getFolder() == null) {
+            return message;  // disabled, or already a local message (EML / mbox replay)
+        }
+        try {
+            return cache.load(message, folderName);
+        } catch (MessagingException | IOException e) {
+            System.err.println("⚠️  Mail cache unavailable for this message (" + e.getMessage() + "), reading from server");
+            return message;
+        }
+    }
+
+    /**
+     * Local copy of a server message: read from the cache if present, otherwise downloaded
+     * once (full RFC822), stored and returned.
+     * Only the envelope and UID of the server message are used for the lookup.
+     *
+     * @param folderName name of the folder the message comes from (for the UID key)
+     */
+    public MimeMessage load(Message message, String folderName) throws MessagingException, IOException {
+        List<String> messageKeys = keysOf(message, folderName);
+
+        byte[] raw = get(messageKeys);
+        if (raw != null) {
+            return parse(raw);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        message.writeTo(out);
+        raw = out.toByteArray();
+        put(messageKeys, raw);
+        return parse(raw);
+    }
+
+    /**
+     * Raw bytes cached for one of the keys, or null
+     */
+    public byte[] get(List<String> messageKeys) {
+        String hash = null;
+        synchronized (this) {
+            for (String key : messageKeys) {
+                hash = keys.get(key);
+                if (hash != null) {
+                    break;
+                }
+            }
+            if (hash == null || !blobs.containsKey(hash)) {
+                misses++;
+                return null;
+            }
+            blobs.get(hash).setLastAccess(System.currentTimeMillis());
+        }
+        try (InputStream in = new GZIPInputStream(new FileInputStream(blobFile(hash)))) {
+            byte[] raw = in.readAllBytes();
+            synchronized (this) {
+                hits++;
+            }
+            return raw;
+        } catch (IOException e) {
+            System.err.println("⚠️  Corrupt or missing cache blob " + hash + ", dropping it");
+            synchronized (this) {
+                removeBlob(hash);
+                misses++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Store raw bytes under all the given keys
+     */
+    public void put(List<String> messageKeys, byte[] raw) throws IOException {
+        String hash = sha256(raw);
+        File blob = blobFile(hash);
+        if (!blob.exists()) {
+            blob.getParentFile().mkdirs();
+            File tmp = new File(blob.getPath() + "." + Thread.currentThread().threadId() + ".tmp");
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp))) {
+                out.write(raw);
+            }
+            Files.move(tmp.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        synchronized (this) {
+            if (!blobs.containsKey(hash)) {
+                BlobInfo info = new BlobInfo();
+                info.setSize(blob.length());
+                blobs.put(hash, info);
+                totalBytes += info.getSize();
+            }
+            blobs.get(hash).setLastAccess(System.currentTimeMillis());
+            for (String key : messageKeys) {
+                String previous = keys.put(key, hash);
+                if (previous != null && !previous.equals(hash)) {
+                    Set<String> previousKeys = keysOfBlob.get(previous);
+                    if (previousKeys != null) {
+                        previousKeys.remove(key);
+                    }
+                }
+                indexKey(key, hash);
+            }
+            evictIfNeeded();
+            if (++unsavedPuts >= SAVE_INDEX_EVERY) {
+                saveIndex();
+            }
+        }
+    }
+
+    /**
+     * Write the index to disk
+     */
+    public synchronized void flush() {
+        if (unsavedPuts > 0) {
+            saveIndex();
+        }
+    }
+
+    public synchronized String getStats() {
+        return hits + " hits, " + misses + " misses, " + blobs.size() + " blobs, " + (totalBytes / 1024) + " KB";
+    }
+
+    /**
+     * Cache keys of a server message (Message-ID first, then folder UID)
+     */
+    public static List<String> keysOf(Message message, String folderName) throws MessagingException {
+        List<String> result = new ArrayList<>(2);
+        if (message instanceof MimeMessage) {
+            String messageId = ((MimeMessage) message).getMessageID();
+            if (messageId != null && !messageId.isBlank()) {
+                result.add("mid:" + messageId.trim());
+            }
+        }
+        if (message.getFolder() instanceof UIDFolder) {
+            UIDFolder uidFolder = (UIDFolder) message.getFolder();
+            result.add("uid:" + folderName + "|" + uidFolder.getUIDValidity() + "|" + uidFolder.getUID(message));
+        }
+        return result;
+    }
+
+    private MimeMessage parse(byte[] raw) throws MessagingException {
+        return new MimeMessage(session, new ByteArrayInputStream(raw));
+    }
+
+    private void evictIfNeeded() {
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        long lowWater = (long) (maxBytes * LOW_WATER);
+        List<Map.Entry<String, BlobInfo>> byAccess = new ArrayList<>(blobs.entrySet());
+        byAccess.sort(Comparator.comparingLong(e -> e.getValue().getLastAccess()));
+        int evicted = 0;
+        for (Map.Entry<String, BlobInfo> entry : byAccess) {
+            if (totalBytes <= lowWater) {
+                break;
+            }
+            removeBlob(entry.getKey());
+            evicted++;
+        }
+        System.out.println("🧹 Mail cache: evicted " + evicted + " least recently used messages (" + (totalBytes / 1024) + " KB left)");
+    }
+
+    private void removeBlob(String hash) {
+        BlobInfo info = blobs.remove(hash);
+        if (info != null) {
+            totalBytes -= info.getSize();
+        }
+        Set<String> blobKeys = keysOfBlob.remove(hash);
+        if (blobKeys != null) {
+            for (String key : blobKeys) {
+                keys.remove(key);
+            }
+        }
+        blobFile(hash).delete();
+        unsavedPuts++;
+    }
+
+    private void indexKey(String key, String hash) {
+        keysOfBlob.computeIfAbsent(hash, h -> new HashSet<>()).add(key);
+    }
+
+    private File blobFile(String hash) {
+        return new File(new File(new File(dir, "blobs"), hash.substring(0, 2)), hash + ".eml.gz");
+    }
+
+    private Index loadIndex() {
+        File file = new File(dir, INDEX_FILE);
+        if (file.exists()) {
+            try {
+                return JsonMappers.reader(Index.class).readValue(file);
+            } catch (IOException e) {
+                System.err.println("⚠️  Could not load mail cache index: " + e.getMessage());
+            }
+        }
+        return new Index();
+    }
+
+    private void saveIndex() {
+        try {
+            dir.mkdirs();
+            Index index = new Index();
+            index.keys = keys;
+            index.blobs = blobs;
+            File tmp = new File(dir, INDEX_FILE + ".tmp");
+            JsonMappers.compactWriter().writeValue(tmp, index);
+            Files.move(tmp.toPath(), new File(dir, INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            unsavedPuts = 0;
+        } catch (IOException e) {
+            System.err.println("❌ Error saving mail cache index: " + e.getMessage());
+        }
+    }
+
+    private static String sha256(byte[] raw) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(raw);
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Persistent form of the index
+     */
+    public static class Index {
+        public Map<String, String> keys = new HashMap<>();
+        public Map<String, BlobInfo> blobs = new HashMap<>();
+    }
+
+    /**
+     * Size and last access time of a blob
+     */
+    public static class BlobInfo {
+        private long size;
+        private long lastAccess;
+
+        public long getSize() { return size; }
+        public void setSize(long size) { this.size = size; }
+
+        public long getLastAccess() { return lastAccess; }
+        public void setLastAccess(long lastAccess) { this.lastAccess = lastAccess; }
+    }
+}
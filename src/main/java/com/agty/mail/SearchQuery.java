@@ -0,0 +1,56 @@
+package com.agty.mail;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Backend-independent description of a topic search:
+ * keywords, optional sender addresses, trusted sender domains, date window and UID lower bound.
+ */
+public class SearchQuery {
+
+    private final String[] keywords;
+    private final List<String> specificSenders;
+    private final String[] trustedSenderDomains;
+    private final int daysBack;
+    private final long minUid;
+
+    /**
+     * @param keywords             Topic keywords (matched in subject or body)
+     * @param specificSenders      If not empty, only these sender addresses are searched (keywords are ignored)
+     * @param trustedSenderDomains Sender domains whose emails are returned even without a keyword match
+     * @param daysBack             How many days back to search
+     * @param minUid               Only messages with UID greater than this (0 = no lower bound)
+     */
+    public SearchQuery(String[] keywords, List<String> specificSenders, String[] trustedSenderDomains,
+                       int daysBack, long minUid) {
+        this.keywords = keywords != null ? keywords : new String[0];
+        this.specificSenders = specificSenders != null ? specificSenders : new ArrayList<>();
+        this.trustedSenderDomains = trustedSenderDomains != null ? trustedSenderDomains : new String[0];
+        this.daysBack = daysBack;
+        this.minUid = minUid;
+    }
+
+    public String[] getKeywords() { return keywords; }
+
+    public List<String> getSpecificSenders() { return specificSenders; }
+
+    public boolean hasSpecificSenders() { return !specificSenders.isEmpty(); }
+
+    public String[] getTrustedSenderDomains() { return trustedSenderDomains; }
+
+    public int getDaysBack() { return daysBack; }
+
+    public long getMinUid() { return minUid; }
+
+    /**
+     * Start of the date window
+     */
+    public Date getSinceDate() {
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.DAY_OF_MONTH, -daysBack);
+        return cal.getTime();
+    }
+}
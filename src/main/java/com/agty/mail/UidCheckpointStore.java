@@ -0,0 +1,136 @@
+package com.agty.mail;
+
+import com.agty.utils.JsonMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent per-folder IMAP checkpoints (UIDVALIDITY + highest UID already scanned).
+ *
+ * A checkpoint file lives next to the history file it belongs to
+ * (e.g. job_opportunities_emails.json.uidstate.json), so a run only has to
+ * look at messages with UID greater than the last one scanned for that history.
+ * If the server reports a different UIDVALIDITY the checkpoint is ignored and
+ * the caller falls back to the full date-window search.
+ */
+public class UidCheckpointStore {
+
+    private static final String FILE_SUFFIX = ".uidstate.json";
+
+    private final File file;
+    private final Map<String, Checkpoint> checkpoints;
+
+    public UidCheckpointStore(File file) {
+        this.file = file;
+        this.checkpoints = load();
+    }
+
+    /**
+     * Checkpoint store scoped to a given history (output) file
+     */
+    public static UidCheckpointStore forHistoryFile(String historyFilePath) {
+        return new UidCheckpointStore(new File(historyFilePath + FILE_SUFFIX));
+    }
+
+    /**
+     * Last UID scanned for this folder, or 0 if there is no usable checkpoint
+     * (never synced, or UIDVALIDITY changed on the server)
+     */
+    public synchronized long getLastUid(String folderName, long uidValidity) {
+        Checkpoint checkpoint = checkpoints.get(folderName);
+        if (checkpoint == null) {
+            return 0;
+        }
+        if (checkpoint.getUidValidity() != uidValidity) {
+            System.out.println("⚠️  UIDVALIDITY changed for '" + folderName + "' (" +
+                    checkpoint.getUidValidity() + " → " + uidValidity + "), ignoring checkpoint");
+            return 0;
+        }
+        return checkpoint.getLastUid();
+    }
+
+    /**
+     * Record that every message up to lastUid has been scanned, and persist immediately
+     */
+    public synchronized void update(String folderName, long uidValidity, long lastUid) {
+        Checkpoint checkpoint = checkpoints.get(folderName);
+        if (checkpoint != null && checkpoint.getUidValidity() == uidValidity && checkpoint.getLastUid() >= lastUid) {
+            return;
+        }
+        checkpoint = new Checkpoint();
+        checkpoint.setUidValidity(uidValidity);
+        checkpoint.setLastUid(lastUid);
+        checkpoint.setUpdatedAt(System.currentTimeMillis());
+        checkpoints.put(folderName, checkpoint);
+        save();
+    }
+
+    /**
+     * Fetch the messages whose UID is strictly greater than lastUid.
+     * "UID n:*" always returns at least the last message, so results are filtered again here.
+     */
+    public static Message[] messagesAfter(Folder folder, long lastUid) throws MessagingException {
+        UIDFolder uidFolder = (UIDFolder) folder;
+        Message[] candidates = uidFolder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+        List<Message> newer = new ArrayList<>(candidates.length);
+        for (Message message : candidates) {
+            if (message != null && uidFolder.getUID(message) > lastUid) {
+                newer.add(message);
+            }
+        }
+        return newer.toArray(new Message[0]);
+    }
+
+    private Map<String, Checkpoint> load() {
+        if (!file.exists()) {
+            return new LinkedHashMap<>();
+        }
+        try {
+            return JsonMappers.reader(new TypeReference<LinkedHashMap<String, Checkpoint>>() {
+            }).readValue(file);
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not load UID checkpoints from " + file + ": " + e.getMessage());
+            return new LinkedHashMap<>();
+        }
+    }
+
+    private void save() {
+        try {
+            File parentDir = file.getParentFile();
+            if (parentDir != null && !parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+            JsonMappers.writer().writeValue(file, checkpoints);
+        } catch (IOException e) {
+            System.err.println("❌ Error saving UID checkpoints: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checkpoint of a single folder
+     */
+    public static class Checkpoint {
+        private long uidValidity;
+        private long lastUid;
+        private long updatedAt;
+
+        public long getUidValidity() { return uidValidity; }
+        public void setUidValidity(long uidValidity) { this.uidValidity = uidValidity; }
+
+        public long getLastUid() { return lastUid; }
+        public void setLastUid(long lastUid) { this.lastUid = lastUid; }
+
+        public long getUpdatedAt() { return updatedAt; }
+        public void setUpdatedAt(long updatedAt) { this.updatedAt = updatedAt; }
+    }
+}
@@ -0,0 +1,368 @@
+package com.agty.scoring;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, validated form of ScoringRules.
+ *
+ * For each topic the pattern groups (plus the topic keywords as group KEYWORDS) are compiled
+ * into one MultiPatternMatcher, and the rules into parallel arrays of bitmasks. Scoring an email
+ * is then one scan of the subject, the same scan continued over the content, and a loop over
+ * the rule arrays: no allocation on the hot path.
+ */
+public final class CompiledRules {
+
+    // Sender classes
+    public static final int NON_JOB = 1;
+    public static final int TRUSTED = 1 << 1;
+    public static final int UNKNOWN = 1 << 2;
+
+    private static final String KEYWORDS_GROUP = "KEYWORDS";
+    private static final int ACTION_REJECT = 0;
+    private static final int ACTION_ACCEPT = 1;
+    private static final int ACTION_SCORE = 2;
+    private static final int ACTION_FLAG = 3;
+    private static final int REJECTED = Integer.MIN_VALUE;
+
+    private final ScoringRules source;
+    private final String[] trustedSenders;
+    private final String[] nonJobSenders;
+    private final SenderClassifier senderClassifier;
+    private volatile CustomSenders customSenders;  // classifier of the last explicit sender lists
+    private final Set<String> trustedForTopics = new HashSet<>();
+    private final Map<String, Integer> groupIds = new LinkedHashMap<>();
+    private final Map<String, Integer> flagIds = new LinkedHashMap<>();
+    private final int headerRuleCount;
+    private final Map<String, TopicRules> topicRules = new ConcurrentHashMap<>();
+
+    private CompiledRules(ScoringRules source) {
+        this.source = source;
+        this.trustedSenders = lower(source.getSenders().getTrusted());
+        this.nonJobSenders = lower(source.getSenders().getNonJob());
+        this.senderClassifier = new SenderClassifier(trustedSenders, nonJobSenders);
+        for (String topic : source.getSenders().getTrustedForTopics()) {
+            trustedForTopics.add(topic.toLowerCase());
+        }
+
+        for (String group : source.getGroups().keySet()) {
+            groupIds.put(group, groupIds.size());
+        }
+        groupIds.put(KEYWORDS_GROUP, groupIds.size());
+        if (groupIds.size() > 64) {
+            throw new IllegalArgumentException("Too many groups: " + groupIds.size() + " (max 63)");
+        }
+
+        int headerRules = 0;
+        boolean bodySeen = false;
+        for (ScoringRules.Rule rule : source.getRules()) {
+            boolean header = "HEADER".equalsIgnoreCase(rule.getPhase());
+            if (header) {
+                if (bodySeen) {
+                    throw new IllegalArgumentException("HEADER rule '" + rule.getName() + "' after BODY rules");
+                }
+                if (!"REJECT".equalsIgnoreCase(rule.getAction())) {
+                    throw new IllegalArgumentException("HEADER rule '" + rule.getName() + "' must REJECT");
+                }
+                headerRules++;
+            } else {
+                bodySeen = true;
+            }
+            for (String flag : concat(rule.getFlags(), rule.getWithFlags(), rule.getWithoutFlags())) {
+                flagIds.putIfAbsent(flag, flagIds.size());
+            }
+        }
+        if (flagIds.size() > 32) {
+            throw new IllegalArgumentException("Too many flags: " + flagIds.size() + " (max 32)");
+        }
+        this.headerRuleCount = headerRules;
+
+        // Compile the rules of the default topic once, so errors in refs show up at load time
+        forTopic("job");
+    }
+
+    /**
+     * Validate and compile a rule set
+     *
+     * @throws IllegalArgumentException if the rules are inconsistent (unknown group, action, ...)
+     */
+    public static CompiledRules compile(ScoringRules rules) {
+        return new CompiledRules(rules);
+    }
+
+    public ScoringRules getSource() { return source; }
+
+    public int getRuleCount() { return source.getRules().size(); }
+
+    public String[] getTrustedSenders() { return trustedSenders.clone(); }
+
+    public String[] getNonJobSenders() { return nonJobSenders.clone(); }
+
+    /**
+     * Keywords of a topic (the topic itself if it is not in the rules file)
+     */
+    public String[] getTopicKeywords(String topic) {
+        List<String> keywords = source.getTopics().get(topic.toLowerCase());
+        return keywords != null ? keywords.toArray(new String[0]) : new String[]{topic};
+    }
+
+    public SenderClassifier getSenderClassifier() { return senderClassifier; }
+
+    /**
+     * Sender class of a From header using the sender lists of the rules
+     */
+    public int classifySender(String from, String topic) {
+        return senderClass(senderClassifier.classify(from), topic);
+    }
+
+    /**
+     * Sender class of a From header using the given domain lists
+     */
+    public int classifySender(String from, String topic, String[] trusted, String[] nonJob) {
+        CustomSenders custom = customSenders;
+        if (custom == null || custom.trusted != trusted || custom.nonJob != nonJob) {
+            custom = new CustomSenders(trusted, nonJob);
+            customSenders = custom;
+        }
+        return senderClass(custom.classifier.classify(from), topic);
+    }
+
+    private int senderClass(SenderClassifier.Classification sender, String topic) {
+        if (sender.isNonJob()) {
+            return NON_JOB;
+        }
+        if (sender.isTrustedPortal() && topic != null && trustedForTopics.contains(topic.toLowerCase())) {
+            return TRUSTED;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Run only the HEADER rules (sender and subject): true if the email can be rejected
+     * before its body is downloaded
+     */
+    public boolean isRejectedByHeaders(String topic, String subject, int senderClass) {
+        TopicRules rules = forTopic(topic);
+        long subjectMatches = rules.scanner().feed(subject).getMatched();
+        return rules.evaluate(0, headerRuleCount, subjectMatches, 0, senderClass) == REJECTED;
+    }
+
+    /**
+     * Full score (HEADER and BODY rules)
+     */
+    public int score(String topic, String subject, String content, int senderClass) {
+        return score(topic, subject, content, senderClass, 0);
+    }
+
+    /**
+     * Score with the BODY rules only, for emails that already passed isRejectedByHeaders()
+     */
+    public int scoreBody(String topic, String subject, String content, int senderClass) {
+        return score(topic, subject, content, senderClass, headerRuleCount);
+    }
+
+    private int score(String topic, String subject, String content, int senderClass, int firstRule) {
+        TopicRules rules = forTopic(topic);
+        MultiPatternMatcher.Scanner scanner = rules.scanner().feed(subject);
+        long subjectMatches = scanner.getMatched();
+        long textMatches = scanner.feed(" ").feed(content).getMatched();
+        int score = rules.evaluate(firstRule, rules.action.length, subjectMatches, textMatches, senderClass);
+        return score == REJECTED ? 0 : score;
+    }
+
+    private TopicRules forTopic(String topic) {
+        return topicRules.computeIfAbsent(topic.toLowerCase(), TopicRules::new);
+    }
+
+    /**
+     * Rules and matcher compiled for one topic (rules scoped to other topics are dropped)
+     */
+    private final class TopicRules {
+        private final MultiPatternMatcher matcher;
+        private final ThreadLocal<MultiPatternMatcher.Scanner> scanners;
+        private final long[] subjectAll, subjectAny, subjectNone, textAll, textAny, textNone;
+        private final int[] senders, withFlags, withoutFlags, setFlags, minScore, maxScore, action, points;
+
+        TopicRules(String topic) {
+            MultiPatternMatcher.Builder builder = MultiPatternMatcher.builder();
+            for (Map.Entry<String, List<String>> group : source.getGroups().entrySet()) {
+                for (String pattern : group.getValue()) {
+                    builder.add(pattern, groupIds.get(group.getKey()));
+                }
+            }
+            builder.addAll(getTopicKeywords(topic), groupIds.get(KEYWORDS_GROUP));
+            this.matcher = builder.build();
+            this.scanners = ThreadLocal.withInitial(matcher::scanner);
+
+            List<ScoringRules.Rule> rules = new ArrayList<>();
+            int index = 0;
+            for (ScoringRules.Rule rule : source.getRules()) {
+                // Header rules are kept whatever their topics, so headerRuleCount stays valid
+                if (index++ < headerRuleCount || appliesTo(rule, topic)) {
+                    rules.add(rule);
+                }
+            }
+            int n = rules.size();
+            subjectAll = new long[n]; subjectAny = new long[n]; subjectNone = new long[n];
+            textAll = new long[n]; textAny = new long[n]; textNone = new long[n];
+            senders = new int[n]; withFlags = new int[n]; withoutFlags = new int[n]; setFlags = new int[n];
+            minScore = new int[n]; maxScore = new int[n]; action = new int[n]; points = new int[n];
+
+            for (int i = 0; i < n; i++) {
+                ScoringRules.Rule rule = rules.get(i);
+                boolean header = i < headerRuleCount;
+                long[] all = refs(rule, rule.getAll(), header);
+                long[] any = refs(rule, rule.getAny(), header);
+                long[] none = refs(rule, rule.getNone(), header);
+                subjectAll[i] = all[0]; textAll[i] = all[1];
+                subjectAny[i] = any[0]; textAny[i] = any[1];
+                subjectNone[i] = none[0]; textNone[i] = none[1];
+                senders[i] = senderMask(rule);
+                withFlags[i] = flagMask(rule.getWithFlags());
+                withoutFlags[i] = flagMask(rule.getWithoutFlags());
+                setFlags[i] = flagMask(rule.getFlags());
+                minScore[i] = rule.getMinScore() != null ? rule.getMinScore() : Integer.MIN_VALUE;
+                maxScore[i] = rule.getMaxScore() != null ? rule.getMaxScore() : Integer.MAX_VALUE;
+                action[i] = action(rule);
+                points[i] = rule.getScore();
+            }
+        }
+
+        MultiPatternMatcher.Scanner scanner() {
+            return scanners.get().reset();
+        }
+
+        /**
+         * Run rules [from, to): REJECTED on REJECT, the score on ACCEPT or at the end
+         */
+        int evaluate(int from, int to, long subject, long text, int senderClass) {
+            int score = 0;
+            int flags = 0;
+            for (int i = from; i < to; i++) {
+                if ((senders[i] != 0 && (senders[i] & senderClass) == 0)
+                        || (subject & subjectAll[i]) != subjectAll[i]
+                        || (text & textAll[i]) != textAll[i]
+                        || ((subjectAny[i] | textAny[i]) != 0 && (subject & subjectAny[i]) == 0 && (text & textAny[i]) == 0)
+                        || (subject & subjectNone[i]) != 0
+                        || (text & textNone[i]) != 0
+                        || (flags & withFlags[i]) != withFlags[i]
+                        || (flags & withoutFlags[i]) != 0
+                        || score < minScore[i] || score > maxScore[i]) {
+                    continue;
+                }
+                switch (action[i]) {
+                    case ACTION_REJECT:
+                        return REJECTED;
+                    case ACTION_ACCEPT:
+                        return score;
+                    case ACTION_SCORE:
+                        score += points[i];
+                        flags |= setFlags[i];
+                        break;
+                    default:
+                        flags |= setFlags[i];
+                }
+            }
+            return Math.max(0, score);
+        }
+
+        /**
+         * {subject mask, text mask} of a list of refs
+         */
+        private long[] refs(ScoringRules.Rule rule, List<String> refs, boolean header) {
+            long[] masks = new long[2];
+            for (String ref : refs) {
+                int colon = ref.indexOf(':');
+                String scope = colon > 0 ? ref.substring(0, colon) : "";
+                Integer group = groupIds.get(ref.substring(colon + 1));
+                if (group == null || !(scope.equals("subject") || scope.equals("text"))) {
+                    throw new IllegalArgumentException("Rule '" + rule.getName() + "': bad ref '" + ref +
+                            "' (expected subject:GROUP or text:GROUP)");
+                }
+                if (header && scope.equals("text")) {
+                    throw new IllegalArgumentException("HEADER rule '" + rule.getName() + "' cannot use " + ref);
+                }
+                masks[scope.equals("subject") ? 0 : 1] |= MultiPatternMatcher.bit(group);
+            }
+            return masks;
+        }
+    }
+
+    private static boolean appliesTo(ScoringRules.Rule rule, String topic) {
+        if (rule.getTopics().isEmpty()) {
+            return true;
+        }
+        for (String t : rule.getTopics()) {
+            if (t.equalsIgnoreCase(topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int senderMask(ScoringRules.Rule rule) {
+        int mask = 0;
+        for (String sender : rule.getSender()) {
+            switch (sender.toUpperCase()) {
+                case "NON_JOB": mask |= NON_JOB; break;
+                case "TRUSTED": mask |= TRUSTED; break;
+                case "UNKNOWN": mask |= UNKNOWN; break;
+                default:
+                    throw new IllegalArgumentException("Rule '" + rule.getName() + "': unknown sender class " + sender);
+            }
+        }
+        return mask;
+    }
+
+    private int flagMask(List<String> flags) {
+        int mask = 0;
+        for (String flag : flags) {
+            mask |= 1 << flagIds.get(flag);
+        }
+        return mask;
+    }
+
+    private static int action(ScoringRules.Rule rule) {
+        String action = rule.getAction() != null ? rule.getAction().toUpperCase() : "";
+        switch (action) {
+            case "REJECT": return ACTION_REJECT;
+            case "ACCEPT": return ACTION_ACCEPT;
+            case "SCORE": return ACTION_SCORE;
+            case "FLAG": return ACTION_FLAG;
+            default:
+                throw new IllegalArgumentException("Rule '" + rule.getName() + "': unknown action '" + rule.getAction() + "'");
+        }
+    }
+
+    private static String[] lower(List<String> values) {
+        String[] result = new String[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).toLowerCase();
+        }
+        return result;
+    }
+
+    @SafeVarargs
+    private static List<String> concat(List<String>... lists) {
+        List<String> result = new ArrayList<>();
+        for (List<String> list : lists) {
+            result.addAll(list);
+        }
+        return result;
+    }
+
+    /**
+     * Sender lists given by the caller and their classifier (rebuilt only when the arrays change)
+     */
+    private static final class CustomSenders {
+        final String[] trusted;
+        final String[] nonJob;
+        final SenderClassifier classifier;
+
+        CustomSenders(String[] trusted, String[] nonJob) {
+            this.trusted = trusted;
+            this.nonJob = nonJob;
+            this.classifier = new SenderClassifier(trusted, nonJob);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.agty.scoring;
+
+import com.agty.utils.GlobalConfig;
+import com.agty.utils.JsonMappers;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Embedding-based pre-classification: subject + start of the body are embedded in-process
+ * with all-MiniLM-L6-v2 (ONNX, CPU only, no network) and the email gets the label of the
+ * nearest centroid (cosine similarity), e.g. job / newsletter / promo.
+ *
+ * Centroids are built offline from labelled corpora (see EmbeddingCentroidTrainer).
+ * Vectors are cached by Message-ID (see EmbeddingVectorCache), so reruns never embed twice.
+ */
+public class EmbeddingClassifier {
+
+    public static final String JOB_LABEL = "job";
+    public static final int DIMENSION = 384;
+
+    private static volatile EmbeddingClassifier defaultClassifier;
+    private static volatile boolean defaultLoaded = false;
+
+    private final EmbeddingModel model;
+    private final Map<String, float[]> centroids;
+    private final EmbeddingVectorCache cache;  // null = no cache
+
+    public EmbeddingClassifier(Map<String, float[]> centroids, EmbeddingVectorCache cache) {
+        this.model = new AllMiniLmL6V2EmbeddingModel();
+        this.centroids = new LinkedHashMap<>();
+        for (Map.Entry<String, float[]> centroid : centroids.entrySet()) {
+            this.centroids.put(centroid.getKey(), normalize(centroid.getValue().clone()));
+        }
+        this.cache = cache;
+    }
+
+    /**
+     * Classifier configured in GlobalConfig (EMBEDDING_CLASSIFIER_ENABLED, EMBEDDING_CENTROIDS_FILE,
+     * EMBEDDING_CACHE_DIR), or null if disabled or not trained yet
+     */
+    public static EmbeddingClassifier getDefault() {
+        if (!defaultLoaded) {
+            synchronized (EmbeddingClassifier.class) {
+                if (!defaultLoaded) {
+                    defaultClassifier = GlobalConfig.EMBEDDING_CLASSIFIER_ENABLED ? loadDefault() : null;
+                    defaultLoaded = true;
+                }
+            }
+        }
+        return defaultClassifier;
+    }
+
+    private static EmbeddingClassifier loadDefault() {
+        File file = new File(GlobalConfig.EMBEDDING_CENTROIDS_FILE);
+        if (!file.exists()) {
+            System.out.println("⚠️  No embedding centroids at " + file + " (build them with EmbeddingCentroidTrainer)");
+            return null;
+        }
+        try {
+            Map<String, float[]> centroids = loadCentroids(file);
+            EmbeddingClassifier classifier = new EmbeddingClassifier(centroids, openDefaultCache());
+            System.out.println("🧭 Embedding classifier ready - labels " + centroids.keySet());
+            return classifier;
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not load embedding centroids: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Vector cache in GlobalConfig.EMBEDDING_CACHE_DIR (closed on shutdown), or null if it cannot be opened
+     */
+    public static EmbeddingVectorCache openDefaultCache() {
+        try {
+            EmbeddingVectorCache cache = new EmbeddingVectorCache(new File(GlobalConfig.EMBEDDING_CACHE_DIR), DIMENSION);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cache.close();
+                } catch (IOException e) {
+                    // Vectors already written to the mapping, only the last flush is lost
+                }
+            }));
+            return cache;
+        } catch (IOException e) {
+            System.err.println("⚠️  Embedding cache unavailable (" + e.getMessage() + "), embedding without cache");
+            return null;
+        }
+    }
+
+    /**
+     * Nearest-centroid label of an email
+     *
+     * @param key Cache key (Message-ID), null to skip the cache
+     */
+    public Prediction classify(String key, String subject, String body) {
+        float[] vector = embed(key, subject, body);
+        String bestLabel = null;
+        double bestSimilarity = -1;
+        double jobSimilarity = Double.NaN;  // no job centroid: never a job offer, never skipped
+        for (Map.Entry<String, float[]> centroid : centroids.entrySet()) {
+            double similarity = dot(vector, centroid.getValue());
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                bestLabel = centroid.getKey();
+            }
+            if (JOB_LABEL.equals(centroid.getKey())) {
+                jobSimilarity = similarity;
+            }
+        }
+        return new Prediction(bestLabel, bestSimilarity, jobSimilarity);
+    }
+
+    /**
+     * Normalized embedding of an email, from the cache when available
+     */
+    public float[] embed(String key, String subject, String body) {
+        float[] vector = key != null && cache != null ? cache.get(key) : null;
+        if (vector != null) {
+            return vector;
+        }
+        vector = normalize(model.embed(embeddingText(subject, body)).content().vector());
+        if (key != null && cache != null) {
+            try {
+                cache.put(key, vector);
+            } catch (IOException e) {
+                System.err.println("⚠️  Could not cache embedding: " + e.getMessage());
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Text that is embedded: the subject and the first EMBEDDING_MAX_CHARS chars of the body
+     * (the model only reads about 256 tokens anyway)
+     */
+    public static String embeddingText(String subject, String body) {
+        StringBuilder text = new StringBuilder(subject != null ? subject : "");
+        if (body != null && !body.isEmpty()) {
+            text.append('\n').append(body, 0, Math.min(body.length(), GlobalConfig.EMBEDDING_MAX_CHARS));
+        }
+        return text.toString();
+    }
+
+    public static Map<String, float[]> loadCentroids(File file) throws IOException {
+        Centroids centroids = JsonMappers.reader(Centroids.class).readValue(file);
+        if (centroids.getDimension() != DIMENSION) {
+            throw new IOException("Centroids of dimension " + centroids.getDimension() + " instead of " + DIMENSION);
+        }
+        return centroids.getCentroids();
+    }
+
+    public static void saveCentroids(Map<String, float[]> centroids, File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Centroids content = new Centroids();
+        content.setDimension(DIMENSION);
+        content.setCentroids(centroids);
+        JsonMappers.writer().writeValue(file, content);
+    }
+
+    /**
+     * Scale a vector to unit length (in place)
+     */
+    public static float[] normalize(float[] vector) {
+        double norm2 = 0;
+        for (float value : vector) {
+            norm2 += value * value;
+        }
+        if (norm2 > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm2));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Nearest label, its cosine similarity, and the similarity to the job centroid
+     */
+    public static class Prediction {
+        private final String label;
+        private final double similarity;
+        private final double jobSimilarity;
+
+        Prediction(String label, double similarity, double jobSimilarity) {
+            this.label = label;
+            this.similarity = similarity;
+            this.jobSimilarity = jobSimilarity;
+        }
+
+        public String getLabel() { return label; }
+        public double getSimilarity() { return similarity; }
+        public double getJobSimilarity() { return jobSimilarity; }
+
+        /**
+         * Nearest to the job centroid and close enough to it (EMBEDDING_MIN_JOB_SIMILARITY)
+         */
+        public boolean isJobOffer() {
+            return JOB_LABEL.equals(label) && jobSimilarity >= GlobalConfig.EMBEDDING_MIN_JOB_SIMILARITY;
+        }
+
+        /**
+         * Clearly nearer to a non-job centroid than to the job one (by EMBEDDING_SKIP_MARGIN):
+         * no LLM call needed
+         */
+        public boolean isClearlyNotJob() {
+            return !JOB_LABEL.equals(label) && similarity - jobSimilarity >= GlobalConfig.EMBEDDING_SKIP_MARGIN;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%.2f, job %.2f)", label, similarity, jobSimilarity);
+        }
+    }
+
+    /**
+     * Persistent form of the centroids
+     */
+    public static class Centroids {
+        private int dimension;
+        private Map<String, float[]> centroids = new LinkedHashMap<>();
+
+        public int getDimension() { return dimension; }
+        public void setDimension(int dimension) { this.dimension = dimension; }
+
+        public Map<String, float[]> getCentroids() { return centroids; }
+        public void setCentroids(Map<String, float[]> centroids) { this.centroids = centroids; }
+    }
+}
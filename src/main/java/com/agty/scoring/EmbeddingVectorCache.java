@@ -0,0 +1,157 @@
+package com.agty.scoring;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent cache of embedding vectors, so an email is embedded only once across runs.
+ *
+ * vectors.f32 is a memory-mapped file of fixed-size float records (header: magic, dimension, count),
+ * keys.txt is the append-only list of keys: line i is the key of record i.
+ * A record is written before its key, so a crash can only lose the last vector, never mix them up.
+ */
+public class EmbeddingVectorCache implements AutoCloseable {
+
+    private static final int MAGIC = 0x454D4243;  // "EMBC"
+    private static final int HEADER_BYTES = 16;   // magic, dimension, count, reserved
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int dimension;
+    private final File keysFile;
+    private final FileChannel channel;
+    private final Writer keyLog;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+    private boolean closed = false;
+
+    public EmbeddingVectorCache(File dir, int dimension) throws IOException {
+        this.dimension = dimension;
+        dir.mkdirs();
+        this.keysFile = new File(dir, "keys.txt");
+        this.channel = FileChannel.open(new File(dir, "vectors.f32").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        boolean valid = channel.size() >= HEADER_BYTES;
+        if (valid) {
+            map(Math.max(INITIAL_CAPACITY, (int) ((channel.size() - HEADER_BYTES) / recordBytes())));
+            valid = buffer.getInt(0) == MAGIC && buffer.getInt(4) == dimension;
+            if (!valid) {
+                System.out.println("⚠️  Embedding cache has another format or dimension, starting a new one");
+            }
+        }
+        if (valid) {
+            List<String> keys = keysFile.exists()
+                    ? Files.readAllLines(keysFile.toPath(), StandardCharsets.UTF_8) : List.of();
+            count = Math.min(keys.size(), buffer.getInt(8));
+            for (int i = 0; i < count; i++) {
+                slots.put(keys.get(i), i);
+            }
+            if (count < keys.size()) {
+                rewriteKeys(keys.subList(0, count));  // keys whose vector was never written
+            }
+        } else {
+            channel.truncate(0);
+            Files.deleteIfExists(keysFile.toPath());
+            map(INITIAL_CAPACITY);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, dimension);
+            count = 0;
+        }
+        buffer.putInt(8, count);
+        this.keyLog = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(keysFile, true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cached vector of a key, or null
+     */
+    public synchronized float[] get(String key) {
+        Integer slot = slots.get(cleanKey(key));
+        if (slot == null) {
+            return null;
+        }
+        float[] vector = new float[dimension];
+        int position = offset(slot);
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = buffer.getFloat(position + i * 4);
+        }
+        return vector;
+    }
+
+    /**
+     * Key as written in the key log, one per line (Message-IDs can be folded over several lines)
+     */
+    private static String cleanKey(String key) {
+        return key.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Store (or replace) the vector of a key
+     */
+    public synchronized void put(String key, float[] vector) throws IOException {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector dimension " + vector.length + " instead of " + dimension);
+        }
+        String cleanKey = cleanKey(key);
+        Integer slot = slots.get(cleanKey);
+        boolean isNew = slot == null;
+        if (isNew) {
+            slot = count;
+            if (slot >= capacity) {
+                map(capacity * 2);
+            }
+        }
+        int position = offset(slot);
+        for (int i = 0; i < dimension; i++) {
+            buffer.putFloat(position + i * 4, vector[i]);
+        }
+        if (isNew) {
+            count++;
+            buffer.putInt(8, count);
+            keyLog.write(cleanKey);
+            keyLog.write('\n');
+            keyLog.flush();
+            slots.put(cleanKey, slot);
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.force();
+        keyLog.close();
+        channel.close();
+    }
+
+    private void map(int newCapacity) throws IOException {
+        capacity = newCapacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * recordBytes());
+    }
+
+    private int offset(int slot) {
+        return HEADER_BYTES + slot * recordBytes();
+    }
+
+    private int recordBytes() {
+        return dimension * 4;
+    }
+
+    private void rewriteKeys(List<String> keys) throws IOException {
+        Files.write(keysFile.toPath(), keys, StandardCharsets.UTF_8);
+    }
+}
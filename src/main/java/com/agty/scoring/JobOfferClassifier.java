@@ -0,0 +1,354 @@
+package com.agty.scoring;
+
+import com.agty.utils.GlobalConfig;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Job offer classifier: logistic regression over hashed features, trained offline
+ * (see JobClassifierTrainer) and stored as a flat float array.
+ *
+ * Features (hashed into 2^bits buckets, feature hashing / "hashing trick"):
+ * - subject words and word bigrams
+ * - body words and word bigrams (first MAX_BODY_CHARS chars only)
+ * - sender kind, portal id and matched domain (see SenderClassifier)
+ *
+ * Words are lowercased and hashed char by char, and the feature indices go into a buffer
+ * borrowed from a small shared pool (scoring runs on a new virtual thread per email, so
+ * per-thread buffers would be reallocated every time): scoring an email allocates nothing
+ * and takes a few microseconds, so it can run in front of any LLM call.
+ */
+public final class JobOfferClassifier {
+
+    public static final int DEFAULT_BITS = 18;
+    static final int MAX_BODY_CHARS = 16 * 1024;
+    private static final int MAX_FEATURES = 2 * MAX_BODY_CHARS + 1024;
+    private static final int POOLED_BUFFERS = 2 * Runtime.getRuntime().availableProcessors();  // scoring never blocks while holding one
+    private static final int MAGIC = 0x4A4F4243;  // "JOBC"
+    private static final int FORMAT_VERSION = 1;
+
+    // Feature namespaces, so the same word in the subject and in the body are different features
+    private static final int NS_SUBJECT = 0x1000193;
+    private static final int NS_SUBJECT_BIGRAM = 0x2000193;
+    private static final int NS_BODY = 0x3000193;
+    private static final int NS_BODY_BIGRAM = 0x4000193;
+    private static final int NS_SENDER = 0x5000193;
+
+    private static volatile JobOfferClassifier defaultClassifier;
+    private static volatile boolean defaultLoaded = false;
+
+    private final int bits;
+    private final int mask;
+    private final float[] weights;
+    private float bias;
+    private static final BlockingQueue<int[]> BUFFERS = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    private JobOfferClassifier(int bits, float[] weights, float bias) {
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.weights = weights;
+        this.bias = bias;
+    }
+
+    /**
+     * Model from GlobalConfig.CLASSIFIER_MODEL_FILE, or null if there is no trained model
+     */
+    public static JobOfferClassifier getDefault() {
+        if (!defaultLoaded) {
+            synchronized (JobOfferClassifier.class) {
+                if (!defaultLoaded) {
+                    File file = new File(GlobalConfig.CLASSIFIER_MODEL_FILE);
+                    if (file.exists()) {
+                        try {
+                            defaultClassifier = load(file);
+                            System.out.println("🧠 Job offer classifier loaded from " + file + " (2^" + defaultClassifier.bits + " features)");
+                        } catch (IOException e) {
+                            System.err.println("⚠️  Could not load job offer classifier: " + e.getMessage());
+                        }
+                    } else {
+                        System.out.println("⚠️  No job offer classifier at " + file + " (train one with JobClassifierTrainer), using rules only");
+                    }
+                    defaultLoaded = true;
+                }
+            }
+        }
+        return defaultClassifier;
+    }
+
+    /**
+     * Probability that the email is a job offer
+     */
+    public double probability(String subject, String body, SenderClassifier.Classification sender) {
+        return sigmoid(margin(subject, body, sender));
+    }
+
+    double margin(String subject, String body, SenderClassifier.Classification sender) {
+        int[] features = borrowBuffer();
+        try {
+            int count = extract(subject, body, sender, features);
+            Arrays.sort(features, 0, count);
+            return dot(features, count);
+        } finally {
+            releaseBuffer(features);
+        }
+    }
+
+    /**
+     * Feature buffer from the pool, a new one if all are in use
+     */
+    private static int[] borrowBuffer() {
+        int[] buffer = BUFFERS.poll();
+        return buffer != null ? buffer : new int[MAX_FEATURES];
+    }
+
+    /**
+     * Give a buffer back to the pool (dropped if the pool is full)
+     */
+    private static void releaseBuffer(int[] buffer) {
+        BUFFERS.offer(buffer);
+    }
+
+    /**
+     * Bias + w.x, where x holds the L2-normalized (sublinear) counts of the sorted feature indices
+     */
+    private double dot(int[] sortedFeatures, int count) {
+        double sum = 0;
+        double norm2 = 0;
+        for (int i = 0; i < count; ) {
+            int feature = sortedFeatures[i];
+            int occurrences = 0;
+            while (i < count && sortedFeatures[i] == feature) {
+                occurrences++;
+                i++;
+            }
+            double value = termWeight(occurrences);
+            sum += weights[feature] * value;
+            norm2 += value * value;
+        }
+        return bias + (norm2 > 0 ? sum / Math.sqrt(norm2) : 0);
+    }
+
+    private static double norm(int[] sortedFeatures) {
+        double norm2 = 0;
+        for (int i = 0; i < sortedFeatures.length; ) {
+            int feature = sortedFeatures[i];
+            int occurrences = 0;
+            while (i < sortedFeatures.length && sortedFeatures[i] == feature) {
+                occurrences++;
+                i++;
+            }
+            double value = termWeight(occurrences);
+            norm2 += value * value;
+        }
+        return Math.sqrt(norm2);
+    }
+
+    /**
+     * Sublinear term frequency, so a word repeated all over a long body does not drown the subject
+     */
+    private static double termWeight(int occurrences) {
+        return occurrences == 1 ? 1.0 : 1.0 + Math.log(occurrences);
+    }
+
+    /**
+     * Write the hashed feature indices of an email into out
+     *
+     * @return number of features written
+     */
+    int extract(String subject, String body, SenderClassifier.Classification sender, int[] out) {
+        int count = 0;
+        if (sender != null) {
+            count = add(out, count, mix(sender.getKind().ordinal() + 1, NS_SENDER));
+            if (sender.getPortalId() != null) {
+                count = add(out, count, mix(sender.getPortalId().hashCode(), NS_SENDER + 1));
+            }
+            if (sender.getMatchedDomain() != null) {
+                count = add(out, count, mix(sender.getMatchedDomain().hashCode(), NS_SENDER + 2));
+            }
+        }
+        count = words(subject, Integer.MAX_VALUE, NS_SUBJECT, NS_SUBJECT_BIGRAM, out, count);
+        count = words(body, MAX_BODY_CHARS, NS_BODY, NS_BODY_BIGRAM, out, count);
+        return count;
+    }
+
+    private int words(String text, int maxChars, int unigramNs, int bigramNs, int[] out, int count) {
+        if (text == null) {
+            return count;
+        }
+        int end = Math.min(text.length(), maxChars);
+        int hash = 0;
+        int length = 0;
+        int previous = 0;
+        for (int i = 0; i <= end && count < out.length - 1; i++) {
+            char c = i < end ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                hash = (hash ^ Character.toLowerCase(c)) * 0x01000193;  // FNV-1a
+                length++;
+            } else if (length > 0) {
+                count = add(out, count, mix(hash, unigramNs));
+                if (previous != 0) {
+                    count = add(out, count, mix(previous * 31 + hash, bigramNs));
+                }
+                previous = hash;
+                hash = 0;
+                length = 0;
+            }
+        }
+        return count;
+    }
+
+    private int add(int[] out, int count, int hash) {
+        out[count] = hash & mask;
+        return count + 1;
+    }
+
+    private static int mix(int hash, int namespace) {
+        int h = hash * 0x9E3779B1 + namespace;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static double sigmoid(double x) {
+        return 1.0 / (1.0 + Math.exp(-x));
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public void save(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(bits);
+            out.writeFloat(bias);
+            for (float weight : weights) {
+                out.writeFloat(weight);
+            }
+        }
+    }
+
+    public static JobOfferClassifier load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a job offer classifier model: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported classifier model version " + version);
+            }
+            int bits = in.readInt();
+            if (bits < 8 || bits > 26) {
+                throw new IOException("Invalid feature bits " + bits);
+            }
+            float bias = in.readFloat();
+            float[] weights = new float[1 << bits];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = in.readFloat();
+            }
+            return new JobOfferClassifier(bits, weights, bias);
+        }
+    }
+
+    /**
+     * Offline trainer: collect labelled emails, then run SGD on the logistic loss with L2
+     */
+    public static class Trainer {
+        private final JobOfferClassifier model;
+        private final List<int[]> examples = new ArrayList<>();
+        private final List<Boolean> labels = new ArrayList<>();
+
+        public Trainer(int bits) {
+            this.model = new JobOfferClassifier(bits, new float[1 << bits], 0f);
+        }
+
+        public void add(String subject, String body, SenderClassifier.Classification sender, boolean jobOffer) {
+            int[] buffer = borrowBuffer();
+            int count = model.extract(subject, body, sender, buffer);
+            int[] features = Arrays.copyOf(buffer, count);
+            releaseBuffer(buffer);
+            Arrays.sort(features);
+            examples.add(features);
+            labels.add(jobOffer);
+        }
+
+        public int size() {
+            return examples.size();
+        }
+
+        /**
+         * Train on all examples except every holdoutEvery-th one (0 = no holdout) and
+         * print accuracy / precision / recall on the held-out ones
+         */
+        public JobOfferClassifier train(int epochs, double learningRate, double l2, int holdoutEvery) {
+            List<Integer> trainSet = new ArrayList<>();
+            List<Integer> testSet = new ArrayList<>();
+            for (int i = 0; i < examples.size(); i++) {
+                (holdoutEvery > 0 && i % holdoutEvery == holdoutEvery - 1 ? testSet : trainSet).add(i);
+            }
+
+            // Class weights, since job offers are usually a minority of the mailbox
+            long positives = trainSet.stream().filter(labels::get).count();
+            double positiveWeight = positives > 0 ? (trainSet.size() - positives) / (double) positives : 1.0;
+
+            Random random = new Random(42);
+            float[] w = model.weights;
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                Collections.shuffle(trainSet, random);
+                double rate = learningRate / Math.sqrt(epoch);
+                double loss = 0;
+                for (int index : trainSet) {
+                    int[] features = examples.get(index);
+                    boolean label = labels.get(index);
+                    double p = sigmoid(model.dot(features, features.length));
+                    double sampleWeight = label ? positiveWeight : 1.0;
+                    loss -= sampleWeight * Math.log(label ? Math.max(p, 1e-12) : Math.max(1 - p, 1e-12));
+                    double gradient = sampleWeight * ((label ? 1 : 0) - p);
+                    double norm = norm(features);
+                    double scale = norm > 0 ? 1.0 / norm : 0;
+                    for (int i = 0; i < features.length; ) {
+                        int feature = features[i];
+                        int occurrences = 0;
+                        while (i < features.length && features[i] == feature) {
+                            occurrences++;
+                            i++;
+                        }
+                        double value = termWeight(occurrences) * scale;
+                        w[feature] += (float) (rate * (gradient * value - l2 * w[feature]));
+                    }
+                    model.bias += (float) (rate * gradient);
+                }
+                System.out.println(String.format("  epoch %d/%d - loss %.4f", epoch, epochs, loss / Math.max(1, trainSet.size())));
+            }
+
+            if (!testSet.isEmpty()) {
+                int tp = 0, fp = 0, tn = 0, fn = 0;
+                for (int index : testSet) {
+                    int[] features = examples.get(index);
+                    boolean predicted = sigmoid(model.dot(features, features.length)) >= 0.5;
+                    boolean label = labels.get(index);
+                    if (predicted && label) tp++;
+                    else if (predicted) fp++;
+                    else if (label) fn++;
+                    else tn++;
+                }
+                System.out.println(String.format("📊 Holdout (%d emails): accuracy %.1f%% | precision %.1f%% | recall %.1f%%",
+                        testSet.size(), 100.0 * (tp + tn) / testSet.size(),
+                        tp + fp > 0 ? 100.0 * tp / (tp + fp) : 0, tp + fn > 0 ? 100.0 * tp / (tp + fn) : 0));
+            }
+            return model;
+        }
+    }
+}
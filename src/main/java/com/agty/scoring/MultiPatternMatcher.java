@@ -0,0 +1,237 @@
+package com.agty.scoring;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton matching many substrings in a single pass over the text.
+ *
+ * Every pattern belongs to one or more groups (0..63); a scan returns the bitmask of the
+ * groups that have at least one pattern occurring in the text. Matching is case-insensitive
+ * (Character.toLowerCase on each char), so the text never has to be lower-cased into a copy.
+ * The automaton is immutable and can be shared between threads.
+ */
+public class MultiPatternMatcher {
+
+    private static final int ROOT = 0;
+    private static final int ASCII = 128;
+
+    private final char[][] keys;     // sorted transition chars of each node
+    private final int[][] targets;   // target node of each transition
+    private final int[] fail;
+    private final long[] output;     // groups matched when reaching the node (including suffixes)
+    private final int[] rootAscii;   // dense transitions of the root for ASCII chars
+
+    private MultiPatternMatcher(char[][] keys, int[][] targets, int[] fail, long[] output) {
+        this.keys = keys;
+        this.targets = targets;
+        this.fail = fail;
+        this.output = output;
+        this.rootAscii = new int[ASCII];
+        for (int i = 0; i < keys[ROOT].length; i++) {
+            if (keys[ROOT][i] < ASCII) {
+                rootAscii[keys[ROOT][i]] = targets[ROOT][i];
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Bitmask of the groups matched in the text
+     */
+    public long match(CharSequence text) {
+        return scanner().feed(text).getMatched();
+    }
+
+    /**
+     * Bitmask of the groups matched in the concatenation of the parts (null parts are skipped)
+     */
+    public long match(CharSequence... parts) {
+        Scanner scanner = scanner();
+        for (CharSequence part : parts) {
+            scanner.feed(part);
+        }
+        return scanner.getMatched();
+    }
+
+    /**
+     * Incremental scan: texts fed one after the other are matched as if concatenated
+     */
+    public Scanner scanner() {
+        return new Scanner();
+    }
+
+    /**
+     * Mask with only the given group set
+     */
+    public static long bit(int group) {
+        return 1L << group;
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            if (state == ROOT) {
+                return c < ASCII ? rootAscii[c] : transition(ROOT, c);
+            }
+            int next = transition(state, c);
+            if (next >= 0) {
+                return next;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Target of the transition, -1 if none (0 = root, for the root itself)
+     */
+    private int transition(int state, char c) {
+        char[] k = keys[state];
+        int lo = 0;
+        int hi = k.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (k[mid] < c) {
+                lo = mid + 1;
+            } else if (k[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return targets[state][mid];
+            }
+        }
+        return state == ROOT ? ROOT : -1;
+    }
+
+    /**
+     * State of a scan in progress
+     */
+    public class Scanner {
+        private int state = ROOT;
+        private long matched = 0;
+
+        public Scanner feed(CharSequence text) {
+            if (text == null) {
+                return this;
+            }
+            int s = state;
+            long m = matched;
+            for (int i = 0, n = text.length(); i < n; i++) {
+                s = step(s, Character.toLowerCase(text.charAt(i)));
+                m |= output[s];
+            }
+            state = s;
+            matched = m;
+            return this;
+        }
+
+        public long getMatched() {
+            return matched;
+        }
+
+        /**
+         * Start a new scan, so the same Scanner can be reused without allocating
+         */
+        public Scanner reset() {
+            state = ROOT;
+            matched = 0;
+            return this;
+        }
+    }
+
+    /**
+     * Collects the patterns, then builds the automaton
+     */
+    public static class Builder {
+        private final List<Map<Character, Integer>> trie = new ArrayList<>();
+        private final List<Long> outputs = new ArrayList<>();
+
+        private Builder() {
+            newNode();
+        }
+
+        /**
+         * Add a pattern to a group (the same pattern can be added to several groups)
+         */
+        public Builder add(String pattern, int group) {
+            if (group < 0 || group > 63) {
+                throw new IllegalArgumentException("Group must be in 0..63: " + group);
+            }
+            if (pattern == null || pattern.isEmpty()) {
+                return this;
+            }
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = newNode();
+                    trie.get(node).put(c, next);
+                }
+                node = next;
+            }
+            outputs.set(node, outputs.get(node) | bit(group));
+            return this;
+        }
+
+        /**
+         * Add all the patterns to a group
+         */
+        public Builder addAll(String[] patterns, int group) {
+            for (String pattern : patterns) {
+                add(pattern, group);
+            }
+            return this;
+        }
+
+        public MultiPatternMatcher build() {
+            int size = trie.size();
+            char[][] keys = new char[size][];
+            int[][] targets = new int[size][];
+            int[] fail = new int[size];
+            long[] output = new long[size];
+
+            for (int node = 0; node < size; node++) {
+                Map<Character, Integer> edges = trie.get(node);
+                keys[node] = new char[edges.size()];
+                targets[node] = new int[edges.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> edge : edges.entrySet()) {  // TreeMap: sorted keys
+                    keys[node][i] = edge.getKey();
+                    targets[node][i] = edge.getValue();
+                    i++;
+                }
+                output[node] = outputs.get(node);
+            }
+
+            // Breadth-first: failure links, and outputs inherited from the failure node
+            MultiPatternMatcher partial = new MultiPatternMatcher(keys, targets, fail, output);
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int child : targets[ROOT]) {
+                fail[child] = ROOT;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (int i = 0; i < keys[node].length; i++) {
+                    int child = targets[node][i];
+                    fail[child] = partial.step(fail[node], keys[node][i]);
+                    output[child] |= output[fail[child]];
+                    queue.add(child);
+                }
+            }
+            return new MultiPatternMatcher(keys, targets, fail, output);
+        }
+
+        private int newNode() {
+            trie.add(new TreeMap<>());
+            outputs.add(0L);
+            return trie.size() - 1;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.agty.scoring;
+
+import java.util.Locale;
+
+/**
+ * Lowercased view of an email, computed at most once per email and shared by all the
+ * keyword checks (categorization, targeted search filters, display).
+ *
+ * Checks are staged: the subject (small) is lowercased up front and looked at first,
+ * the body is lowercased only the first time a check actually needs it.
+ * Needles must be given in lowercase.
+ */
+public final class NormalizedText {
+
+    private final String subject;
+    private final String rawBody;
+    private volatile String body;
+
+    public NormalizedText(String subject, String body) {
+        this.subject = subject != null ? subject.toLowerCase(Locale.ROOT) : "";
+        this.rawBody = body != null ? body : "";
+    }
+
+    /**
+     * Lowercased subject
+     */
+    public String subject() {
+        return subject;
+    }
+
+    /**
+     * Lowercased body (lowercased on first use only)
+     */
+    public String body() {
+        String result = body;
+        if (result == null) {
+            result = rawBody.toLowerCase(Locale.ROOT);
+            body = result;
+        }
+        return result;
+    }
+
+    /**
+     * True if the subject or the body contains the needle (subject first, body only if needed)
+     */
+    public boolean contains(String needle) {
+        return subject.contains(needle) || body().contains(needle);
+    }
+
+    /**
+     * True if the subject or the body contains any of the needles.
+     * All needles are tried on the subject before the body is touched
+     */
+    public boolean containsAny(String... needles) {
+        for (String needle : needles) {
+            if (subject.contains(needle)) {
+                return true;
+            }
+        }
+        return bodyContainsAny(needles);
+    }
+
+    /**
+     * True if the body contains any of the needles
+     */
+    public boolean bodyContainsAny(String... needles) {
+        String lowerBody = body();
+        for (String needle : needles) {
+            if (lowerBody.contains(needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,132 @@
+package com.agty.scoring;
+
+import com.agty.utils.GlobalConfig;
+import com.agty.utils.JsonMappers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holder of the current scoring rules.
+ *
+ * Rules are read from GlobalConfig.SCORING_RULES_FILE if it exists, otherwise from the
+ * scoring_rules.json resource. A watched file is recompiled on every change and swapped in
+ * atomically: an email is always scored with one consistent rule set, and a broken file
+ * keeps the previous rules.
+ */
+public class ScoringRuleBook {
+
+    private static final String DEFAULT_RESOURCE = "/scoring_rules.json";
+
+    private static ScoringRuleBook defaultBook;
+
+    private final File file;  // null = classpath resource
+    private final AtomicReference<CompiledRules> current = new AtomicReference<>();
+    private Thread watcher;
+
+    public ScoringRuleBook(File file) {
+        this.file = file;
+        current.set(load());
+    }
+
+    /**
+     * Rule book configured in GlobalConfig (SCORING_RULES_FILE, SCORING_RULES_HOT_RELOAD)
+     */
+    public static synchronized ScoringRuleBook getDefault() {
+        if (defaultBook == null) {
+            File file = new File(GlobalConfig.SCORING_RULES_FILE);
+            defaultBook = new ScoringRuleBook(file.isFile() ? file : null);
+            if (defaultBook.file != null && GlobalConfig.SCORING_RULES_HOT_RELOAD) {
+                defaultBook.startWatching();
+            }
+        }
+        return defaultBook;
+    }
+
+    /**
+     * Rule set to use for the next email
+     */
+    public CompiledRules current() {
+        return current.get();
+    }
+
+    /**
+     * Read and compile the rules again; the current rules are kept if the new ones are invalid
+     *
+     * @return true if the new rules were installed
+     */
+    public boolean reload() {
+        try {
+            CompiledRules rules = load();
+            current.set(rules);
+            System.out.println("🔄 Scoring rules reloaded from " + describe() + " (" + rules.getRuleCount() + " rules)");
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("⚠️  Invalid scoring rules in " + describe() + ", keeping previous rules: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Watch the rules file and reload it when it changes (daemon thread)
+     */
+    public synchronized void startWatching() {
+        if (file == null || watcher != null) {
+            return;
+        }
+        Path dir = file.getAbsoluteFile().toPath().getParent();
+        Path name = file.toPath().getFileName();
+        watcher = new Thread(() -> {
+            try (WatchService service = dir.getFileSystem().newWatchService()) {
+                dir.register(service, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = service.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (name.equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    if (changed) {
+                        Thread.sleep(100);  // let the editor finish writing
+                        reload();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                System.err.println("⚠️  Cannot watch scoring rules file " + file + ": " + e.getMessage());
+            }
+        }, "scoring-rules-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        System.out.println("👀 Watching scoring rules file " + file);
+    }
+
+    private CompiledRules load() {
+        try {
+            ScoringRules rules;
+            if (file != null) {
+                rules = JsonMappers.reader(ScoringRules.class).readValue(file);
+            } else {
+                try (InputStream in = ScoringRuleBook.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+                    if (in == null) {
+                        throw new IllegalStateException("Scoring rules resource " + DEFAULT_RESOURCE + " not found");
+                    }
+                    rules = JsonMappers.reader(ScoringRules.class).readValue(in);
+                }
+            }
+            return CompiledRules.compile(rules);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read scoring rules from " + describe() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private String describe() {
+        return file != null ? file.getPath() : "classpath:" + DEFAULT_RESOURCE;
+    }
+}
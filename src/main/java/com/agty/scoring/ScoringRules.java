@@ -0,0 +1,127 @@
+package com.agty.scoring;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Relevance scoring rules as read from the rules file (scoring_rules.json).
+ * Compiled into CompiledRules before use.
+ */
+public class ScoringRules {
+
+    private int version;
+    private String description;
+    private Senders senders = new Senders();
+    private Map<String, List<String>> topics = new LinkedHashMap<>();
+    private Map<String, List<String>> groups = new LinkedHashMap<>();
+    private List<Rule> rules = new ArrayList<>();
+
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+
+    public Senders getSenders() { return senders; }
+    public void setSenders(Senders senders) { this.senders = senders; }
+
+    /**
+     * Keywords of each topic (the KEYWORDS group of the rules)
+     */
+    public Map<String, List<String>> getTopics() { return topics; }
+    public void setTopics(Map<String, List<String>> topics) { this.topics = topics; }
+
+    /**
+     * Pattern groups referenced by the rules as subject:NAME or text:NAME
+     */
+    public Map<String, List<String>> getGroups() { return groups; }
+    public void setGroups(Map<String, List<String>> groups) { this.groups = groups; }
+
+    public List<Rule> getRules() { return rules; }
+    public void setRules(List<Rule> rules) { this.rules = rules; }
+
+    /**
+     * Sender domain lists
+     */
+    public static class Senders {
+        private List<String> trusted = new ArrayList<>();
+        private List<String> nonJob = new ArrayList<>();
+        private List<String> trustedForTopics = new ArrayList<>();
+
+        /** Job platforms: bonus, and newsletter check skipped */
+        public List<String> getTrusted() { return trusted; }
+        public void setTrusted(List<String> trusted) { this.trusted = trusted; }
+
+        /** Newsletters, events, shops, ... */
+        public List<String> getNonJob() { return nonJob; }
+        public void setNonJob(List<String> nonJob) { this.nonJob = nonJob; }
+
+        /** Topics for which a trusted sender counts as TRUSTED (UNKNOWN otherwise) */
+        public List<String> getTrustedForTopics() { return trustedForTopics; }
+        public void setTrustedForTopics(List<String> trustedForTopics) { this.trustedForTopics = trustedForTopics; }
+    }
+
+    /**
+     * One rule: conditions (all must hold) and an action
+     */
+    public static class Rule {
+        private String name;
+        private String phase = "BODY";               // HEADER rules only look at sender and subject
+        private List<String> topics = new ArrayList<>();
+        private List<String> sender = new ArrayList<>();  // TRUSTED, NON_JOB, UNKNOWN
+        private List<String> all = new ArrayList<>();
+        private List<String> any = new ArrayList<>();
+        private List<String> none = new ArrayList<>();
+        private List<String> withFlags = new ArrayList<>();
+        private List<String> withoutFlags = new ArrayList<>();
+        private Integer minScore;
+        private Integer maxScore;
+        private String action;                       // REJECT, ACCEPT, SCORE, FLAG
+        private int score;
+        private List<String> flags = new ArrayList<>();
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getPhase() { return phase; }
+        public void setPhase(String phase) { this.phase = phase; }
+
+        public List<String> getTopics() { return topics; }
+        public void setTopics(List<String> topics) { this.topics = topics; }
+
+        public List<String> getSender() { return sender; }
+        public void setSender(List<String> sender) { this.sender = sender; }
+
+        public List<String> getAll() { return all; }
+        public void setAll(List<String> all) { this.all = all; }
+
+        public List<String> getAny() { return any; }
+        public void setAny(List<String> any) { this.any = any; }
+
+        public List<String> getNone() { return none; }
+        public void setNone(List<String> none) { this.none = none; }
+
+        public List<String> getWithFlags() { return withFlags; }
+        public void setWithFlags(List<String> withFlags) { this.withFlags = withFlags; }
+
+        public List<String> getWithoutFlags() { return withoutFlags; }
+        public void setWithoutFlags(List<String> withoutFlags) { this.withoutFlags = withoutFlags; }
+
+        public Integer getMinScore() { return minScore; }
+        public void setMinScore(Integer minScore) { this.minScore = minScore; }
+
+        public Integer getMaxScore() { return maxScore; }
+        public void setMaxScore(Integer maxScore) { this.maxScore = maxScore; }
+
+        public String getAction() { return action; }
+        public void setAction(String action) { this.action = action; }
+
+        public int getScore() { return score; }
+        public void setScore(int score) { this.score = score; }
+
+        public List<String> getFlags() { return flags; }
+        public void setFlags(List<String> flags) { this.flags = flags; }
+    }
+}
@@ -0,0 +1,155 @@
+package com.agty.scoring;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sender classification index: the From header is parsed once, then the domain of the
+ * address and each of its parent domains (r.alertes.cadremploi.fr, alertes.cadremploi.fr,
+ * cadremploi.fr, fr) are looked up in a hash map of the configured domains.
+ *
+ * Only the address is looked at, so a display name like "Jobs via linkedin.com <x@spam.io>"
+ * is not taken for LinkedIn, and "notlinkedin.com" does not match "linkedin.com".
+ * A non-job domain anywhere in the chain wins over a trusted one.
+ */
+public final class SenderClassifier {
+
+    public enum Kind { TRUSTED_PORTAL, NON_JOB, UNKNOWN }
+
+    private static final Classification UNKNOWN = new Classification(Kind.UNKNOWN, null, null);
+
+    private final Map<String, Classification> domains = new HashMap<>();
+
+    /**
+     * @param trustedDomains Job portal domains (linkedin.com, cadremploi.fr, ...)
+     * @param nonJobDomains  Domains that never send job offers (meetup.com, amazon.fr, ...)
+     */
+    public SenderClassifier(String[] trustedDomains, String[] nonJobDomains) {
+        for (String domain : trustedDomains) {
+            String key = normalizeDomain(domain);
+            domains.put(key, new Classification(Kind.TRUSTED_PORTAL, key, portalIdOf(key)));
+        }
+        for (String domain : nonJobDomains) {
+            String key = normalizeDomain(domain);
+            domains.put(key, new Classification(Kind.NON_JOB, key, null));
+        }
+    }
+
+    /**
+     * Classify a From header ("Name <user@host>" or "user@host")
+     */
+    public Classification classify(String from) {
+        return classifyDomain(domainOf(from));
+    }
+
+    /**
+     * Classify an already extracted sender domain
+     */
+    public Classification classifyDomain(String domain) {
+        if (domain == null || domain.isEmpty()) {
+            return UNKNOWN;
+        }
+        String suffix = normalizeDomain(domain);
+        Classification trusted = null;
+        while (true) {
+            Classification hit = domains.get(suffix);
+            if (hit != null) {
+                if (hit.kind == Kind.NON_JOB) {
+                    return hit;
+                }
+                if (trusted == null) {
+                    trusted = hit;
+                }
+            }
+            int dot = suffix.indexOf('.');
+            if (dot < 0) {
+                break;
+            }
+            suffix = suffix.substring(dot + 1);
+        }
+        return trusted != null ? trusted : UNKNOWN;
+    }
+
+    /**
+     * Lowercased domain of the address in a From header, or null if there is no address
+     */
+    public static String domainOf(String from) {
+        String address = addressOf(from);
+        if (address == null) {
+            return null;
+        }
+        int at = address.lastIndexOf('@');
+        if (at < 0 || at == address.length() - 1) {
+            return null;
+        }
+        return normalizeDomain(address.substring(at + 1));
+    }
+
+    /**
+     * Bare address of a From header: the part between angle brackets if any,
+     * otherwise the first token containing '@'
+     */
+    public static String addressOf(String from) {
+        if (from == null) {
+            return null;
+        }
+        int open = from.lastIndexOf('<');
+        if (open >= 0) {
+            int close = from.indexOf('>', open);
+            return from.substring(open + 1, close > open ? close : from.length()).trim();
+        }
+        for (String token : from.trim().split("\\s+")) {
+            if (token.indexOf('@') >= 0) {
+                return token;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Portal id of a trusted domain: its label before the top-level domain
+     * (cadremploi.fr -> cadremploi, jobs.lever.co -> lever)
+     */
+    static String portalIdOf(String domain) {
+        int lastDot = domain.lastIndexOf('.');
+        if (lastDot <= 0) {
+            return domain;
+        }
+        return domain.substring(domain.lastIndexOf('.', lastDot - 1) + 1, lastDot);
+    }
+
+    private static String normalizeDomain(String domain) {
+        String result = domain.trim().toLowerCase();
+        while (result.endsWith(".") || result.endsWith(">")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Result of a classification: kind, matched configured domain and portal id (trusted portals only)
+     */
+    public static final class Classification {
+        private final Kind kind;
+        private final String matchedDomain;
+        private final String portalId;
+
+        private Classification(Kind kind, String matchedDomain, String portalId) {
+            this.kind = kind;
+            this.matchedDomain = matchedDomain;
+            this.portalId = portalId;
+        }
+
+        public Kind getKind() { return kind; }
+        public String getMatchedDomain() { return matchedDomain; }
+        public String getPortalId() { return portalId; }
+
+        public boolean isTrustedPortal() { return kind == Kind.TRUSTED_PORTAL; }
+        public boolean isNonJob() { return kind == Kind.NON_JOB; }
+
+        @Override
+        public String toString() {
+            return portalId != null ? kind + "(" + portalId + ")" : kind.toString();
+        }
+    }
+}
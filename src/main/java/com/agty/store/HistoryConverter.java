@@ -0,0 +1,71 @@
+package com.agty.store;
+
+import com.agty.utils.JsonMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+
+/**
+ * Conversion of a history file between its JSON array and its binary store (<history>.store.mv.db),
+ * both ways, streamed.
+ *
+ * Usage: HistoryConverter <to-store|to-json> <emails|opportunities|extractions> <history json>
+ * - to-store : (re)import the JSON array into the store, replacing its content
+ * - to-json  : rewrite the JSON array from the store
+ */
+public class HistoryConverter {
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: HistoryConverter <to-store|to-json> <emails|opportunities|extractions> <history json>");
+            return;
+        }
+        String direction = args[0];
+        String historyFilePath = args[2];
+        ObjectMapper mapper = JsonMappers.mapper();
+
+        try {
+            RecordStore.Schema<?> schema = switch (args[1]) {
+                case "emails" -> RecordSchemas.EMAILS;
+                case "opportunities" -> RecordSchemas.OPPORTUNITIES;
+                case "extractions" -> RecordSchemas.EXTRACTIONS;
+                default -> throw new IllegalArgumentException("Unknown record type: " + args[1]);
+            };
+            long start = System.currentTimeMillis();
+            if ("to-store".equalsIgnoreCase(direction)) {
+                if (!new File(historyFilePath).exists()) {
+                    System.err.println("❌ No history file " + historyFilePath);
+                    return;
+                }
+                boolean existed = RecordStore.exists(historyFilePath);
+                RecordStore<?> store = RecordStore.open(historyFilePath, schema, mapper);  // a new store imports on open
+                try {
+                    if (existed) {
+                        int records = store.importJson();
+                        System.out.println("🗄️  Imported " + records + " records of " + historyFilePath + " into its store");
+                    }
+                } finally {
+                    store.release();
+                }
+            } else if ("to-json".equalsIgnoreCase(direction)) {
+                if (!RecordStore.exists(historyFilePath)) {
+                    System.err.println("❌ No store for " + historyFilePath);
+                    return;
+                }
+                RecordStore<?> store = RecordStore.open(historyFilePath, schema, mapper);
+                try {
+                    store.exportJson();
+                } finally {
+                    store.release();
+                }
+            } else {
+                System.err.println("❌ Unknown direction: " + direction + " (to-store or to-json)");
+                return;
+            }
+            System.out.println("✓ Done in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            System.err.println("\n❌ ERROR: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
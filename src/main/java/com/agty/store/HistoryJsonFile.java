@@ -0,0 +1,122 @@
+package com.agty.store;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reading and writing of a history file (JSON array of records: EmailInfo, JobOpportunity,
+ * JobOfferExtraction), streamed one record at a time. RecordStore imports it and exports to it.
+ *
+ * The array is written to <history>.snapshot.tmp, fsynced, then renamed over the history, so
+ * readers see the old or the new array, never a partial one (a tmp file left by a crash is
+ * overwritten by the next write).
+ */
+public final class HistoryJsonFile {
+
+    private static final String TMP_SUFFIX = ".snapshot.tmp";
+
+    private HistoryJsonFile() {
+    }
+
+    /**
+     * Stream the records of a history file, one record in memory at a time
+     */
+    public static <T> void forEach(String historyFilePath, Class<T> type, ObjectMapper mapper, Consumer<T> action) throws IOException {
+        forEach(historyFilePath, type, mapper, Collections.emptySet(), action);
+    }
+
+    /**
+     * Stream the records of a history file without some heavy fields (e.g. "content", left null):
+     * their values are skipped by the parser, never copied into a String
+     */
+    public static <T> void forEach(String historyFilePath, Class<T> type, ObjectMapper mapper,
+                                   Set<String> skipFields, Consumer<T> action) throws IOException {
+        File history = new File(historyFilePath);
+        if (!history.exists() || history.length() == 0) {
+            return;
+        }
+        ObjectReader reader = mapper.readerFor(type);
+        try (JsonParser parser = skipping(mapper.getFactory().createParser(history), skipFields)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException(history + " is not a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                action.accept(reader.readValue(parser));
+            }
+        }
+    }
+
+    /**
+     * Replace the whole history with the records written by a source, streamed into the array
+     */
+    public static void write(String historyFilePath, RecordSource records, ObjectMapper mapper) throws IOException {
+        File history = new File(historyFilePath);
+        if (history.getParentFile() != null) {
+            history.getParentFile().mkdirs();
+        }
+        File tmp = new File(historyFilePath + TMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(new NonClosingOutputStream(out))) {
+                generator.useDefaultPrettyPrinter();
+                generator.writeStartArray();
+                records.writeTo(generator);
+                generator.writeEndArray();
+            }
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), history.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Parser that leaves out the values of the given fields, at any depth
+     */
+    private static JsonParser skipping(JsonParser parser, Set<String> skipFields) {
+        if (skipFields.isEmpty()) {
+            return parser;
+        }
+        return new FilteringParserDelegate(parser, new TokenFilter() {
+            @Override
+            public TokenFilter includeProperty(String name) {
+                return skipFields.contains(name) ? null : this;
+            }
+        }, TokenFilter.Inclusion.INCLUDE_ALL_AND_PATH, true);
+    }
+
+    /**
+     * Records of a history file, written one by one into the array
+     */
+    public interface RecordSource {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * Lets Jackson close its generator without closing the stream before the fsync
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(new BufferedOutputStream(out, 1 << 16));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.agty.store;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary row format of the store: the record tree encoded in Smile (binary JSON, field names
+ * written once per record), with its large text fields (the HTML content of an email) moved out
+ * into blobs addressed by the SHA-256 of their text. The row keeps "<field>@blob": <hash>, so the
+ * same body received twice (the same alert in two folders) is stored once, and scans skipping
+ * the field never read it.
+ *
+ * Blobs are deflated by the store (deflate/inflate below); the tree goes through the caller's
+ * ObjectMapper, so records bind exactly as from the history JSON.
+ */
+final class RecordCodec {
+
+    static final String BLOB_REF_SUFFIX = "@blob";
+    private static final int BLOB_MIN_CHARS = 512;  // shorter values stay in the row
+
+    private static final ObjectMapper SMILE = new ObjectMapper(new SmileFactory());
+
+    private final ObjectMapper mapper;
+    private final Set<String> blobFields;
+
+    RecordCodec(ObjectMapper mapper, Set<String> blobFields) {
+        this.mapper = mapper;
+        this.blobFields = blobFields;
+    }
+
+    /**
+     * Smile row of a record, its blob fields handed to the blob writer
+     */
+    byte[] encode(Object record, BlobWriter blobs) throws IOException {
+        ObjectNode node = mapper.valueToTree(record);
+        for (String field : blobFields) {
+            JsonNode value = node.get(field);
+            if (value != null && value.isTextual() && value.textValue().length() >= BLOB_MIN_CHARS) {
+                byte[] text = value.textValue().getBytes(StandardCharsets.UTF_8);
+                String hash = hash(text);
+                blobs.write(hash, text);
+                node.remove(field);
+                node.put(field + BLOB_REF_SUFFIX, hash);
+            }
+        }
+        return SMILE.writeValueAsBytes(node);
+    }
+
+    /**
+     * Record of a row; skipped fields are left null and their blobs not read
+     */
+    <T> T decode(byte[] row, Class<T> type, Set<String> skipFields, BlobReader blobs) throws IOException {
+        return mapper.treeToValue(decodeTree(row, skipFields, blobs), type);
+    }
+
+    /**
+     * Tree of a row, blob references replaced by their text (as in the history JSON)
+     */
+    ObjectNode decodeTree(byte[] row, Set<String> skipFields, BlobReader blobs) throws IOException {
+        ObjectNode node = (ObjectNode) SMILE.readTree(row);
+        for (String field : blobFields) {
+            JsonNode hash = node.remove(field + BLOB_REF_SUFFIX);
+            if (hash != null && !skipFields.contains(field)) {
+                node.put(field, new String(blobs.read(hash.textValue()), StandardCharsets.UTF_8));
+            }
+        }
+        if (!skipFields.isEmpty()) {
+            node.remove(skipFields);
+        }
+        return node;
+    }
+
+    /**
+     * Write a row as JSON, blob references resolved; rows without blob fields are copied token by token
+     */
+    void writeJson(byte[] row, JsonGenerator generator, BlobReader blobs) throws IOException {
+        if (!blobFields.isEmpty()) {
+            mapper.writeTree(generator, decodeTree(row, Collections.emptySet(), blobs));
+            return;
+        }
+        try (JsonParser parser = SMILE.createParser(row)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+    }
+
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated blob");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted blob: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    interface BlobWriter {
+        void write(String hash, byte[] text) throws IOException;
+    }
+
+    interface BlobReader {
+        byte[] read(String hash) throws IOException;
+    }
+}
@@ -0,0 +1,67 @@
+package com.agty.store;
+
+import com.agty.GmailEmailProcessor02.EmailInfo;
+import com.agty.JobOfferExtraction;
+import com.agty.JobOpportunity;
+import com.agty.mail.MessageIdentityIndex;
+import com.agty.scoring.SenderClassifier;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Store tables of the three history record types. The message key is the primary key of
+ * MessageIdentityIndex (Message-ID, or subject + sender (+ sent date)), the same key the
+ * processors use to skip already processed messages.
+ */
+public final class RecordSchemas {
+
+    /** Emails kept by GmailEmailProcessor02 (job_opportunities_emails.json); their HTML content is a blob */
+    public static final RecordStore.Schema<EmailInfo> EMAILS = new RecordStore.Schema<>(
+            "emails", EmailInfo.class,
+            email -> MessageIdentityIndex.identity(email.getMessageId(), email.getSubject(), email.getFrom(),
+                    email.getSentDate() != null ? email.getSentDate().getTime() : null).getPrimaryKey(),
+            EmailInfo::getSenderDomain,
+            email -> null,
+            email -> email.getSentDate() != null ? email.getSentDate().getTime() : null,
+            email -> null,
+            "content");
+
+    /** Opportunities of JobOpportunityExtractor (job_opportunities.json), several per digest email */
+    public static final RecordStore.Schema<JobOpportunity> OPPORTUNITIES = new RecordStore.Schema<>(
+            "opportunities", JobOpportunity.class,
+            opp -> MessageIdentityIndex.identityWithoutDate(opp.getSourceEmailMessageId(),
+                    opp.getSourceEmailSubject(), opp.getSourceEmailFrom()).getPrimaryKey(),
+            JobOpportunity::getJobPortalName,
+            JobOpportunity::getCompany,
+            opp -> parseDate(opp.getSourceEmailDate()),
+            opp -> null);
+
+    /** Extractions of JobAlertEmailFoldersProcessor (job_offers_extracted.json) */
+    public static final RecordStore.Schema<JobOfferExtraction> EXTRACTIONS = new RecordStore.Schema<>(
+            "extractions", JobOfferExtraction.class,
+            extraction -> MessageIdentityIndex.identity(extraction.getMessageId(), extraction.getSubject(),
+                    extraction.getFrom(), extraction.getSentDate()).getPrimaryKey(),
+            extraction -> SenderClassifier.domainOf(extraction.getFrom()),
+            JobOfferExtraction::getCompany,
+            JobOfferExtraction::getSentDate,
+            JobOfferExtraction::getSourceFolder);
+
+    private RecordSchemas() {
+    }
+
+    /**
+     * Sent date of an opportunity, stored as Date.toString() ("Mon Jan 15 14:30:00 CET 2024")
+     */
+    private static Long parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US).parse(date).getTime();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+}
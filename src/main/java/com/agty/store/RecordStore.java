@@ -0,0 +1,748 @@
+package com.agty.store;
+
+import com.agty.utils.GlobalConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Embedded, file-backed store of the records of a history file (EmailInfo, JobOpportunity,
+ * JobOfferExtraction), in an H2 database next to it: <history>.store.mv.db.
+ *
+ * One row per record: the record in Smile (see RecordCodec), its message key (see RecordSchemas)
+ * and the indexed columns portal, company, sent_date and source_folder. The large text fields of
+ * the schema (email content) go to the <table>_blobs table, deflated and keyed by their SHA-256,
+ * so a body is stored once and scans skipping it never read it; <table>_blob_refs lists the blobs
+ * of each message key, so a blob no longer referenced is deleted in the transaction that drops
+ * its last reference. (record_key, seq) is unique:
+ * the records extracted from one message (several offers of a digest) share the message key,
+ * seq is their rank. put/putAll replace all the records of the message keys they write in one
+ * transaction (upsert), so lookups by key or by indexed column stay B-tree lookups whatever the
+ * size of the archive, and nothing has to be held in memory.
+ *
+ * The history JSON array remains the exchange format: it is imported on the first open (store
+ * still empty), in one transaction, so an interrupted import leaves the store empty and is redone
+ * at the next open. It is written back from the store on demand (HistoryConverter to-json), or at
+ * close when STORE_EXPORT_JSON, streamed row by row; never after an unfinished import, and not at
+ * close once the JSON was changed by someone else (its date and size are kept in <table>_meta at
+ * each import and export). Opened with AUTO_SERVER, so a second process
+ * (JobOpportunityExtractor reading the emails while GmailEmailProcessor02 writes them) can share
+ * the store; MAX_COMPACT_TIME lets the last close reclaim the space of the pages rewritten by a
+ * bulk import.
+ */
+public class RecordStore<T> implements AutoCloseable {
+
+    private static final String STORE_SUFFIX = ".store";
+    private static final int IMPORT_BATCH = 1000;  // records per JDBC batch when importing a history file
+    private static final int IMPORT_BATCH_BYTES = 8 << 20;  // and at most this much row data
+    private static final int PAGE_ROWS = 100;      // rows read per query when streaming
+
+    private final String historyFilePath;
+    private final Schema<T> schema;
+    private final ObjectMapper mapper;
+    private final RecordCodec codec;
+    private final Connection connection;
+    private final PreparedStatement blobLookup;
+    private final PreparedStatement blobInsert;
+    private final PreparedStatement blobRead;
+    private boolean closed = false;
+    private boolean importing = false;    // an import started and was not committed
+    private boolean jsonChanged = false;  // the history JSON changed since the store last imported or exported it
+
+    private RecordStore(String historyFilePath, Schema<T> schema, ObjectMapper mapper) throws IOException {
+        this.historyFilePath = historyFilePath;
+        this.schema = schema;
+        this.mapper = mapper;
+        this.codec = new RecordCodec(mapper, schema.blobFields);
+        File history = new File(historyFilePath).getAbsoluteFile();
+        if (history.getParentFile() != null) {
+            history.getParentFile().mkdirs();
+        }
+        try {
+            connection = DriverManager.getConnection("jdbc:h2:file:" + history.getPath() + STORE_SUFFIX
+                    + ";AUTO_SERVER=TRUE;MAX_COMPACT_TIME=5000" + (GlobalConfig.STORE_FSYNC ? ";WRITE_DELAY=0" : ""), "sa", "");
+            createTables();
+            blobLookup = connection.prepareStatement("SELECT 1 FROM " + schema.table + "_blobs WHERE hash = ?");
+            blobInsert = connection.prepareStatement("INSERT INTO " + schema.table + "_blobs (hash, data) VALUES (?, ?)");
+            blobRead = connection.prepareStatement("SELECT data FROM " + schema.table + "_blobs WHERE hash = ?");
+        } catch (SQLException e) {
+            throw new IOException("Cannot open the store of " + historyFilePath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Store of a history file; filled from the history JSON if still empty
+     */
+    public static <T> RecordStore<T> open(String historyFilePath, Schema<T> schema, ObjectMapper mapper) throws IOException {
+        RecordStore<T> store = new RecordStore<>(historyFilePath, schema, mapper);
+        try {
+            if (store.size() == 0 && new File(historyFilePath).exists()) {
+                int records = store.importHistory(false);
+                System.out.println("🗄️  Imported " + records + " records of " + historyFilePath + " into its store");
+            } else {
+                store.checkJsonStamp();
+            }
+        } catch (IOException e) {
+            store.release();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * True if the history file has a store already
+     */
+    public static boolean exists(String historyFilePath) {
+        return new File(historyFilePath + STORE_SUFFIX + ".mv.db").exists();
+    }
+
+    /**
+     * Replace the whole content of the store with the history JSON, streamed, in
+     * one transaction: if the import fails, the store keeps its former content
+     *
+     * @return number of records imported
+     */
+    public synchronized int importJson() throws IOException {
+        return importHistory(true);
+    }
+
+    /**
+     * Insert or replace the records of a message
+     */
+    public void put(T record) throws IOException {
+        putAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Insert or replace, in one transaction: for each message key, its records become the given
+     * ones (in order), rows of an earlier extraction beyond them are removed
+     */
+    public synchronized void putAll(List<T> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        inTransaction(() -> writeRows(records));
+    }
+
+    /**
+     * Replace the whole content of the store, in one transaction (blobs no longer used are deleted)
+     */
+    public synchronized void replaceAll(List<T> records) throws IOException {
+        inTransaction(() -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM " + schema.table);
+                statement.executeUpdate("DELETE FROM " + schema.table + "_blob_refs");
+            }
+            writeRows(records);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM " + schema.table + "_blobs WHERE hash NOT IN"
+                        + " (SELECT hash FROM " + schema.table + "_blob_refs)");
+            }
+        });
+    }
+
+    /**
+     * Records of a message key, in order
+     */
+    public List<T> get(String key) throws IOException {
+        return query("record_key = ?", key);
+    }
+
+    public synchronized boolean contains(String key) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT 1 FROM " + schema.table + " WHERE record_key = ? LIMIT 1")) {
+            statement.setString(1, key);
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Store lookup failed: " + e.getMessage(), e);
+        }
+    }
+
+    public List<T> findByPortal(String portal) throws IOException {
+        return query("portal = ?", normalize(portal));
+    }
+
+    public List<T> findByCompany(String company) throws IOException {
+        return query("company = ?", normalize(company));
+    }
+
+    public List<T> findBySourceFolder(String sourceFolder) throws IOException {
+        return query("source_folder = ?", sourceFolder);
+    }
+
+    /**
+     * Records sent between two dates (epoch millis, inclusive)
+     */
+    public List<T> findBySentDate(long fromMillis, long toMillis) throws IOException {
+        return query("sent_date BETWEEN ? AND ?", fromMillis, toMillis);
+    }
+
+    /**
+     * Stream all the records, in order of first insertion, a page of rows in memory at a time
+     */
+    public void forEach(Consumer<T> action) throws IOException {
+        forEach(Collections.emptySet(), action);
+    }
+
+    /**
+     * Stream all the records without some heavy fields (e.g. "content"), left null; for scans
+     * that only need keys or a few fields
+     */
+    public void forEach(Set<String> skipFields, Consumer<T> action) throws IOException {
+        forEachRow(row -> action.accept(bind(row, skipFields)));
+    }
+
+    /**
+     * Iterator over all the records, in order of first insertion, reading PAGE_ROWS rows at a time:
+     * the store can hold more records than the heap, and no lock is held between two pages.
+     * Read errors are thrown as UncheckedIOException.
+     */
+    public Iterator<T> iterator(Set<String> skipFields) {
+        return new Iterator<T>() {
+            private final Deque<byte[]> page = new ArrayDeque<>();
+            private long lastId = 0;
+            private boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                if (page.isEmpty() && !exhausted) {
+                    try {
+                        lastId = fetchPage(lastId, page);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    exhausted = page.size() < PAGE_ROWS;
+                }
+                return !page.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return bind(page.poll(), skipFields);
+                } catch (StoreException e) {
+                    throw new UncheckedIOException(e.getCause());
+                }
+            }
+        };
+    }
+
+    public synchronized int size() throws IOException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM " + schema.table)) {
+            rows.next();
+            return rows.getInt(1);
+        } catch (SQLException e) {
+            throw new IOException("Store count failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write the history JSON array from the store (atomically, rows copied without binding them)
+     */
+    public void exportJson() throws IOException {
+        if (importing) {
+            throw new IOException("The import of " + historyFilePath + " did not finish: its store is not exported");
+        }
+        int[] records = {0};
+        HistoryJsonFile.write(historyFilePath, generator -> forEachRow(row -> {
+            try {
+                codec.writeJson(row, generator, this::readBlob);
+                records[0]++;
+            } catch (IOException e) {
+                throw new StoreException(e);
+            }
+        }), mapper);
+        try {
+            writeJsonStamp();
+        } catch (SQLException e) {
+            throw new IOException("Could not record the export of " + historyFilePath + ": " + e.getMessage(), e);
+        }
+        jsonChanged = false;
+        System.out.println("💾 Exported " + records[0] + " records to " + historyFilePath);
+    }
+
+    /**
+     * Export the history JSON (when STORE_EXPORT_JSON, unless an import did not finish or the JSON
+     * changed outside the store) and close the database
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (GlobalConfig.STORE_EXPORT_JSON && !importing) {
+                if (jsonChanged) {
+                    System.out.println("⚠️  " + historyFilePath + " changed outside its store: not exported over"
+                            + " (HistoryConverter to-store imports it, to-json overwrites it)");
+                } else {
+                    exportJson();
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Close the database without exporting (store only read)
+     */
+    public synchronized void release() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("⚠️  Could not close the store of " + historyFilePath + ": " + e.getMessage());
+        }
+    }
+
+    private void createTables() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + schema.table + " ("
+                    + "id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                    + "record_key VARCHAR NOT NULL, "
+                    + "seq INT NOT NULL, "
+                    + "portal VARCHAR, "
+                    + "company VARCHAR, "
+                    + "sent_date BIGINT, "
+                    + "source_folder VARCHAR, "
+                    + "record VARBINARY NOT NULL, "
+                    + "UNIQUE (record_key, seq))");
+            // Created with the table: building them later would sort whole rows in memory
+            for (String column : new String[]{"portal", "company", "sent_date", "source_folder"}) {
+                statement.execute("CREATE INDEX IF NOT EXISTS " + schema.table + "_" + column
+                        + " ON " + schema.table + " (" + column + ")");
+            }
+            statement.execute("CREATE TABLE IF NOT EXISTS " + schema.table + "_blobs ("
+                    + "hash VARCHAR PRIMARY KEY, "
+                    + "data VARBINARY NOT NULL)");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + schema.table + "_blob_refs ("
+                    + "record_key VARCHAR NOT NULL, "
+                    + "hash VARCHAR NOT NULL, "
+                    + "PRIMARY KEY (record_key, hash))");
+            statement.execute("CREATE INDEX IF NOT EXISTS " + schema.table + "_blob_refs_hash"
+                    + " ON " + schema.table + "_blob_refs (hash)");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + schema.table + "_meta ("
+                    + "name VARCHAR PRIMARY KEY, "
+                    + "number BIGINT NOT NULL)");
+        }
+    }
+
+    /**
+     * Note whether the history JSON changed since the last import or export; a store without a
+     * stamp (exported at every close before the stamps) takes the current one
+     */
+    private synchronized void checkJsonStamp() throws IOException {
+        File history = new File(historyFilePath);
+        if (!history.exists()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT name, number FROM "
+                + schema.table + "_meta WHERE name IN ('json_modified', 'json_length')")) {
+            Map<String, Long> stamp = new HashMap<>();
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    stamp.put(rows.getString(1), rows.getLong(2));
+                }
+            }
+            if (stamp.size() < 2) {
+                writeJsonStamp();
+            } else {
+                jsonChanged = stamp.get("json_modified") != history.lastModified()
+                        || stamp.get("json_length") != history.length();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read the stamp of " + historyFilePath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Record the date and size of the history JSON, as just imported or exported
+     */
+    private void writeJsonStamp() throws SQLException {
+        File history = new File(historyFilePath);
+        try (PreparedStatement statement = connection.prepareStatement("MERGE INTO " + schema.table
+                + "_meta (name, number) KEY (name) VALUES (?, ?)")) {
+            statement.setString(1, "json_modified");
+            statement.setLong(2, history.lastModified());
+            statement.addBatch();
+            statement.setString(1, "json_length");
+            statement.setLong(2, history.length());
+            statement.addBatch();
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Records matching a condition, through the index of its column
+     */
+    private synchronized List<T> query(String where, Object... values) throws IOException {
+        List<T> records = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT record FROM " + schema.table + " WHERE " + where + " ORDER BY id")) {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    records.add(bind(rows.getBytes(1)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Store query failed: " + e.getMessage(), e);
+        } catch (StoreException e) {
+            throw e.getCause();
+        }
+        return records;
+    }
+
+    /**
+     * All the rows, in order of first insertion; the action runs outside the lock, between page reads
+     */
+    private void forEachRow(Consumer<byte[]> action) throws IOException {
+        Deque<byte[]> page = new ArrayDeque<>();
+        long lastId = 0;
+        try {
+            do {
+                lastId = fetchPage(lastId, page);
+                int rows = page.size();
+                while (!page.isEmpty()) {
+                    action.accept(page.poll());
+                }
+                if (rows < PAGE_ROWS) {
+                    return;
+                }
+            } while (true);
+        } catch (StoreException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Read the next PAGE_ROWS rows after an id into a page
+     *
+     * @return id of the last row read
+     */
+    private synchronized long fetchPage(long afterId, Deque<byte[]> page) throws IOException {
+        long lastId = afterId;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id, record FROM " + schema.table + " WHERE id > ? ORDER BY id LIMIT " + PAGE_ROWS)) {
+            statement.setLong(1, afterId);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    lastId = rows.getLong(1);
+                    page.add(rows.getBytes(2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Store query failed: " + e.getMessage(), e);
+        }
+        return lastId;
+    }
+
+    private T bind(byte[] row) {
+        return bind(row, Collections.emptySet());
+    }
+
+    private T bind(byte[] row, Set<String> skipFields) {
+        try {
+            return codec.decode(row, schema.type, skipFields, this::readBlob);
+        } catch (IOException e) {
+            throw new StoreException(e);
+        }
+    }
+
+    /**
+     * Store a blob unless already there (same text, same hash); compressed only when new
+     */
+    private synchronized void writeBlob(String hash, byte[] text) throws IOException {
+        try {
+            blobLookup.setString(1, hash);
+            try (ResultSet rows = blobLookup.executeQuery()) {
+                if (rows.next()) {
+                    return;
+                }
+            }
+            blobInsert.setString(1, hash);
+            blobInsert.setBytes(2, RecordCodec.deflate(text));
+            blobInsert.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Could not store a blob: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized byte[] readBlob(String hash) throws IOException {
+        try {
+            blobRead.setString(1, hash);
+            try (ResultSet rows = blobRead.executeQuery()) {
+                if (!rows.next()) {
+                    throw new IOException("Missing blob " + hash + " in the store of " + historyFilePath);
+                }
+                return RecordCodec.inflate(rows.getBytes(1));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read a blob: " + e.getMessage(), e);
+        }
+    }
+
+    private void inTransaction(Transaction transaction) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try {
+                transaction.run();
+                connection.commit();
+            } catch (SQLException | IOException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Store transaction failed on " + historyFilePath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fill the store (empty, or emptied first) from the history JSON, streamed: plain inserts, sent
+     * every IMPORT_BATCH records or IMPORT_BATCH_BYTES bytes of rows, so the history never has to
+     * fit in memory, and committed once at the end (H2 keeps the uncommitted rows in its file):
+     * a failed import leaves the store as it was
+     *
+     * @param replace delete the current content first, in the same transaction
+     * @return number of records imported
+     */
+    private synchronized int importHistory(boolean replace) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        int[] records = {0};
+        int[] pending = {0};
+        long[] pendingBytes = {0};
+        importing = true;
+        try {
+            connection.setAutoCommit(false);
+            try (Statement delete = connection.createStatement();
+                 PreparedStatement insert = connection.prepareStatement("INSERT INTO " + schema.table
+                    + " (record_key, seq, portal, company, sent_date, source_folder, record) VALUES (?, ?, ?, ?, ?, ?, ?)");
+                 PreparedStatement insertRef = prepareRefMerge()) {
+                if (replace) {
+                    delete.executeUpdate("DELETE FROM " + schema.table);
+                    delete.executeUpdate("DELETE FROM " + schema.table + "_blob_refs");
+                    delete.executeUpdate("DELETE FROM " + schema.table + "_blobs");
+                }
+                HistoryJsonFile.forEach(historyFilePath, schema.type, mapper, record -> {
+                    try {
+                        String key = schema.keyOf(record);
+                        Set<String> hashes = new HashSet<>();
+                        pendingBytes[0] += bind(insert, record, key, counts.merge(key, 1, Integer::sum) - 1, hashes);
+                        insert.addBatch();
+                        addRefs(insertRef, key, hashes);
+                        records[0]++;
+                        if (++pending[0] >= IMPORT_BATCH || pendingBytes[0] >= IMPORT_BATCH_BYTES) {
+                            insert.executeBatch();
+                            insertRef.executeBatch();
+                            pending[0] = 0;
+                            pendingBytes[0] = 0;
+                        }
+                    } catch (SQLException e) {
+                        throw new StoreException(new IOException(e.getMessage(), e));
+                    } catch (IOException e) {
+                        throw new StoreException(e);
+                    }
+                });
+                insert.executeBatch();
+                insertRef.executeBatch();
+                writeJsonStamp();
+                connection.commit();
+                importing = false;
+            } catch (StoreException e) {
+                connection.rollback();
+                throw e.getCause();
+            } catch (SQLException | IOException e) {  // unreadable JSON too: nothing committed
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not import " + historyFilePath + " into its store: " + e.getMessage(), e);
+        }
+        return records[0];
+    }
+
+    /**
+     * Merge the rows of the records; for each message key, its rows beyond the given records are
+     * removed, and the blobs only its former rows referenced are deleted
+     */
+    private void writeRows(List<T> records) throws SQLException, IOException {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        Map<String, Set<String>> refs = new HashMap<>();  // blob hashes of each message key
+        try (PreparedStatement merge = connection.prepareStatement("MERGE INTO " + schema.table
+                + " (record_key, seq, portal, company, sent_date, source_folder, record)"
+                + " KEY (record_key, seq) VALUES (?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement trim = connection.prepareStatement("DELETE FROM " + schema.table
+                     + " WHERE record_key = ? AND seq >= ?")) {
+            for (T record : records) {
+                String key = schema.keyOf(record);
+                bind(merge, record, key, counts.merge(key, 1, Integer::sum) - 1,
+                        refs.computeIfAbsent(key, k -> new HashSet<>()));
+                merge.addBatch();
+            }
+            merge.executeBatch();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                trim.setString(1, entry.getKey());
+                trim.setInt(2, entry.getValue());
+                trim.addBatch();
+            }
+            trim.executeBatch();
+        }
+        updateRefs(refs);
+    }
+
+    /**
+     * Replace the blob references of the written message keys, then delete the blobs they
+     * referenced that no row references anymore
+     */
+    private void updateRefs(Map<String, Set<String>> refs) throws SQLException {
+        Set<String> released = new HashSet<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT hash FROM " + schema.table
+                + "_blob_refs WHERE record_key = ?");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM " + schema.table
+                     + "_blob_refs WHERE record_key = ?");
+             PreparedStatement insert = prepareRefMerge();
+             PreparedStatement deleteBlob = connection.prepareStatement("DELETE FROM " + schema.table
+                     + "_blobs WHERE hash = ? AND NOT EXISTS (SELECT 1 FROM " + schema.table
+                     + "_blob_refs WHERE hash = ?)")) {
+            for (Map.Entry<String, Set<String>> entry : refs.entrySet()) {
+                select.setString(1, entry.getKey());
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        released.add(rows.getString(1));
+                    }
+                }
+                delete.setString(1, entry.getKey());
+                delete.addBatch();
+                addRefs(insert, entry.getKey(), entry.getValue());
+            }
+            delete.executeBatch();
+            insert.executeBatch();
+            for (String hash : released) {
+                deleteBlob.setString(1, hash);
+                deleteBlob.setString(2, hash);
+                deleteBlob.addBatch();
+            }
+            deleteBlob.executeBatch();
+        }
+    }
+
+    private PreparedStatement prepareRefMerge() throws SQLException {
+        return connection.prepareStatement("MERGE INTO " + schema.table + "_blob_refs (record_key, hash)"
+                + " KEY (record_key, hash) VALUES (?, ?)");
+    }
+
+    private static void addRefs(PreparedStatement insert, String key, Set<String> hashes) throws SQLException {
+        for (String hash : hashes) {
+            insert.setString(1, key);
+            insert.setString(2, hash);
+            insert.addBatch();
+        }
+    }
+
+    /**
+     * @param blobHashes receives the hashes of the blobs of the record
+     * @return size of the row (blobs excluded)
+     */
+    private int bind(PreparedStatement statement, T record, String key, int seq, Set<String> blobHashes)
+            throws SQLException, IOException {
+        statement.setString(1, key);
+        statement.setInt(2, seq);
+        statement.setString(3, normalize(schema.portal.apply(record)));
+        statement.setString(4, normalize(schema.company.apply(record)));
+        statement.setObject(5, schema.sentDate.apply(record), Types.BIGINT);
+        statement.setString(6, schema.sourceFolder.apply(record));
+        byte[] row = codec.encode(record, (hash, text) -> {
+            writeBlob(hash, text);
+            blobHashes.add(hash);
+        });
+        statement.setBytes(7, row);
+        return row.length;
+    }
+
+    /**
+     * Lowercased, trimmed value of the portal / company columns, so lookups ignore case
+     */
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Mapping of a record type to its table: message key, indexed columns and fields kept as blobs
+     */
+    public static final class Schema<T> {
+        private final String table;
+        private final Class<T> type;
+        private final Function<T, String> key;
+        private final Function<T, String> portal;
+        private final Function<T, String> company;
+        private final Function<T, Long> sentDate;
+        private final Function<T, String> sourceFolder;
+        private final Set<String> blobFields;
+
+        public Schema(String table, Class<T> type, Function<T, String> key, Function<T, String> portal,
+                      Function<T, String> company, Function<T, Long> sentDate, Function<T, String> sourceFolder,
+                      String... blobFields) {
+            this.table = table;
+            this.type = type;
+            this.key = key;
+            this.portal = portal;
+            this.company = company;
+            this.sentDate = sentDate;
+            this.sourceFolder = sourceFolder;
+            this.blobFields = Set.of(blobFields);
+        }
+
+        /**
+         * Message key of a record; a record without any identity field gets a key of its own
+         */
+        String keyOf(T record) {
+            String recordKey = key.apply(record);
+            return recordKey != null ? recordKey : "row:" + UUID.randomUUID();
+        }
+    }
+
+    private interface Transaction {
+        void run() throws SQLException, IOException;
+    }
+
+    /**
+     * IOException carried through the row callbacks
+     */
+    private static class StoreException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StoreException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.agty.urlextractor;
 
 import com.agty.JobOpportunity;
+import com.agty.scoring.ScoringRuleBook;
+import com.agty.scoring.SenderClassifier;
 import com.agty.utils.GlobalConfig;
 
 import java.util.ArrayList;
@@ -12,7 +14,7 @@ import java.util.regex.Pattern;
 
 /**
  * URL extractor for Cadremploi job portal emails.
- * Handles emails from offres@alertes.cadremploi.fr
+ * Handles emails from cadremploi.fr and its subdomains (offres@alertes.cadremploi.fr)
  *
  * Extracts job listings from HTML using regex patterns.
  * Cadremploi emails contain multiple job offers in HTML format.
@@ -20,6 +22,9 @@ import java.util.regex.Pattern;
  */
 public class CadreMploiURLExtractor implements URLExtractor {
 
+    // Portal id of cadremploi.fr in the sender classification (see SenderClassifier)
+    public static final String PORTAL_ID = "cadremploi";
+
     // Pattern to extract job title and URL from <a> tags
     // Format: <a href="https://r.emails3.alertes.cadremploi.fr/tr/cl/..." ... title="Job Title">
     private static final Pattern JOB_LINK_PATTERN = Pattern.compile(
@@ -41,10 +46,8 @@ public class CadreMploiURLExtractor implements URLExtractor {
 
     @Override
     public boolean canHandle(String emailFrom, String emailSubject) {
-        if (emailFrom == null) {
-            return false;
-        }
-        return emailFrom.toLowerCase().contains("offres@alertes.cadremploi.fr");
+        SenderClassifier senders = ScoringRuleBook.getDefault().current().getSenderClassifier();
+        return PORTAL_ID.equals(senders.classify(emailFrom).getPortalId());
     }
 
     @Override
@@ -18,6 +18,43 @@ public class GlobalConfig {
     public static boolean DEBUG_SYSTEM_RESOURCE_MODE =false;
     public static boolean DOCKER_CHECKS_MODE =false;//true if docker is needed so the ap should ensure it's well installed etc
 
+    //================================================================================================
+    // Mail pipeline Configs
+    public static boolean IMAP_INCREMENTAL_SYNC =true; //only fetch UIDs above the per-folder checkpoint; false = full date-window rescan
+    public static int IMAP_FETCH_CHUNK_SIZE =100; //messages per bulk FETCH (envelope, flags, UID, bodystructure)
+    public static String IMAP_SEARCH_BACKEND ="GMAIL_RAW"; //GMAIL_RAW = server-side X-GM-RAW search when available, JAVAMAIL = SearchTerm tree (first 5 keywords)
+    public static int IMAP_MAX_CONNECTIONS_PER_ACCOUNT =4; //pooled IMAP Stores used in parallel per account (Gmail allows max 15)
+    public static int IMAP_FOLDER_RANGE_SIZE =50; //large folders are split in UID ranges of this size, processed in parallel
+    public static boolean MAIL_CACHE_ENABLED =true; //keep gzipped raw RFC822 of downloaded messages, reruns read bodies from disk
+    public static String MAIL_CACHE_DIR ="data/mail_cache";
+    public static int MAIL_CACHE_MAX_MB =512; //least recently used messages are evicted above this size
+    public static String SCORING_RULES_FILE ="src/main/resources/scoring_rules.json"; //relevance rules; falls back to the classpath copy if missing
+    public static boolean SCORING_RULES_HOT_RELOAD =true; //recompile and swap the rules when the file changes during a run
+    public static boolean SCORING_PARALLEL =true; //decode and score fetched messages on virtual threads; false = one after another
+    public static int SCORING_MAX_IN_FLIGHT =16; //messages being scored or waiting to be collected in order
+    public static String SCORING_MODE ="RULES"; //RULES = scoring rules only, CLASSIFIER = trained job offer classifier only, COMBINED = rules + classifier rescues what the rules reject
+    public static String CLASSIFIER_MODEL_FILE ="data/job_classifier.bin"; //written by JobClassifierTrainer
+    public static double CLASSIFIER_MIN_PROBABILITY =0.5; //classifier probability above which an email counts as a job offer
+    public static boolean EMBEDDING_CLASSIFIER_ENABLED =false; //in-process all-MiniLM-L6-v2 nearest-centroid pre-classification (loads a 90MB ONNX model)
+    public static String EMBEDDING_CENTROIDS_FILE ="data/embedding_centroids.json"; //written by EmbeddingCentroidTrainer
+    public static String EMBEDDING_CACHE_DIR ="data/embedding_cache"; //memory-mapped vectors keyed by Message-ID
+    public static int EMBEDDING_MAX_CHARS =1500; //subject + this many body chars are embedded (~256 tokens)
+    public static double EMBEDDING_MIN_JOB_SIMILARITY =0.35; //rules-rejected emails nearest to the job centroid above this are kept
+    public static double EMBEDDING_SKIP_MARGIN =0.05; //emails this much nearer to a non-job centroid skip the LLM extraction
+    public static boolean NEAR_DUPLICATE_DETECTION =true; //SimHash near-duplicate offers: same email skips the LLM, copies from several portals share an offer_cluster_id
+    public static int NEAR_DUPLICATE_MAX_DISTANCE =4; //max differing bits (of 64) between the signatures of two copies of an offer
+    public static int NEAR_DUPLICATE_EMAIL_MAX_DISTANCE =2; //same for whole emails before extraction (kept tight: alert digests share their template)
+    public static boolean PROCESSED_KEY_FILTER =true; //keep processed message keys next to the history file (.keys.bloom + .keys.log + .keys.idx) instead of rebuilding them from it at every start; delete them to rebuild
+    public static boolean STORE_FSYNC =true; //fsync every history store commit; false = leave it to the OS
+    public static boolean STORE_EXPORT_JSON =false; //also rewrite the history JSON array from its H2 store (<history>.store.mv.db) at the end of each run; otherwise on demand: HistoryConverter to-json
+    public static boolean JSON_BLACKBIRD =true; //Blackbird module on the shared Jackson mappers (JsonMappers): generated accessors instead of reflection
+    public static int LLM_TIMEOUT_SECONDS =60; //OpenAI request timeout (one pooled chat client per model / temperature / max tokens / timeout)
+    public static int LLM_MAX_CONCURRENCY =4; //LLM calls in flight while extracting offers and drafting replies; 1 = one after another
+    public static int LLM_REQUESTS_PER_MINUTE =500; //OpenAI account limits (tier 1 gpt-4o-mini), lowered at runtime to those reported by 429 answers
+    public static int LLM_TOKENS_PER_MINUTE =200000; //prompt + max output tokens are reserved before each call, settled with the actual usage
+    public static int LLM_MAX_RETRIES =5; //retries of a call refused with 429 or 5xx or failed on the network (timeout, reset), after the delay asked by OpenAI or an exponential backoff with jitter
+    public static int OLLAMA_PARALLEL_SLOTS =1; //concurrent Ollama generations, match OLLAMA_NUM_PARALLEL of the server
+
     //================================================================================================
     // Functional Configs
     public static String QUESTION_TUPLE_Original3  ="question(Qid,Text,Aid)";//structured
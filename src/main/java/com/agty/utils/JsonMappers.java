@@ -0,0 +1,87 @@
+package com.agty.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared Jackson mappers, readers and writers of the pipeline.
+ *
+ * Built once: the serializers and deserializers Jackson derives for a type (introspection of the
+ * getters and setters) are cached in the mapper and reused by every component, instead of being
+ * rebuilt by each new ObjectMapper(). With JSON_BLACKBIRD the Blackbird module replaces the
+ * reflective getter/setter calls with generated lambdas.
+ *
+ * The mappers are configured here only and must not be reconfigured by the callers; readers and
+ * writers are immutable and thread-safe, those of a type are built on first use and cached.
+ */
+public final class JsonMappers {
+
+    private static final ObjectMapper MAPPER = build().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final ObjectMapper LENIENT = MAPPER.copy()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final ObjectWriter PRETTY_WRITER = MAPPER.writer();
+    private static final ObjectWriter COMPACT_WRITER = MAPPER.writer().without(SerializationFeature.INDENT_OUTPUT);
+
+    private static final Map<Type, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private JsonMappers() {
+    }
+
+    private static ObjectMapper build() {
+        ObjectMapper mapper = new ObjectMapper();
+        if (GlobalConfig.JSON_BLACKBIRD) {
+            mapper.registerModule(new BlackbirdModule());
+        }
+        return mapper;
+    }
+
+    /**
+     * Mapper of the history files (pretty-printed output), for the components taking a mapper
+     * (RecordStore, HistoryJsonFile)
+     */
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    /**
+     * Same mapper, ignoring unknown properties (files written by other tools or versions)
+     */
+    public static ObjectMapper lenient() {
+        return LENIENT;
+    }
+
+    public static <T> ObjectReader reader(Class<T> type) {
+        return READERS.computeIfAbsent(type, t -> MAPPER.readerFor(type));
+    }
+
+    public static ObjectReader reader(TypeReference<?> type) {
+        return READERS.computeIfAbsent(type.getType(), t -> {
+            JavaType javaType = MAPPER.getTypeFactory().constructType(t);
+            return MAPPER.readerFor(javaType);
+        });
+    }
+
+    /**
+     * Pretty-printed writer (history and state files)
+     */
+    public static ObjectWriter writer() {
+        return PRETTY_WRITER;
+    }
+
+    /**
+     * Single-line writer (indexes)
+     */
+    public static ObjectWriter compactWriter() {
+        return COMPACT_WRITER;
+    }
+}
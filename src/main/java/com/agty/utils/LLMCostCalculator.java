@@ -113,7 +113,7 @@ public class LLMCostCalculator {
     }
 
     /**
-     * Aggregate multiple usage infos and calculate total cost
+     * Aggregate multiple usage infos and calculate total cost (thread-safe: concurrent extractions add to it)
      */
     public static class CostSummary {
         private int totalInputTokens = 0;
@@ -123,7 +123,7 @@ public class LLMCostCalculator {
         private int apiCalls = 0;
         private Map<String, Integer> modelUsage = new HashMap<>();
 
-        public void addUsage(LLMUsageInfo usage) {
+        public synchronized void addUsage(LLMUsageInfo usage) {
             if (usage == null) return;
 
             totalInputTokens += usage.getInputTokens();
@@ -143,7 +143,7 @@ public class LLMCostCalculator {
         public int getApiCalls() { return apiCalls; }
         public Map<String, Integer> getModelUsage() { return modelUsage; }
 
-        public void printSummary() {
+        public synchronized void printSummary() {
             System.out.println();
             System.out.println("╔════════════════════════════════════════════════════════════════════╗");
             System.out.println("║                    LLM COST SUMMARY                                ║");
@@ -0,0 +1,168 @@
+package com.agty.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Token-bucket limiter of the LLM calls of a provider account: one bucket of requests per minute,
+ * one of tokens per minute (prompt + max output tokens reserved before the call, settled with the
+ * actual usage after it). Callers take their share and sleep until the buckets cover it, so the
+ * concurrent extractions are paced by the quota instead of a fixed delay.
+ *
+ * The limits start from GlobalConfig (LLM_REQUESTS_PER_MINUTE, LLM_TOKENS_PER_MINUTE) and are
+ * lowered to the ones the provider reports in its 429 answers ("Limit 200000, Used 199694 ...
+ * Please try again in 218ms"), when all callers also pause for the delay it asks.
+ * The sleeps happen outside the lock, so the limiter can be used from virtual threads.
+ */
+public class LlmRateLimiter {
+
+    private static final Pattern LIMIT = Pattern.compile(
+            "(requests|tokens) per min[^:]*: Limit (\\d+), Used (\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RETRY_AFTER = Pattern.compile("try again in ((?:\\d+(?:\\.\\d+)?(?:ms|h|m|s))+)");
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private static LlmRateLimiter openAi;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private double requestsPerMinute;
+    private double tokensPerMinute;
+    private double requests;  // available, negative = already promised to waiting callers
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos = 0;
+
+    public LlmRateLimiter(double requestsPerMinute, double tokensPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.requests = requestsPerMinute;
+        this.tokens = tokensPerMinute;
+    }
+
+    /**
+     * Limiter of the OpenAI account, shared by all the callers of OpenAiRESTApiCaller
+     */
+    public static synchronized LlmRateLimiter openAi() {
+        if (openAi == null) {
+            openAi = new LlmRateLimiter(GlobalConfig.LLM_REQUESTS_PER_MINUTE, GlobalConfig.LLM_TOKENS_PER_MINUTE);
+        }
+        return openAi;
+    }
+
+    /**
+     * Take one request and the given tokens, sleeping until the buckets (and any pause asked
+     * by the provider) allow them
+     */
+    public void acquire(int tokenCount) throws InterruptedException {
+        long waitNanos;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            requests -= 1;
+            tokens -= Math.min(tokenCount, tokensPerMinute);  // a request larger than the quota waits for a full bucket
+            long requestWait = requests < 0 ? (long) (-requests / requestsPerMinute * TimeUnit.MINUTES.toNanos(1)) : 0;
+            long tokenWait = tokens < 0 ? (long) (-tokens / tokensPerMinute * TimeUnit.MINUTES.toNanos(1)) : 0;
+            waitNanos = Math.max(Math.max(requestWait, tokenWait), pausedUntilNanos - now);
+        } finally {
+            lock.unlock();
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Give back the difference between the tokens reserved for a call and those it used
+     */
+    public void settle(int reservedTokens, int usedTokens) {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            tokens = Math.min(tokensPerMinute, tokens + Math.min(reservedTokens, tokensPerMinute) - usedTokens);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take into account a 429 answer: limit and usage it reports, pause it asks for
+     *
+     * @return delay asked by the provider in millis, or -1 if the message gives none
+     */
+    public long onRateLimited(String errorMessage) {
+        if (errorMessage == null) {
+            return -1;
+        }
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            Matcher limit = LIMIT.matcher(errorMessage);
+            if (limit.find()) {
+                double max = Double.parseDouble(limit.group(2));
+                double remaining = max - Double.parseDouble(limit.group(3));
+                if (limit.group(1).equalsIgnoreCase("requests")) {
+                    if (max < requestsPerMinute) {
+                        System.out.println("⏱️  OpenAI requests per minute calibrated to " + (long) max);
+                        requestsPerMinute = max;
+                    }
+                    requests = Math.min(requests, remaining);
+                } else {
+                    if (max < tokensPerMinute) {
+                        System.out.println("⏱️  OpenAI tokens per minute calibrated to " + (long) max);
+                        tokensPerMinute = max;
+                    }
+                    tokens = Math.min(tokens, remaining);
+                }
+            }
+            Matcher retry = RETRY_AFTER.matcher(errorMessage);
+            if (!retry.find()) {
+                return -1;
+            }
+            long delayMillis = parseDuration(retry.group(1));
+            pausedUntilNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+            return delayMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter before retry number attempt (0-based): between half and
+     * all of 1s * 2^attempt, capped at one minute, so that the callers refused together do not
+     * come back together
+     */
+    public static long backoffMillis(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, 1000L << Math.min(attempt, 16));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    /**
+     * Millis of a duration as written by OpenAI ("218ms", "1.5s", "6m0s")
+     */
+    static long parseDuration(String duration) {
+        double millis = 0;
+        Matcher part = DURATION_PART.matcher(duration);
+        while (part.find()) {
+            double value = Double.parseDouble(part.group(1));
+            switch (part.group(2)) {
+                case "h" -> millis += value * 3_600_000;
+                case "m" -> millis += value * 60_000;
+                case "s" -> millis += value * 1000;
+                default -> millis += value;
+            }
+        }
+        return (long) Math.ceil(millis);
+    }
+
+    private void refill(long now) {
+        double minutes = (now - lastRefillNanos) / (double) TimeUnit.MINUTES.toNanos(1);
+        lastRefillNanos = now;
+        requests = Math.min(requestsPerMinute, requests + minutes * requestsPerMinute);
+        tokens = Math.min(tokensPerMinute, tokens + minutes * tokensPerMinute);
+    }
+}
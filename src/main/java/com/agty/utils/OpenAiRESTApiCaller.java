@@ -13,9 +13,16 @@ import dev.langchain4j.model.output.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import static java.time.Duration.ofSeconds;
 import static com.agty.utils.GlobalConfig.*;
@@ -25,6 +32,20 @@ public class OpenAiRESTApiCaller {
 
     public static Logger logger = LoggerFactory.getLogger(OpenAiRESTApiCaller.class);
 
+    private static final Set<String> KNOWN_MODELS = Arrays.stream(OpenAiChatModelName.values())
+            .map(OpenAiChatModelName::toString)
+            .collect(Collectors.toUnmodifiableSet());
+
+    /**
+     * Chat clients built so far, one per configuration. OpenAiChatModel is thread-safe and owns its
+     * HTTP client: reusing it keeps the pooled keep-alive connections (and TLS sessions) and the
+     * tokenizer between calls, instead of opening new ones for every email.
+     */
+    private static final Map<ClientKey, OpenAiChatModel> CLIENTS = new ConcurrentHashMap<>();
+
+    private record ClientKey(String provider, String modelName, Double temperature, Integer maxTokens, Duration timeout) {
+    }
+
     /**
      * Call OpenAI API and return response with usage tracking and cost calculation
      */
@@ -57,62 +78,23 @@ public class OpenAiRESTApiCaller {
          * {@link OpenAiModerationModelName}
          * </pre>
          */
-        ArrayList<OpenAiChatModelName> values = new ArrayList<>(Arrays.asList(OpenAiChatModelName.values()));
         if (modelName == null || modelName.isEmpty()) {
             String fallbackModel=OpenAiChatModelName.GPT_4_O_MINI.toString();
 //                    String fallbackModel=OpenAiChatModelName.GPT_3_5_TURBO.toString();
             logger.debug(Aid + " requested OpenAI ModelName=" + modelName + ", setting fallback model=" + fallbackModel);
             modelName = fallbackModel;
+        } else if (KNOWN_MODELS.contains(modelName)) {
+            logger.info(Aid + " requested OpenAI ModelName=" + modelName + " found in enum " + OpenAiChatModelName.class.getName());
         } else {
-//                    OpenAiChatModelName v = OpenAiChatModelName.valueOf(ModelName.trim());
-//                    System.out.println(values.contains(v));
-//                    System.out.println("ModelName="+ModelName);
-//                    System.out.println(values);
-//                    System.out.println(values.contains(ModelName));
-            boolean found = false;
-            for (OpenAiChatModelName v : values) {
-                if (v.toString().equals(modelName)) {
-                    logger.info(Aid + " requested OpenAI ModelName=" + modelName + " found in enum=" + v);
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                logger.info(Aid + " requested OpenAI ModelName=" + modelName + " not found in enum "+ OpenAiChatModelName.class.getName()+" , setting " + OpenAiChatModelName.GPT_3_5_TURBO);
-                modelName = OpenAiChatModelName.GPT_3_5_TURBO.toString();
-            }
-        }
-        String apiKey = null;
-        if (modelName.startsWith("gpt-3.5")) {
-            apiKey = "demo";
-        } else {
-            apiKey = ApiKeys.OPENAI_API_KEY;
+            logger.info(Aid + " requested OpenAI ModelName=" + modelName + " not found in enum "+ OpenAiChatModelName.class.getName()+" , setting " + OpenAiChatModelName.GPT_3_5_TURBO);
+            modelName = OpenAiChatModelName.GPT_3_5_TURBO.toString();
         }
+        String provider = modelName.startsWith("gpt-3.5") ? "openai-demo" : "openai";
 //                if (DEV_MODE) {
 //                    completePrompt="Provide a minimal answer to teh question: "+completePrompt;
 //                }
-        OpenAiChatModel model = OpenAiChatModel.builder()
-                //.baseUrl()
-                .apiKey(apiKey) //ApiKeys.OPENAI_API_KEY // "demo" for gpt-3.5-turbo <<< still good for certain tasks, or agentic...
-                //.organizationId()    //TODO: <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
-                .modelName(modelName)
-                .temperature(temperature) //TODO allow these values change at runtime (AtomicLock ...)
-//                        .topP()
-//                        .stop())
-                .maxTokens(maxOutputTokens)   //TODO: <<<<<<<<<<<<<<<<<<<<<<<<<<< MAx toekn nella rispsota é paramtro di ottimizz costi
-//                        .presencePenalty()
-//                        .frequencyPenalty()
-//                        .logitBias() //see course ollama youtube ...
-//                        .responseFormat() //TODO: <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
-//                        .seed()
-//                        .user()    //TODO: <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
-                .timeout(ofSeconds(60))
-                .logRequests(true)
-                .logResponses(true)
-                //.tokenizer()
-//                        .maxRetries(chatModelProperties.getMaxRetries())
-//                        .proxy(ProxyProperties.convert(chatModelProperties.getProxy()))
-                .build();
+        OpenAiChatModel model = client(new ClientKey(provider, modelName, temperature, maxOutputTokens,
+                ofSeconds(LLM_TIMEOUT_SECONDS)));
         //todo use  List<AiMessges><-generate(messages...)
         // Generates a response from the model based on a sequence of messages. Typically, the sequence contains messages in the following order: System (optional) - User - AI - User - AI - User ...
         //TODO-Important: make it generci for Goal, Context, Theme,
@@ -164,7 +146,8 @@ public class OpenAiRESTApiCaller {
 //                    }
             long start = System.currentTimeMillis();
 
-            response = model.generate(cms);
+            int reservedTokens = estimUserToeknCount + estimSystemTokenCount + (maxOutputTokens != null ? maxOutputTokens : 0);
+            response = generateWithinLimits(Aid, model, cms, reservedTokens);
             //TODO HANDLE THE CASE...
             //Only gpt-4o-mini model is available for demonstration purposes. If you wish to use another model, please use your own OpenAI API key.
             if (response == null) {
@@ -238,6 +221,105 @@ public class OpenAiRESTApiCaller {
         return new LLMUsageInfo(responseAnswerSynchStr);
     }
 
+    /**
+     * Send the messages when the OpenAI rate limiter lets them through. Calls refused with 429 or
+     * 5xx, or failed on the network (timeout, connection reset), are retried up to LLM_MAX_RETRIES
+     * times, after the delay asked by OpenAI or an exponential backoff with jitter (the longer of
+     * the two); other errors are thrown unwrapped.
+     */
+    private static Response<AiMessage> generateWithinLimits(String Aid, OpenAiChatModel model, List<ChatMessage> messages, int reservedTokens) throws InterruptedException {
+        LlmRateLimiter limiter = LlmRateLimiter.openAi();
+        for (int attempt = 0; ; attempt++) {
+            limiter.acquire(reservedTokens);
+            try {
+                Response<AiMessage> response = model.generate(messages);
+                Integer used = response != null && response.tokenUsage() != null ? response.tokenUsage().totalTokenCount() : null;
+                limiter.settle(reservedTokens, used != null ? used : reservedTokens);
+                return response;
+            } catch (RuntimeException e) {
+                limiter.settle(reservedTokens, 0);
+                OpenAiHttpException httpError = httpError(e);
+                if (!isTransient(e) || attempt >= LLM_MAX_RETRIES) {
+                    throw httpError != null ? httpError : e;
+                }
+                long delay = LlmRateLimiter.backoffMillis(attempt);
+                if (httpError != null && httpError.code() == 429) {
+                    delay = Math.max(delay, limiter.onRateLimited(httpError.getMessage()));
+                }
+                String failure = httpError != null ? "answered " + httpError.code() : "call failed (" + networkError(e) + ")";
+                System.out.println("⚠️  " + Aid + " OpenAI " + failure + ", retry " + (attempt + 1) + "/" + LLM_MAX_RETRIES + " in " + delay + " ms");
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * True for the failures worth retrying: 429 and 5xx answers, and I/O errors or timeouts
+     * without an answer (the client wraps them in a RuntimeException)
+     */
+    static boolean isTransient(Throwable e) {
+        OpenAiHttpException httpError = httpError(e);
+        if (httpError != null) {
+            return httpError.code() == 429 || httpError.code() >= 500;
+        }
+        return networkError(e) != null;
+    }
+
+    /**
+     * I/O error or timeout behind an exception of the client
+     */
+    private static Throwable networkError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TimeoutException) {
+                return cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * HTTP error behind an exception of the client (langchain4j wraps it once the retries are over)
+     */
+    private static OpenAiHttpException httpError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OpenAiHttpException httpError) {
+                return httpError;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Shared chat client of a configuration, built on first use
+     */
+    private static OpenAiChatModel client(ClientKey key) {
+        return CLIENTS.computeIfAbsent(key, k -> {
+            logger.info("Building OpenAI chat client " + k);
+            return OpenAiChatModel.builder()
+                    //.baseUrl()
+                    .apiKey("openai-demo".equals(k.provider()) ? "demo" : ApiKeys.OPENAI_API_KEY) //ApiKeys.OPENAI_API_KEY // "demo" for gpt-3.5-turbo <<< still good for certain tasks, or agentic...
+                    //.organizationId()    //TODO: <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+                    .modelName(k.modelName())
+                    .temperature(k.temperature()) //TODO allow these values change at runtime (AtomicLock ...)
+    //                        .topP()
+    //                        .stop())
+                    .maxTokens(k.maxTokens())   //TODO: <<<<<<<<<<<<<<<<<<<<<<<<<<< MAx toekn nella rispsota é paramtro di ottimizz costi
+    //                        .presencePenalty()
+    //                        .frequencyPenalty()
+    //                        .logitBias() //see course ollama youtube ...
+    //                        .responseFormat() //TODO: <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+    //                        .seed()
+    //                        .user()    //TODO: <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+                    .timeout(k.timeout())
+                    .logRequests(true)
+                    .logResponses(true)
+                    //.tokenizer()
+                    .maxRetries(1) // one attempt: generateWithinLimits retries, through the rate limiter
+    //                        .proxy(ProxyProperties.convert(chatModelProperties.getProxy()))
+                    .build();
+        });
+    }
+
 }
 //some tech notes:
 //https://platform.openai.com/docs/guides/chat-completions/response-format?lang=curl
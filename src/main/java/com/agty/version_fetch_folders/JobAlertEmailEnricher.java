@@ -1,10 +1,10 @@
 package com.agty.version_fetch_folders;
 
 import com.agty.JobOfferExtraction;
+import com.agty.mail.DecodedMessage;
+import com.agty.mail.MimeMessageDecoder;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import java.io.IOException;
 import java.net.URI;
@@ -30,6 +30,16 @@ public class JobAlertEmailEnricher {
         if (extraction == null || emailContent == null) {
             return;
         }
+        enrichJobOffer(extraction, MimeMessageDecoder.decode(emailContent));
+    }
+
+    /**
+     * Enrich a job offer extraction using an already decoded email (no second HTML parse)
+     */
+    public static void enrichJobOffer(JobOfferExtraction extraction, DecodedMessage emailContent) {
+        if (extraction == null || emailContent == null) {
+            return;
+        }
 
         String sourceFolder = extraction.getSourceFolder();
         if (sourceFolder == null) {
@@ -61,7 +71,7 @@ public class JobAlertEmailEnricher {
      * Enrich Cadremploi job offers
      * Extracts clean portal link without tracking parameters
      */
-    private static void enrichCadreEmploi(JobOfferExtraction extraction, String emailContent) {
+    private static void enrichCadreEmploi(JobOfferExtraction extraction, DecodedMessage emailContent) {
         // Extract all Cadremploi links from email
         List<String> links = extractLinks(emailContent, "cadremploi\\.fr/emploi/detail_offre");
 
@@ -126,7 +136,7 @@ public class JobAlertEmailEnricher {
     /**
      * Enrich APEC job offers
      */
-    private static void enrichAPEC(JobOfferExtraction extraction, String emailContent) {
+    private static void enrichAPEC(JobOfferExtraction extraction, DecodedMessage emailContent) {
         // Extract APEC links
         List<String> links = extractLinks(emailContent, "apec\\.fr/.*offre");
 
@@ -154,7 +164,7 @@ public class JobAlertEmailEnricher {
     /**
      * Enrich LinkedIn job offers
      */
-    private static void enrichLinkedin(JobOfferExtraction extraction, String emailContent) {
+    private static void enrichLinkedin(JobOfferExtraction extraction, DecodedMessage emailContent) {
         List<String> links = extractLinks(emailContent, "linkedin\\.com/jobs/view");
 
         if (!links.isEmpty()) {
@@ -184,7 +194,7 @@ public class JobAlertEmailEnricher {
     /**
      * Enrich HelloWork job offers
      */
-    private static void enrichHelloWork(JobOfferExtraction extraction, String emailContent) {
+    private static void enrichHelloWork(JobOfferExtraction extraction, DecodedMessage emailContent) {
         List<String> links = extractLinks(emailContent, "hellowork\\.com/.*emploi");
 
         if (!links.isEmpty()) {
@@ -210,7 +220,7 @@ public class JobAlertEmailEnricher {
     /**
      * Enrich Welcome to the Jungle (WTTJ) job offers
      */
-    private static void enrichWTTJ(JobOfferExtraction extraction, String emailContent) {
+    private static void enrichWTTJ(JobOfferExtraction extraction, DecodedMessage emailContent) {
         List<String> links = extractLinks(emailContent, "welcometothejungle\\.com/.*jobs");
 
         if (!links.isEmpty()) {
@@ -236,7 +246,7 @@ public class JobAlertEmailEnricher {
     /**
      * Enrich Michael Page job offers
      */
-    private static void enrichMichaelPage(JobOfferExtraction extraction, String emailContent) {
+    private static void enrichMichaelPage(JobOfferExtraction extraction, DecodedMessage emailContent) {
         List<String> links = extractLinks(emailContent, "michaelpage\\.(fr|com)/job-detail");
 
         if (!links.isEmpty()) {
@@ -262,7 +272,7 @@ public class JobAlertEmailEnricher {
     /**
      * Enrich Tekkit job offers
      */
-    private static void enrichTekkit(JobOfferExtraction extraction, String emailContent) {
+    private static void enrichTekkit(JobOfferExtraction extraction, DecodedMessage emailContent) {
         List<String> links = extractLinks(emailContent, "tekkit\\.io/.*offre");
 
         if (!links.isEmpty()) {
@@ -286,36 +296,17 @@ public class JobAlertEmailEnricher {
     }
 
     /**
-     * Extract all links matching a pattern from content
+     * Extract all links matching a pattern from the decoded email
+     * (HTML anchors, or URLs of the plain text)
      */
-    private static List<String> extractLinks(String content, String pattern) {
+    private static List<String> extractLinks(DecodedMessage emailContent, String pattern) {
         List<String> links = new ArrayList<>();
+        Pattern linkPattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
 
-        try {
-            // Try to parse as HTML first
-            if (content.trim().startsWith("<")) {
-                Document doc = Jsoup.parse(content);
-                Elements anchorTags = doc.select("a[href]");
-
-                Pattern linkPattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
-
-                for (Element anchor : anchorTags) {
-                    String href = anchor.attr("href");
-                    if (linkPattern.matcher(href).find()) {
-                        links.add(href);
-                    }
-                }
-            } else {
-                // Plain text - use regex
-                Pattern urlPattern = Pattern.compile("https?://[^\\s]+?" + pattern + "[^\\s]*", Pattern.CASE_INSENSITIVE);
-                Matcher matcher = urlPattern.matcher(content);
-
-                while (matcher.find()) {
-                    links.add(matcher.group());
-                }
+        for (DecodedMessage.Link link : emailContent.getLinks()) {
+            if (linkPattern.matcher(link.getHref()).find()) {
+                links.add(link.getHref());
             }
-        } catch (Exception e) {
-            System.err.println("    ⚠️  Failed to extract links: " + e.getMessage());
         }
 
         return links;
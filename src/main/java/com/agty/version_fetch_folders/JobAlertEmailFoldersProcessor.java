@@ -1,24 +1,50 @@
 package com.agty.version_fetch_folders;
 
 import com.agty.JobOfferExtraction;
+import com.agty.mail.DecodedMessage;
+import com.agty.mail.ImapStorePool;
+import com.agty.mail.MessageIdentityIndex;
+import com.agty.mail.MessagePrefetcher;
+import com.agty.mail.MessageSource;
+import com.agty.mail.MimeMessageDecoder;
+import com.agty.mail.RawMessageCache;
+import com.agty.mail.UidCheckpointStore;
+import com.agty.scoring.EmbeddingClassifier;
+import com.agty.store.RecordSchemas;
+import com.agty.store.RecordStore;
 import com.agty.utils.EmailStaticLib;
+import com.agty.utils.JsonMappers;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import io.github.ollama4j.OllamaAPI;
 import io.github.ollama4j.models.response.OllamaResult;
 import io.github.ollama4j.utils.Options;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 
 import javax.mail.*;
-import javax.mail.internet.MimeMultipart;
+import javax.mail.internet.MimeMessage;
 import javax.mail.search.ComparisonTerm;
 import javax.mail.search.ReceivedDateTerm;
 import javax.mail.search.SearchTerm;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.agty.utils.GlobalConfig.IMAP_FOLDER_RANGE_SIZE;
+import static com.agty.utils.GlobalConfig.IMAP_INCREMENTAL_SYNC;
+import static com.agty.utils.GlobalConfig.IMAP_MAX_CONNECTIONS_PER_ACCOUNT;
+import static com.agty.utils.GlobalConfig.NEAR_DUPLICATE_DETECTION;
+import static com.agty.utils.GlobalConfig.OLLAMA_PARALLEL_SLOTS;
+import static com.agty.utils.GlobalConfig.PROCESSED_KEY_FILTER;
 
 /**
  * Processes job offer emails from specific Gmail folders using Ollama LLM
@@ -38,6 +64,9 @@ public class JobAlertEmailFoldersProcessor {
     // LLM Configuration: Set to false to use OpenAI API (gpt-4o-mini), true for local Ollama
     private static final boolean LOCAL_LLM = false;  // Change to true for local Ollama
 
+    // Generations sent to the Ollama server at a time by the parallel ranges (it queues the others anyway)
+    private static final Semaphore OLLAMA_SLOTS = new Semaphore(Math.max(1, OLLAMA_PARALLEL_SLOTS));
+
     // Number of days to look back for emails
     private static final int DAYS_TO_SEARCH = 2;  // Change this to search more/fewer days
 
@@ -57,8 +86,7 @@ public class JobAlertEmailFoldersProcessor {
         this.password = password;
         this.ollamaHost = ollamaHost;
         this.ollamaModel = ollamaModel;
-        this.mapper = new ObjectMapper();
-        this.mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        this.mapper = JsonMappers.mapper();
         this.ollamaAPI = new OllamaAPI(ollamaHost);
 
         // Enable verbose mode to see what's being sent to Ollama
@@ -70,6 +98,8 @@ public class JobAlertEmailFoldersProcessor {
 
     /**
      * Process all emails from specified folders in the last week
+     *
+     * @return the extractions of this run (the earlier ones stay in the output file)
      */
     public List<JobOfferExtraction> processAllFolders(String outputFilePath) throws Exception {
         System.out.println("╔════════════════════════════════════════════════════════════════════╗");
@@ -141,193 +171,498 @@ public class JobAlertEmailFoldersProcessor {
         }
         System.out.println();
 
-        List<JobOfferExtraction> allExtractions = loadExistingExtractions(outputFilePath);
-        Set<String> processedKeys = buildProcessedKeysSet(allExtractions);
+        RecordStore<JobOfferExtraction> extractionStore = openStore(outputFilePath);
+        int existingExtractions = countExtractions(extractionStore);
+        List<JobOfferExtraction> allExtractions = Collections.synchronizedList(new ArrayList<>());  // extracted by this run
+        MessageIdentityIndex processedKeys = buildProcessedKeysIndex(extractionStore, outputFilePath);
+        Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+        JobOfferDeduplicator deduplicator = NEAR_DUPLICATE_DETECTION ? buildDeduplicator(extractionStore) : null;
+        UidCheckpointStore checkpoints = IMAP_INCREMENTAL_SYNC ? UidCheckpointStore.forHistoryFile(outputFilePath) : null;
 
         System.out.println("📁 Folders to process: " + Arrays.toString(JOB_FOLDERS));
-        System.out.println("✓ Loaded " + allExtractions.size() + " existing extractions");
+        System.out.println("✓ Loaded " + existingExtractions + " existing extractions");
+        System.out.println("🔀 Parallel IMAP connections: " + IMAP_MAX_CONNECTIONS_PER_ACCOUNT +
+            " (ranges of " + IMAP_FOLDER_RANGE_SIZE + " messages)");
         System.out.println();
 
-        // Connect to Gmail
-        Store store = connectToGmail();
+        // Connect to Gmail: bounded pool of Stores shared by all workers
+        ImapStorePool pool = createStorePool();
+        ExecutorService executor = Executors.newFixedThreadPool(IMAP_MAX_CONNECTIONS_PER_ACCOUNT);
 
         try {
+            // 1. Search all folders in parallel and split their UIDs in ranges
+            List<Future<FolderPlan>> planFutures = new ArrayList<>();
             for (String folderName : JOB_FOLDERS) {
-                System.out.println("═".repeat(70));
-                System.out.println("📂 Processing folder: " + folderName);
-                System.out.println("═".repeat(70));
-                System.out.println();
+                planFutures.add(executor.submit(() -> planFolder(pool, folderName, checkpoints)));
+            }
+            List<FolderPlan> plans = new ArrayList<>();
+            for (Future<FolderPlan> future : planFutures) {
+                FolderPlan plan = await(future);
+                if (plan != null) {
+                    plans.add(plan);
+                }
+            }
 
-                List<JobOfferExtraction> folderExtractions = processSingleFolder(
-                    store, folderName, processedKeys, allExtractions, outputFilePath
-                );
+            // 2. Process every range of every folder in parallel
+            Map<FolderPlan, List<Future<RangeResult>>> rangeFutures = new LinkedHashMap<>();
+            for (FolderPlan plan : plans) {
+                List<Future<RangeResult>> futures = new ArrayList<>();
+                for (long[] range : plan.ranges) {
+                    futures.add(executor.submit(() -> processRange(
+                        pool, plan, range, processedKeys, inFlightKeys, deduplicator, allExtractions, extractionStore)));
+                }
+                rangeFutures.put(plan, futures);
+            }
 
-                System.out.println("✓ Processed " + folderExtractions.size() + " new emails from " + folderName);
-                System.out.println();
+            // 3. Merge results per folder and move the checkpoints
+            for (Map.Entry<FolderPlan, List<Future<RangeResult>>> entry : rangeFutures.entrySet()) {
+                FolderPlan plan = entry.getKey();
+                RangeResult folderResult = new RangeResult();
+                List<Future<RangeResult>> futures = entry.getValue();
+                for (int i = 0; i < futures.size(); i++) {
+                    RangeResult rangeResult = await(futures.get(i));
+                    if (rangeResult != null) {
+                        folderResult.merge(rangeResult);
+                    } else {
+                        // Whole range lost (connection error): retry it next run
+                        folderResult.failed++;
+                        folderResult.markFailed(plan.ranges.get(i)[0]);
+                    }
+                }
+                printFolderSummary(plan, folderResult);
+                updateCheckpoint(checkpoints, plan, folderResult);
             }
         } finally {
-            store.close();
+            executor.shutdownNow();
+            pool.close();
         }
 
         // Final save
-        saveExtractions(allExtractions, outputFilePath, true);
+        closeStore(extractionStore, existingExtractions + allExtractions.size(), outputFilePath);
+        processedKeys.close();
 
         System.out.println();
         System.out.println("╔════════════════════════════════════════════════════════════════════╗");
         System.out.println("║                    PROCESSING COMPLETE                             ║");
         System.out.println("╚════════════════════════════════════════════════════════════════════╝");
         System.out.println();
-        System.out.println("📊 Total extractions: " + allExtractions.size());
+        System.out.println("📊 Total extractions: " + (existingExtractions + allExtractions.size()));
         System.out.println("💾 Saved to: " + outputFilePath);
+        if (RawMessageCache.getDefault() != null) {
+            RawMessageCache.getDefault().flush();
+            System.out.println("🗄️  Mail cache: " + RawMessageCache.getDefault().getStats());
+        }
 
         return allExtractions;
     }
 
     /**
-     * Process emails from a single folder
+     * Extract job offers from a local source (EML directory, mbox) instead of the Gmail folders.
+     * The source name plays the role of the folder name (e.g. a directory named JobOffers_CadreEmploi
+     * gets the Cadremploi enrichment). Used to replay archived alerts and measure throughput.
+     *
+     * @return the extractions of this run (the earlier ones stay in the output file)
      */
-    private List<JobOfferExtraction> processSingleFolder(Store store, String folderName,
-                                                         Set<String> processedKeys,
-                                                         List<JobOfferExtraction> allExtractions,
-                                                         String outputFilePath) throws Exception {
-        List<JobOfferExtraction> folderExtractions = new ArrayList<>();
+    public List<JobOfferExtraction> processMessageSource(MessageSource source, String outputFilePath) {
+        RecordStore<JobOfferExtraction> extractionStore = openStore(outputFilePath);
+        int existingExtractions = countExtractions(extractionStore);
+        List<JobOfferExtraction> allExtractions = Collections.synchronizedList(new ArrayList<>());  // extracted by this run
+        MessageIdentityIndex processedKeys = buildProcessedKeysIndex(extractionStore, outputFilePath);
+        Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+        JobOfferDeduplicator deduplicator = NEAR_DUPLICATE_DETECTION ? buildDeduplicator(extractionStore) : null;
+
+        System.out.println("📼 Replaying messages from " + source.getName() + "...");
+        FolderPlan plan = new FolderPlan(source.getName());
+        RangeResult result = new RangeResult();
+        long start = System.nanoTime();
+
+        Iterator<Message> messages = source.iterator();
+        while (messages.hasNext()) {
+            Message message;
+            try {
+                message = messages.next();
+            } catch (MessageSource.MessageSourceException e) {
+                result.failed++;
+                System.err.println("  ✗ " + e.getMessage());
+                continue;
+            }
+            result.processed++;
+            processMessage(message, -1, plan, result, processedKeys, inFlightKeys, deduplicator, allExtractions, extractionStore);
+            System.out.println();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        printFolderSummary(plan, result);
+        System.out.println(String.format("⏱️  %.2f s, %.1f messages/s", seconds, seconds > 0 ? result.processed / seconds : 0));
+        closeStore(extractionStore, existingExtractions + allExtractions.size(), outputFilePath);
+        processedKeys.close();
+        return allExtractions;
+    }
 
+    /**
+     * Open a folder on a pooled connection, search it and split the matching UIDs in ranges
+     * of IMAP_FOLDER_RANGE_SIZE messages.
+     * When checkpoints is not null only messages above the folder's UID checkpoint are searched
+     *
+     * @return the folder plan, or null if the folder does not exist or cannot be read
+     */
+    private FolderPlan planFolder(ImapStorePool pool, String folderName, UidCheckpointStore checkpoints) throws MessagingException {
+        Store store = pool.borrow();
         try {
             // Try to open the folder
             Folder folder = store.getFolder(folderName);
             if (!folder.exists()) {
                 System.err.println("⚠️  Folder '" + folderName + "' does not exist. Skipping...");
-                return folderExtractions;
+                return null;
             }
 
             folder.open(Folder.READ_ONLY);
-            System.out.println("✓ Opened folder: " + folderName + " (" + folder.getMessageCount() + " total messages)");
+            try {
+                System.out.println("📂 [" + folderName + "] opened (" + folder.getMessageCount() + " total messages)");
+
+                // Search for emails in the configured time range
+                Calendar cal = Calendar.getInstance();
+                cal.add(Calendar.DAY_OF_MONTH, -DAYS_TO_SEARCH);
+                SearchTerm dateTerm = new ReceivedDateTerm(ComparisonTerm.GT, cal.getTime());
+
+                FolderPlan plan = new FolderPlan(folderName);
+                UIDFolder uidFolder = (UIDFolder) folder;
+                if (checkpoints != null) {
+                    plan.uidValidity = uidFolder.getUIDValidity();
+                    plan.uidNext = uidFolder.getUIDNext();
+                    plan.lastUid = checkpoints.getLastUid(folderName, plan.uidValidity);
+                }
 
-            // Search for emails in the configured time range
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.DAY_OF_MONTH, -DAYS_TO_SEARCH);
-            SearchTerm dateTerm = new ReceivedDateTerm(ComparisonTerm.GT, cal.getTime());
+                Message[] messages;
+                if (plan.lastUid > 0) {
+                    Message[] newMessages = UidCheckpointStore.messagesAfter(folder, plan.lastUid);
+                    messages = newMessages.length > 0 ? folder.search(dateTerm, newMessages) : newMessages;
+                    System.out.println("📬 [" + folderName + "] found " + messages.length + " new messages since UID " + plan.lastUid);
+                } else {
+                    messages = folder.search(dateTerm);
+                    System.out.println("📬 [" + folderName + "] found " + messages.length + " messages from last " + DAYS_TO_SEARCH + " days");
+                }
 
-            Message[] messages = folder.search(dateTerm);
-            System.out.println("📬 Found " + messages.length + " messages from last " + DAYS_TO_SEARCH + " days");
-            System.out.println();
+                long[] uids = MessagePrefetcher.fetchUids(folder, messages);
+                Arrays.sort(uids);
+                for (int from = 0; from < uids.length; from += IMAP_FOLDER_RANGE_SIZE) {
+                    plan.ranges.add(Arrays.copyOfRange(uids, from, Math.min(uids.length, from + IMAP_FOLDER_RANGE_SIZE)));
+                }
+                return plan;
+            } finally {
+                closeQuietly(folder);
+            }
 
-            int processed = 0;
-            int skipped = 0;
-            int extracted = 0;
-            int failed = 0;
+        } catch (MessagingException e) {
+            System.err.println("❌ Error accessing folder '" + folderName + "': " + e.getMessage());
+            return null;
+        } finally {
+            pool.release(store);
+        }
+    }
 
-            for (Message message : messages) {
-                processed++;
+    /**
+     * Process one UID range of a folder on its own pooled connection
+     */
+    private RangeResult processRange(ImapStorePool pool, FolderPlan plan, long[] uids,
+                                     MessageIdentityIndex processedKeys, Set<String> inFlightKeys,
+                                     JobOfferDeduplicator deduplicator,
+                                     List<JobOfferExtraction> allExtractions,
+                                     RecordStore<JobOfferExtraction> extractionStore) throws Exception {
+        RangeResult result = new RangeResult();
+        Store store = pool.borrow();
+        try {
+            Folder folder = store.getFolder(plan.folderName);
+            folder.open(Folder.READ_ONLY);
+            try {
+                UIDFolder uidFolder = (UIDFolder) folder;
 
-                try {
-                    String from = getFrom(message);
-                    String subject = message.getSubject();
-                    Date sentDate = message.getSentDate();
-
-                    // Create unique key
-                    String key = subject + "|" + from + "|" + (sentDate != null ? sentDate.getTime() : 0);
-
-                    System.out.println("[" + processed + "/" + messages.length + "] " +
-                        truncate(subject, 60));
-                    System.out.println("  From: " + truncate(from, 55));
-
-                    // Check if already processed
-                    if (processedKeys.contains(key)) {
-                        skipped++;
-                        System.out.println("  ⊘ Already processed - skipping");
-                        System.out.println();
-                        continue;
+                List<Message> found = new ArrayList<>(uids.length);
+                for (Message message : uidFolder.getMessagesByUID(uids)) {
+                    if (message != null) {  // null = expunged since the search
+                        found.add(message);
                     }
+                }
+                Message[] messages = found.toArray(new Message[0]);
 
-                    // Extract content - get both raw HTML and clean text
-                    String rawHtmlContent = getRawEmailContent(message);
-                    String content = getEmailContent(message);
+                // One bulk FETCH per chunk instead of one round-trip per getter and message
+                MessagePrefetcher.prefetch(folder, messages);
 
-                    // Debug: Check content length
-                    System.out.println("  📧 Raw HTML content length: " + rawHtmlContent.length() + " chars");
-                    System.out.println("  📧 Clean text content length: " + content.length() + " chars");
-                    if (content.length() < 50) {
-                        System.out.println("  ⚠️  Warning: Email content is very short or empty");
-                        System.out.println("  Content preview: " + content);
-                    } else {
-                        System.out.println("  Content preview (first 200 chars): " +
-                            content.substring(0, Math.min(200, content.length())));
-                    }
+                for (Message message : messages) {
+                    long uid = uidFolder.getUID(message);
+                    result.processed++;
+                    // no fixed delay: OpenAI calls are paced by the rate limiter of OpenAiRESTApiCaller, Ollama ones by OLLAMA_SLOTS
+                    processMessage(message, uid, plan, result, processedKeys, inFlightKeys, deduplicator, allExtractions, extractionStore);
+                }
+            } finally {
+                closeQuietly(folder);
+            }
+        } finally {
+            pool.release(store);
+        }
+        return result;
+    }
 
-                    // Extract using Ollama LLM
-                    System.out.println("  🤖 Extracting with Ollama LLM...");
-                    JobOfferExtraction extraction = extractWithOllama(
-                        from, subject, sentDate, content, folderName
-                    );
-
-                    if (extraction != null) {
-                        // Enrich with source-specific details (extract portal links, etc.)
-                        // Use raw HTML content to extract links
-                        System.out.println("  🔍 Enriching with source-specific details...");
-                        JobAlertEmailEnricher.enrichJobOffer(extraction, rawHtmlContent);
-                        extracted++;
-                        allExtractions.add(extraction);
-                        folderExtractions.add(extraction);
-                        processedKeys.add(key);
-
-                        System.out.println("  ✓ Extracted: " + truncate(extraction.getPositionTitle(), 45));
-                        System.out.println("    Company: " + extraction.getCompany());
-                        System.out.println("    URL: " + truncate(extraction.getApplicationUrl(), 50));
-
-                        // Incremental save
-                        saveExtractions(allExtractions, outputFilePath, false);
-                        System.out.println("    💾 Saved incrementally");
-                    } else {
-                        failed++;
-                        System.out.println("  ✗ Extraction failed");
-                    }
+    /**
+     * Extract a single message and merge it into the shared results
+     */
+    private void processMessage(Message message, long uid, FolderPlan plan, RangeResult result,
+                                MessageIdentityIndex processedKeys, Set<String> inFlightKeys,
+                                JobOfferDeduplicator deduplicator,
+                                List<JobOfferExtraction> allExtractions, RecordStore<JobOfferExtraction> extractionStore) {
+        MessageLog log = new MessageLog();
+        String key = null;
+        try {
+            String from = getFrom(message);
+            String subject = message.getSubject();
+            Date sentDate = message.getSentDate();
+            String messageId = message instanceof MimeMessage ? ((MimeMessage) message).getMessageID() : null;
+
+            // Message identity: Message-ID, or subject + from + sent date
+            MessageIdentityIndex.Identity identity = MessageIdentityIndex.identity(
+                messageId, subject, from, sentDate != null ? sentDate.getTime() : null);
+            key = identity.getPrimaryKey();
+
+            log.out("[" + plan.folderName + " UID " + uid + "] " + truncate(subject, 60));
+            log.out("  From: " + truncate(from, 55));
+
+            // Check if already processed, or being processed by another worker
+            if (processedKeys.contains(identity) || (key != null && !inFlightKeys.add(key))) {
+                result.skipped++;
+                key = null;
+                log.out("  ⊘ Already processed - skipping");
+                return;
+            }
 
-                } catch (Exception e) {
-                    failed++;
-                    System.err.println("  ✗ Error: " + e.getClass().getSimpleName());
-                    System.err.println("  Message: " + (e.getMessage() != null ? e.getMessage() : "(no message)"));
-                    e.printStackTrace();
+            // Extract content - raw HTML, clean text and links in one pass
+            // (body read from the local raw-message cache when it was already downloaded)
+            DecodedMessage decoded = MimeMessageDecoder.decode(RawMessageCache.cached(message, plan.folderName));
+            String content = decoded.getCleanText();
+
+            // Debug: Check content length
+            log.out("  📧 Raw HTML content length: " + decoded.getRawContent().length() + " chars");
+            log.out("  📧 Clean text content length: " + content.length() + " chars");
+            if (content.length() < 50) {
+                log.out("  ⚠️  Warning: Email content is very short or empty");
+                log.out("  Content preview: " + content);
+            } else {
+                log.out("  Content preview (first 200 chars): " +
+                    content.substring(0, Math.min(200, content.length())));
+            }
+
+            // Embedding pre-classification (when enabled): newsletters / promos never reach the LLM
+            EmbeddingClassifier embeddings = EmbeddingClassifier.getDefault();
+            if (embeddings != null) {
+                EmbeddingClassifier.Prediction prediction = embeddings.classify(messageId, subject, content);
+                if (prediction.isClearlyNotJob()) {
+                    result.skipped++;
+                    log.out("  ⊘ Not a job offer according to embeddings: " + prediction + " - skipping LLM");
+                    return;
                 }
+            }
 
-                System.out.println();
+            // Near-identical email already extracted (re-sent alert, same alert in two folders)
+            String originalSubject = deduplicator != null ? deduplicator.findDuplicateEmail(subject, content) : null;
+            if (originalSubject != null) {
+                result.skipped++;
+                log.out("  ⊘ Near-duplicate of \"" + truncate(originalSubject, 40) + "\" - skipping LLM");
+                return;
+            }
+
+            // Extract using Ollama LLM
+            log.out("  🤖 Extracting with Ollama LLM...");
+            JobOfferExtraction extraction = extractWithOllama(
+                from, subject, sentDate, content, plan.folderName, log
+            );
+
+            if (extraction != null) {
+                // Enrich with source-specific details (extract portal links, etc.)
+                // Use the links decoded from the raw HTML content
+                log.out("  🔍 Enriching with source-specific details...");
+                JobAlertEmailEnricher.enrichJobOffer(extraction, decoded);
+                extraction.setMessageId(messageId);
+                boolean copy = deduplicator != null && deduplicator.add(extraction, subject, content);
+                result.extracted++;
+                allExtractions.add(extraction);
+
+                log.out("  ✓ Extracted: " + truncate(extraction.getPositionTitle(), 45));
+                log.out("    Company: " + extraction.getCompany());
+                log.out("    URL: " + truncate(extraction.getApplicationUrl(), 50));
+                if (copy) {
+                    log.out("    🔗 Same offer as " + extraction.getOfferClusterId() + " (already received from another source)");
+                }
 
-                // Rate limiting
-                Thread.sleep(1000);
+                // Incremental save (one store transaction), then mark the message as processed
+                extractionStore.put(extraction);
+                processedKeys.add(identity);
+                log.out("    💾 Saved incrementally");
+            } else {
+                result.failed++;
+                result.markFailed(uid);
+                log.out("  ✗ Extraction failed");
             }
 
-            System.out.println("─".repeat(70));
-            System.out.println("Folder Summary:");
-            System.out.println("  Processed: " + processed);
-            System.out.println("  Skipped: " + skipped);
-            System.out.println("  Extracted: " + extracted);
-            System.out.println("  Failed: " + failed);
-            System.out.println();
+        } catch (Exception e) {
+            result.failed++;
+            result.markFailed(uid);
+            log.err("  ✗ Error: " + e.getClass().getSimpleName());
+            log.err("  Message: " + (e.getMessage() != null ? e.getMessage() : "(no message)"));
+            log.trace(e);
+        } finally {
+            if (key != null) {
+                inFlightKeys.remove(key);
+            }
+            log.out("");
+            log.print();
+        }
+    }
 
+    /**
+     * Close a folder without letting a close failure hide the error being thrown
+     */
+    private static void closeQuietly(Folder folder) {
+        try {
             folder.close(false);
-
         } catch (MessagingException e) {
-            System.err.println("❌ Error accessing folder '" + folderName + "': " + e.getMessage());
+            System.err.println("⚠️  Could not close folder '" + folder.getFullName() + "': " + e.getMessage());
         }
+    }
 
-        return folderExtractions;
+    private void printFolderSummary(FolderPlan plan, RangeResult result) {
+        System.out.println("─".repeat(70));
+        System.out.println("Folder Summary: " + plan.folderName + " (" + plan.ranges.size() + " range(s))");
+        System.out.println("  Processed: " + result.processed);
+        System.out.println("  Skipped: " + result.skipped);
+        System.out.println("  Extracted: " + result.extracted);
+        System.out.println("  Failed: " + result.failed);
+        System.out.println();
+    }
+
+    /**
+     * Failed messages are retried next run, so the checkpoint stops just before the first one
+     */
+    private void updateCheckpoint(UidCheckpointStore checkpoints, FolderPlan plan, RangeResult result) {
+        if (checkpoints == null) {
+            return;
+        }
+        long scannedUpTo;
+        if (result.firstFailedUid > 0) {
+            scannedUpTo = result.firstFailedUid - 1;
+        } else if (plan.uidNext > 0) {
+            scannedUpTo = plan.uidNext - 1;
+        } else {
+            scannedUpTo = plan.ranges.isEmpty() ? plan.lastUid : Math.max(plan.lastUid, plan.lastRangeUid());
+        }
+        checkpoints.update(plan.folderName, plan.uidValidity, scannedUpTo);
+        System.out.println("📌 UID checkpoint for " + plan.folderName + " set to " + scannedUpTo);
+        System.out.println();
+    }
+
+    /**
+     * Wait for a worker task, logging (not rethrowing) its failure
+     */
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            System.err.println("❌ Worker failed: " + cause.getClass().getSimpleName() + " - " + cause.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Log lines of one message, printed in one call at its end so the ranges processed in
+     * parallel do not interleave them
+     */
+    private static class MessageLog {
+        private final StringBuilder out = new StringBuilder();
+        private final StringBuilder err = new StringBuilder();
+
+        void out(String line) {
+            out.append(line).append(System.lineSeparator());
+        }
+
+        void err(String line) {
+            err.append(line).append(System.lineSeparator());
+        }
+
+        void trace(Throwable e) {
+            StringWriter trace = new StringWriter();
+            e.printStackTrace(new PrintWriter(trace));
+            err.append(trace);
+        }
+
+        void print() {
+            System.out.print(out);
+            if (err.length() > 0) {
+                System.err.print(err);
+            }
+        }
+    }
+
+    /**
+     * Search result of a folder, split in UID ranges processed in parallel
+     */
+    private static class FolderPlan {
+        final String folderName;
+        final List<long[]> ranges = new ArrayList<>();
+        long uidValidity = 0;
+        long uidNext = 0;
+        long lastUid = 0;
+
+        FolderPlan(String folderName) {
+            this.folderName = folderName;
+        }
+
+        long lastRangeUid() {
+            long[] last = ranges.get(ranges.size() - 1);
+            return last[last.length - 1];
+        }
+    }
+
+    /**
+     * Counters of one range (or, merged, of a whole folder)
+     */
+    private static class RangeResult {
+        int processed = 0;
+        int skipped = 0;
+        int extracted = 0;
+        int failed = 0;
+        long firstFailedUid = -1;
+
+        void markFailed(long uid) {
+            if (firstFailedUid < 0 || uid < firstFailedUid) {
+                firstFailedUid = uid;
+            }
+        }
+
+        void merge(RangeResult other) {
+            processed += other.processed;
+            skipped += other.skipped;
+            extracted += other.extracted;
+            failed += other.failed;
+            if (other.firstFailedUid > 0) {
+                markFailed(other.firstFailedUid);
+            }
+        }
     }
 
     /**
      * Extract job offer information using LLM (Ollama or OpenAI based on LOCAL_LLM config)
      */
     private JobOfferExtraction extractWithOllama(String from, String subject, Date sentDate,
-                                                 String content, String sourceFolder) {
+                                                 String content, String sourceFolder, MessageLog log) {
         try {
             String prompt = buildExtractionPrompt(from, subject, content);
-            System.out.println("    📝 Prompt length: " + prompt.length() + " chars");
-            System.out.println("    📝 Prompt preview (first 500 chars): " +
+            log.out("    📝 Prompt length: " + prompt.length() + " chars");
+            log.out("    📝 Prompt preview (first 500 chars): " +
                 prompt.substring(0, Math.min(500, prompt.length())));
             String jsonResponse;
 
             if (LOCAL_LLM) {
                 // ========== LOCAL OLLAMA LLM ==========
-                System.out.println("    🤖 Using LOCAL Ollama LLM");
+                log.out("    🤖 Using LOCAL Ollama LLM");
 
                 // Create options Map and wrap in Options class
                 Map<String, Object> optionsMap = new HashMap<>();
@@ -340,14 +675,15 @@ public class JobAlertEmailFoldersProcessor {
                 // raw=false: use default model template
                 // think=false: don't use thinking mode
                 OllamaResult result = null;
+                OLLAMA_SLOTS.acquire();
                 try {
-                    System.out.println("    🔄 Calling Ollama generate API...");
-                    System.out.println("    Model: " + ollamaModel);
-                    System.out.println("    Options: " + optionsMap);
-                    System.out.println("    Prompt length: " + prompt.length() + " chars");
+                    log.out("    🔄 Calling Ollama generate API...");
+                    log.out("    Model: " + ollamaModel);
+                    log.out("    Options: " + optionsMap);
+                    log.out("    Prompt length: " + prompt.length() + " chars");
 
                     result = ollamaAPI.generate(ollamaModel, prompt, false, false, options);
-                    System.out.println("    ✓ Ollama API call completed");
+                    log.out("    ✓ Ollama API call completed");
                 } catch (Exception e) {
                     // Check if it's a 404 error (model not found)
                     String errorMsg = e.getMessage() != null ? e.getMessage() : "";
@@ -356,37 +692,39 @@ public class JobAlertEmailFoldersProcessor {
                     if (errorMsg.contains("404") || errorCause.contains("404") ||
                         errorMsg.contains("not found") || errorCause.contains("not found")) {
 
-                        System.out.println("    ⚠️  Model '" + ollamaModel + "' not found locally (404)");
-                        System.out.println("    📥 Pulling model from Ollama library...");
-                        System.out.println("       (This may take several minutes depending on model size)");
+                        log.out("    ⚠️  Model '" + ollamaModel + "' not found locally (404)");
+                        log.out("    📥 Pulling model from Ollama library...");
+                        log.out("       (This may take several minutes depending on model size)");
 
                         // Pull the model and wait for completion
                         ollamaAPI.pullModel(ollamaModel);
 
-                        System.out.println("    ✓ Model downloaded successfully");
-                        System.out.println("    🤖 Retrying extraction with generate()...");
+                        log.out("    ✓ Model downloaded successfully");
+                        log.out("    🤖 Retrying extraction with generate()...");
 
                         // Retry the generation
                         result = ollamaAPI.generate(ollamaModel, prompt, false, false, options);
-                        System.out.println("    ✓ Retry successful");
+                        log.out("    ✓ Retry successful");
                     } else {
                         // Not a 404 error, log and rethrow
-                        System.err.println("    ❌ Ollama API error: " + e.getClass().getSimpleName());
-                        System.err.println("    Message: " + errorMsg);
+                        log.err("    ❌ Ollama API error: " + e.getClass().getSimpleName());
+                        log.err("    Message: " + errorMsg);
                         if (!errorCause.isEmpty()) {
-                            System.err.println("    Cause: " + errorCause);
+                            log.err("    Cause: " + errorCause);
                         }
                         throw e;
                     }
+                } finally {
+                    OLLAMA_SLOTS.release();
                 }
 
                 jsonResponse = result.getResponse();
 
             } else {
                 // ========== OPENAI API ==========
-                System.out.println("    ☁️  Using OpenAI API (gpt-4o-mini)");
-                System.out.println("    🔄 Calling OpenAI API...");
-                System.out.println("    Prompt length: " + prompt.length() + " chars");
+                log.out("    ☁️  Using OpenAI API (gpt-4o-mini)");
+                log.out("    🔄 Calling OpenAI API...");
+                log.out("    Prompt length: " + prompt.length() + " chars");
 
                 // Call OpenAI using the existing utility
                 jsonResponse = com.agty.utils.OpenAiRESTApiCaller.caller(
@@ -399,30 +737,30 @@ public class JobAlertEmailFoldersProcessor {
                     2000                   // Max tokens
                 );
 
-                System.out.println("    ✓ OpenAI API call completed");
+                log.out("    ✓ OpenAI API call completed");
             }
 
             // Debug: log response
-            System.out.println("    📝 LLM response length: " + jsonResponse.length() + " chars");
-            System.out.println("    📝 LLM response preview (first 300 chars): " +
+            log.out("    📝 LLM response length: " + jsonResponse.length() + " chars");
+            log.out("    📝 LLM response preview (first 300 chars): " +
                 jsonResponse.substring(0, Math.min(300, jsonResponse.length())));
 
             // Clean response
             jsonResponse = cleanJsonResponse(jsonResponse);
-            System.out.println("    🧹 Cleaned response length: " + jsonResponse.length() + " chars");
-            System.out.println("    🧹 Cleaned response preview (first 300 chars): " +
+            log.out("    🧹 Cleaned response length: " + jsonResponse.length() + " chars");
+            log.out("    🧹 Cleaned response preview (first 300 chars): " +
                 jsonResponse.substring(0, Math.min(300, jsonResponse.length())));
 
             // Parse JSON response
-            JobOfferExtraction extraction = mapper.readValue(jsonResponse, JobOfferExtraction.class);
+            JobOfferExtraction extraction = JsonMappers.reader(JobOfferExtraction.class).readValue(jsonResponse);
 
             // Debug: Check if extraction has any non-null values
             boolean hasData = extraction.getCompany() != null ||
                              extraction.getPositionTitle() != null ||
                              extraction.getLocation() != null;
             if (!hasData) {
-                System.out.println("    ⚠️  Warning: LLM returned all null values!");
-                System.out.println("    Full cleaned response: " + jsonResponse);
+                log.out("    ⚠️  Warning: LLM returned all null values!");
+                log.out("    Full cleaned response: " + jsonResponse);
             }
 
             // Set metadata
@@ -448,18 +786,18 @@ public class JobAlertEmailFoldersProcessor {
             return extraction;
 
         } catch (Exception e) {
-            System.err.println("    ❌ LLM extraction failed: " + e.getClass().getSimpleName());
-            System.err.println("    Error: " + (e.getMessage() != null ? e.getMessage() : "(no message)"));
+            log.err("    ❌ LLM extraction failed: " + e.getClass().getSimpleName());
+            log.err("    Error: " + (e.getMessage() != null ? e.getMessage() : "(no message)"));
 
             if (e.getCause() != null) {
-                System.err.println("    Caused by: " + e.getCause().getClass().getSimpleName());
+                log.err("    Caused by: " + e.getCause().getClass().getSimpleName());
                 if (e.getCause().getMessage() != null) {
-                    System.err.println("    Cause: " + e.getCause().getMessage());
+                    log.err("    Cause: " + e.getCause().getMessage());
                 }
             }
 
             if (e.getMessage() != null && e.getMessage().contains("JSON")) {
-                System.err.println("    💡 Hint: The LLM might not be returning valid JSON. Try a larger model.");
+                log.err("    💡 Hint: The LLM might not be returning valid JSON. Try a larger model.");
             }
 
             return null;
@@ -524,213 +862,99 @@ public class JobAlertEmailFoldersProcessor {
     /**
      * Connect to Gmail IMAP
      */
-    private Store connectToGmail() throws MessagingException {
+    private ImapStorePool createStorePool() {
         Properties props = new Properties();
         props.put("mail.store.protocol", "imaps");
         props.put("mail.imaps.host", "imap.gmail.com");
         props.put("mail.imaps.port", "993");
         props.put("mail.imaps.ssl.enable", "true");
 
-        Session session = Session.getInstance(props);
-        Store store = session.getStore("imaps");
-        store.connect("imap.gmail.com", username, password);
-
-        System.out.println("✓ Connected to Gmail IMAP");
-        return store;
+        System.out.println("✓ Gmail IMAP connection pool ready (max " + IMAP_MAX_CONNECTIONS_PER_ACCOUNT + " connections)");
+        return new ImapStorePool(props, "imap.gmail.com", username, password, IMAP_MAX_CONNECTIONS_PER_ACCOUNT);
     }
 
     /**
-     * Get raw email content WITHOUT converting HTML to text
-     * Used for link extraction by enrichers
+     * Get from address
      */
-    private String getRawEmailContent(Message message) throws Exception {
-        Object content = message.getContent();
-        if (content instanceof String) {
-            return (String) content;
-        } else if (content instanceof MimeMultipart) {
-            return getRawTextFromMimeMultipart((MimeMultipart) content);
-        }
-        return "";
+    private String getFrom(Message message) throws MessagingException {
+        if (message.getFrom() != null && message.getFrom().length > 0) {
+            return message.getFrom()[0].toString();
+        }
+        return "unknown";
     }
 
     /**
-     * Get email content and convert HTML to text if needed
+     * Number of existing extractions
      */
-    private String getEmailContent(Message message) throws Exception {
-        Object content = message.getContent();
-        if (content instanceof String) {
-            String contentStr = (String) content;
-            // Check if it's HTML and convert to text
-            if (contentStr.trim().startsWith("<")) {
-                Document doc = Jsoup.parse(contentStr);
-                return cleanTextContent(doc.text());
-            }
-            return cleanTextContent(contentStr);
-        } else if (content instanceof MimeMultipart) {
-            return cleanTextContent(getTextFromMimeMultipart((MimeMultipart) content));
+    private int countExtractions(RecordStore<JobOfferExtraction> extractionStore) {
+        try {
+            return extractionStore.size();
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not count existing extractions: " + e.getMessage());
+            return 0;
         }
-        return "";
     }
 
     /**
-     * Clean text content by removing invisible/special characters
-     * Removes: Zero Width Space, Zero Width Non-Joiner, Zero Width Joiner, etc.
+     * Stream the existing extractions, one at a time
      */
-    private String cleanTextContent(String text) {
-        if (text == null) {
-            return "";
-        }
-
-        return text
-            // Remove Zero Width Space (U+200B)
-            .replace("\u200B", "")
-            // Remove Zero Width Non-Joiner (U+200C)
-            .replace("\u200C", "")
-            // Remove Zero Width Joiner (U+200D)
-            .replace("\u200D", "")
-            // Remove Left-to-Right Mark (U+200E)
-            .replace("\u200E", "")
-            // Remove Right-to-Left Mark (U+200F)
-            .replace("\u200F", "")
-            // Remove Soft Hyphen (U+00AD)
-            .replace("\u00AD", "")
-            // Remove multiple spaces
-            .replaceAll("\\s+", " ")
-            // Trim
-            .trim();
+    private void forEachExistingExtraction(RecordStore<JobOfferExtraction> extractionStore, Consumer<JobOfferExtraction> action) {
+        try {
+            extractionStore.forEach(action);
+        } catch (IOException e) {
+            System.err.println("⚠️  Could not load existing extractions: " + e.getMessage());
+        }
     }
 
     /**
-     * Get raw content from MimeMultipart WITHOUT converting HTML to text
+     * Near-duplicate index of the existing extractions (their signatures only)
      */
-    private String getRawTextFromMimeMultipart(MimeMultipart mimeMultipart) throws Exception {
-        StringBuilder plainText = new StringBuilder();
-        StringBuilder htmlText = new StringBuilder();
-        int count = mimeMultipart.getCount();
-
-        // Extract both plain and HTML parts WITHOUT conversion
-        for (int i = 0; i < count; i++) {
-            BodyPart bodyPart = mimeMultipart.getBodyPart(i);
-            if (bodyPart.isMimeType("text/plain")) {
-                plainText.append(bodyPart.getContent());
-            } else if (bodyPart.isMimeType("text/html")) {
-                String html = (String) bodyPart.getContent();
-                htmlText.append(html);
-            } else if (bodyPart.getContent() instanceof MimeMultipart) {
-                String nested = getRawTextFromMimeMultipart((MimeMultipart) bodyPart.getContent());
-                if (nested.trim().startsWith("<")) {
-                    htmlText.append(nested);
-                } else {
-                    plainText.append(nested);
-                }
-            }
-        }
-
-        // Prefer HTML if available (for link extraction), otherwise plain text
-        if (htmlText.length() > 0) {
-            return htmlText.toString();
-        } else if (plainText.length() > 0) {
-            return plainText.toString();
-        }
-
-        return "";
-    }
-
-    private String getTextFromMimeMultipart(MimeMultipart mimeMultipart) throws Exception {
-        StringBuilder plainText = new StringBuilder();
-        StringBuilder htmlText = new StringBuilder();
-        int count = mimeMultipart.getCount();
-
-        // Try to extract both plain and HTML parts
-        for (int i = 0; i < count; i++) {
-            BodyPart bodyPart = mimeMultipart.getBodyPart(i);
-            if (bodyPart.isMimeType("text/plain")) {
-                plainText.append(bodyPart.getContent());
-            } else if (bodyPart.isMimeType("text/html")) {
-                String html = (String) bodyPart.getContent();
-                htmlText.append(html);
-            } else if (bodyPart.getContent() instanceof MimeMultipart) {
-                String nested = getTextFromMimeMultipart((MimeMultipart) bodyPart.getContent());
-                // Check if nested content looks like HTML
-                if (nested.trim().startsWith("<")) {
-                    htmlText.append(nested);
-                } else {
-                    plainText.append(nested);
-                }
-            }
-        }
-
-        // Prefer plain text if available, otherwise convert HTML to text
-        if (plainText.length() > 0) {
-            return plainText.toString();
-        } else if (htmlText.length() > 0) {
-            // Convert HTML to plain text using Jsoup
-            Document doc = Jsoup.parse(htmlText.toString());
-            return doc.text();
-        }
-
-        return "";
+    private JobOfferDeduplicator buildDeduplicator(RecordStore<JobOfferExtraction> extractionStore) {
+        JobOfferDeduplicator deduplicator = new JobOfferDeduplicator();
+        forEachExistingExtraction(extractionStore, deduplicator::addExisting);
+        return deduplicator;
     }
 
     /**
-     * Get from address
+     * Identity index of the already extracted messages: persisted next to the output file
+     * (PROCESSED_KEY_FILTER), or rebuilt from the extractions
      */
-    private String getFrom(Message message) throws MessagingException {
-        if (message.getFrom() != null && message.getFrom().length > 0) {
-            return message.getFrom()[0].toString();
+    private MessageIdentityIndex buildProcessedKeysIndex(RecordStore<JobOfferExtraction> extractionStore, String outputFilePath) {
+        Supplier<List<MessageIdentityIndex.Identity>> history = () -> {
+            List<MessageIdentityIndex.Identity> identities = new ArrayList<>();
+            forEachExistingExtraction(extractionStore, ext -> identities.add(
+                MessageIdentityIndex.identity(ext.getMessageId(), ext.getSubject(), ext.getFrom(), ext.getSentDate())));
+            return identities;
+        };
+        if (PROCESSED_KEY_FILTER) {
+            return MessageIdentityIndex.forHistoryFile(outputFilePath, history);
         }
-        return "unknown";
+        MessageIdentityIndex index = new MessageIdentityIndex();
+        history.get().forEach(index::add);
+        return index;
     }
 
     /**
-     * Load existing extractions
+     * Indexed store of the output file (see RecordStore), imported from it on the first run
      */
-    private List<JobOfferExtraction> loadExistingExtractions(String filePath) {
-        File file = new File(filePath);
-        if (!file.exists()) {
-            return new ArrayList<>();
-        }
-
+    private RecordStore<JobOfferExtraction> openStore(String filePath) {
         try {
-            // Wrap in ArrayList to make it mutable (Arrays.asList returns immutable list)
-            return new ArrayList<>(Arrays.asList(mapper.readValue(file, JobOfferExtraction[].class)));
+            return RecordStore.open(filePath, RecordSchemas.EXTRACTIONS, mapper);
         } catch (IOException e) {
-            System.err.println("⚠️  Could not load existing extractions: " + e.getMessage());
-            return new ArrayList<>();
-        }
-    }
-
-    /**
-     * Build set of processed keys
-     */
-    private Set<String> buildProcessedKeysSet(List<JobOfferExtraction> extractions) {
-        Set<String> keys = new HashSet<>();
-        for (JobOfferExtraction ext : extractions) {
-            String key = ext.getSubject() + "|" + ext.getFrom() + "|" + ext.getSentDate();
-            keys.add(key);
+            throw new RuntimeException("Cannot open the extractions store of " + filePath + ": " + e.getMessage(), e);
         }
-        return keys;
     }
 
     /**
-     * Save extractions to file
+     * Export the store to the output file (plain JSON array) and release it
      */
-    private void saveExtractions(List<JobOfferExtraction> extractions, String filePath, boolean verbose) {
+    private void closeStore(RecordStore<JobOfferExtraction> extractionStore, int count, String filePath) {
         try {
-            File file = new File(filePath);
-            File parentDir = file.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-            }
-
-            mapper.writeValue(file, extractions);
-
-            if (verbose) {
-                System.out.println("✓ Saved " + extractions.size() + " extractions to: " + filePath);
-                System.out.println("  File size: " + file.length() + " bytes");
-            }
+            extractionStore.close();
+            System.out.println("✓ Saved " + count + " extractions to: " + filePath);
+            System.out.println("  File size: " + new File(filePath).length() + " bytes");
         } catch (IOException e) {
-            System.err.println("❌ Error saving extractions: " + e.getMessage());
+            System.err.println("❌ Error exporting extractions store (kept in " + filePath + ".store.mv.db): " + e.getMessage());
         }
     }
 
@@ -0,0 +1,93 @@
+package com.agty.version_fetch_folders;
+
+import com.agty.JobOfferExtraction;
+import com.agty.dedup.NearDuplicateIndex;
+import com.agty.dedup.OfferSignature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.agty.utils.GlobalConfig.NEAR_DUPLICATE_EMAIL_MAX_DISTANCE;
+import static com.agty.utils.GlobalConfig.NEAR_DUPLICATE_MAX_DISTANCE;
+
+/**
+ * Near-duplicate detection of job offer extractions, in two stages:
+ * - before the LLM: an email whose signature (subject + start of the clean content, i.e. the
+ *   stored email_content_preview) is within NEAR_DUPLICATE_EMAIL_MAX_DISTANCE bits of an already
+ *   extracted one is not extracted again (re-sent alerts, same alert filed in two folders)
+ * - after the LLM: offers whose signature (title, company, location, description) is within
+ *   NEAR_DUPLICATE_MAX_DISTANCE bits share an offer_cluster_id, the signature of the first
+ *   extracted copy (same position from Cadremploi, APEC, LinkedIn, HelloWork...)
+ * Thread-safe: shared by the workers of a run.
+ */
+public class JobOfferDeduplicator {
+
+    private final NearDuplicateIndex emails = new NearDuplicateIndex(NEAR_DUPLICATE_EMAIL_MAX_DISTANCE);
+    private final NearDuplicateIndex offers = new NearDuplicateIndex(NEAR_DUPLICATE_MAX_DISTANCE);
+    private final List<String> emailSubjects = new ArrayList<>();  // by email index id
+
+    /**
+     * Index an extraction of the history (streamed from the store): only its signatures are kept
+     */
+    public synchronized void addExisting(JobOfferExtraction extraction) {
+        addEmail(extraction, extraction.getSubject(), extraction.getEmailContentPreview());
+        long signature = offerSignature(extraction);
+        if (signature != 0) {
+            offers.add(signature);
+        }
+    }
+
+    /**
+     * Subject of the already extracted near-identical email, or null if the email must be extracted
+     */
+    public synchronized String findDuplicateEmail(String subject, String content) {
+        long signature = OfferSignature.ofEmail(subject, content);
+        if (signature == 0) {
+            return null;
+        }
+        int id = emails.findNearest(signature);
+        return id >= 0 ? emailSubjects.get(id) : null;
+    }
+
+    /**
+     * Index a new extraction and set its offer_cluster_id
+     *
+     * @return true if the offer is a copy of an offer already extracted
+     */
+    public synchronized boolean add(JobOfferExtraction extraction, String subject, String content) {
+        addEmail(extraction, subject, content);
+        long signature = offerSignature(extraction);
+        if (signature == 0) {
+            extraction.setOfferClusterId(null);  // nothing to compare
+            return false;
+        }
+        int id = offers.add(signature);
+        extraction.setOfferClusterId(clusterId(id));
+        return offers.canonical(id) != id;
+    }
+
+    private synchronized void addEmail(JobOfferExtraction extraction, String subject, String content) {
+        // Digests list several offers in a shared template: never used to skip another email
+        if (Boolean.TRUE.equals(extraction.getIsMultiplePositions())) {
+            return;
+        }
+        long signature = OfferSignature.ofEmail(subject, content);
+        if (signature != 0) {
+            emails.add(signature);
+            emailSubjects.add(subject);
+        }
+    }
+
+    /**
+     * Offer signature, 0 for an offer without title, company, location nor description: it is
+     * not indexed and gets no offer_cluster_id, as in JobOpportunityExtractor
+     */
+    private static long offerSignature(JobOfferExtraction extraction) {
+        return OfferSignature.of(extraction.getPositionTitle(), extraction.getCompany(),
+                extraction.getLocation(), extraction.getDescription());
+    }
+
+    private String clusterId(int offerId) {
+        return "offer-" + Long.toHexString(offers.signature(offers.canonical(offerId)));
+    }
+}
@@ -0,0 +1,89 @@
+package com.agty.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * LSH banding index: every signature within maxDistance bits is found (no false negative),
+ * none beyond it, and clusters merge transitively
+ */
+class NearDuplicateIndexTest {
+
+    @Test
+    void findsEveryNeighbourWithinMaxDistanceAndNoneBeyond() {
+        Random random = new Random(7);
+        for (int maxDistance : new int[]{0, 2, 4, 8}) {
+            NearDuplicateIndex index = new NearDuplicateIndex(maxDistance);
+            long[] signatures = new long[3000];  // beyond the initial capacity of the arrays
+            for (int i = 0; i < signatures.length; i++) {
+                signatures[i] = random.nextLong();
+                assertEquals(i, index.add(signatures[i]));
+            }
+            for (int probe = 0; probe < 2000; probe++) {
+                long query = flipBits(signatures[random.nextInt(signatures.length)], random.nextInt(maxDistance + 3), random);
+                assertEquals(bruteForceNearest(signatures, query, maxDistance), index.findNearest(query),
+                        "maxDistance " + maxDistance + ", query " + Long.toHexString(query));
+            }
+        }
+    }
+
+    @Test
+    void nearDuplicatesShareTheFirstMemberAsCanonical() {
+        NearDuplicateIndex index = new NearDuplicateIndex(4);
+        long a = 0L;
+        long c = 0xFFL;                  // 8 bits from a: separate clusters
+        long b = 0x0FL;                  // 4 bits from both: merges them
+        int idA = index.add(a);
+        int idC = index.add(c);
+        assertEquals(idC, index.canonical(idC));
+
+        int idB = index.add(b);
+        assertEquals(idA, index.canonical(idB));
+        assertEquals(idA, index.canonical(idC));
+        assertEquals(a, index.signature(index.canonical(idC)));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void exactCopiesPointToTheFirstOne() {
+        NearDuplicateIndex index = new NearDuplicateIndex(4);
+        long signature = 0x123456789ABCDEFL;
+        int first = index.add(signature);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(first, index.canonical(index.add(signature)));
+        }
+        assertEquals(first, index.findNearest(signature ^ 0b101L));
+        assertEquals(-1, index.findNearest(~signature));
+    }
+
+    @Test
+    void maxDistanceIsBounded() {
+        assertThrows(IllegalArgumentException.class, () -> new NearDuplicateIndex(-1));
+        assertThrows(IllegalArgumentException.class, () -> new NearDuplicateIndex(13));
+    }
+
+    private static int bruteForceNearest(long[] signatures, long query, int maxDistance) {
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+        for (int i = 0; i < signatures.length; i++) {
+            int distance = OfferSignature.distance(signatures[i], query);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private static long flipBits(long signature, int count, Random random) {
+        long flipped = signature;
+        while (OfferSignature.distance(flipped, signature) < count) {
+            flipped ^= 1L << random.nextInt(64);
+        }
+        return flipped;
+    }
+}
@@ -0,0 +1,70 @@
+package com.agty.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SimHash signatures: copies of an offer are a few bits apart, different offers are not
+ */
+class OfferSignatureTest {
+
+    private static final String DESCRIPTION = "Pilotage de la transformation digitale, gestion des équipes "
+            + "infrastructure et développement, budget IT, relation avec les métiers et la direction générale.";
+
+    @Test
+    void emptyOfferHasNoSignature() {
+        assertEquals(0L, OfferSignature.of(null, null, null, null));
+        assertEquals(0L, OfferSignature.of("", " - ", "", null));  // no word of two letters or more
+        assertEquals(0L, OfferSignature.ofEmail(null, ""));
+    }
+
+    @Test
+    void caseAccentsAndPunctuationDoNotMatter() {
+        long a = OfferSignature.of("Développeur Java Sénior", "Société Générale", "Paris", null);
+        long b = OfferSignature.of("DEVELOPPEUR - java / senior", "societe generale", "PARIS", null);
+        assertEquals(a, b);
+    }
+
+    @Test
+    void singleLettersAreIgnored() {
+        assertEquals(OfferSignature.of("Directeur des SI", "Acme", "Lyon", null),
+                OfferSignature.of("Directeur des SI (H/F)", "Acme", "Lyon", null));
+    }
+
+    @Test
+    void copiesFromTwoPortalsAreNearDuplicates() {
+        long cadremploi = OfferSignature.of("DSI - Directeur des Systèmes d'Information H/F", "Groupe Acme",
+                "Paris", DESCRIPTION);
+        long apec = OfferSignature.of("Directeur des systèmes d'information (DSI)", "GROUPE ACME",
+                "Paris", DESCRIPTION + " Poste en CDI.");
+        assertTrue(OfferSignature.distance(cadremploi, apec) <= 4,
+                "distance " + OfferSignature.distance(cadremploi, apec));
+    }
+
+    @Test
+    void differentOffersAreFarApart() {
+        long dsi = OfferSignature.of("Directeur des Systèmes d'Information", "Groupe Acme", "Paris", DESCRIPTION);
+        long nurse = OfferSignature.of("Infirmier de bloc opératoire", "Clinique du Parc", "Marseille",
+                "Soins aux patients, gardes de nuit, travail en équipe pluridisciplinaire.");
+        assertTrue(OfferSignature.distance(dsi, nurse) > 12, "distance " + OfferSignature.distance(dsi, nurse));
+    }
+
+    @Test
+    void emailSignatureOnlyReadsTheStartOfTheContent() {
+        String start = "x".repeat(10) + " " + DESCRIPTION.repeat(5);
+        String content = start.substring(0, OfferSignature.EMAIL_CONTENT_CHARS);
+        assertEquals(OfferSignature.ofEmail("Nouvelle offre", content),
+                OfferSignature.ofEmail("Nouvelle offre", content + " footer, unsubscribe, 2024 privacy policy"));
+        assertNotEquals(OfferSignature.ofEmail("Nouvelle offre", content), OfferSignature.ofEmail("Nouvelle offre", null));
+    }
+
+    @Test
+    void distanceCountsDifferingBits() {
+        assertEquals(0, OfferSignature.distance(0x5L, 0x5L));
+        assertEquals(3, OfferSignature.distance(0b1011L, 0L));
+        assertEquals(64, OfferSignature.distance(0L, -1L));
+    }
+}
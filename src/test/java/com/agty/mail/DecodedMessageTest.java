@@ -0,0 +1,39 @@
+package com.agty.mail;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Text and links of a decoded body, the HTML parsed on first use
+ */
+class DecodedMessageTest {
+
+    private static final String HTML = "<html><body><p>Développeur​ Java  senior</p>"
+            + "<a href=\"https://www.apec.fr/offre/1\">Voir l'offre</a></body></html>";
+
+    @Test
+    void htmlGivesItsTextAndAnchors() {
+        DecodedMessage decoded = MimeMessageDecoder.decode(HTML);
+
+        assertEquals(HTML, decoded.getAllText());
+        assertEquals("Développeur Java senior Voir l'offre", decoded.getCleanText());
+        List<DecodedMessage.Link> links = decoded.getLinks();
+        assertEquals(1, links.size());
+        assertEquals("https://www.apec.fr/offre/1", links.get(0).getHref());
+        assertEquals("Voir l'offre", links.get(0).getText());
+        assertSame(links, decoded.getLinks(), "parsed once");
+    }
+
+    @Test
+    void plainTextGivesItsUrls() {
+        DecodedMessage decoded = MimeMessageDecoder.decode("Offre :  https://www.cadremploi.fr/emploi/2 \n");
+
+        assertEquals("Offre : https://www.cadremploi.fr/emploi/2", decoded.getCleanText());
+        assertEquals("https://www.cadremploi.fr/emploi/2", decoded.getLinks().get(0).getHref());
+        assertEquals("", decoded.getLinks().get(0).getText());
+    }
+}
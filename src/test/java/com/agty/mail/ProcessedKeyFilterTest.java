@@ -0,0 +1,135 @@
+package com.agty.mail;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Persisted Bloom filter + sorted key index: exact answers (no false negative, no false
+ * positive) across reopenings, growth, crashes and a damaged index
+ */
+class ProcessedKeyFilterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void answersAreExactAcrossReopeningsAndGrowth() throws IOException {
+        String history = new File(dir, "history.json").getPath();
+        Files.writeString(new File(history).toPath(), "[]");
+        // 3 runs of 30,000 keys: the filter grows past its initial capacity, the index is merged twice
+        for (int run = 0; run < 3; run++) {
+            try (ProcessedKeyFilter filter = ProcessedKeyFilter.forHistoryFile(history)) {
+                assertEquals(run * 30_000, filter.size());
+                for (int i = 0; i < run * 30_000; i += 7) {
+                    assertTrue(filter.contains(key(i)), key(i));
+                }
+                for (int i = run * 30_000; i < (run + 1) * 30_000; i++) {
+                    assertFalse(filter.contains(key(i)));
+                    filter.add(key(i));
+                    assertTrue(filter.contains(key(i)));
+                }
+            }
+        }
+        try (ProcessedKeyFilter filter = ProcessedKeyFilter.forHistoryFile(history)) {
+            for (int i = 0; i < 90_000; i++) {
+                assertTrue(filter.contains(key(i)), key(i));
+            }
+            for (int i = 90_000; i < 190_000; i++) {
+                assertFalse(filter.contains(key(i)), key(i));  // filter false positives are rejected by the index
+            }
+            filter.add(key(5));
+            assertEquals(90_000, filter.size());  // no duplicate
+        }
+    }
+
+    @Test
+    void keysLoggedAfterTheLastHeaderUpdateAreRecovered() throws IOException {
+        File bloom = new File(dir, "h.keys.bloom");
+        File log = new File(dir, "h.keys.log");
+        File index = new File(dir, "h.keys.idx");
+        try (ProcessedKeyFilter filter = new ProcessedKeyFilter(bloom, log, index)) {
+            filter.add("mid:<first@x>");
+        }
+        // Crash after the log write: neither the filter header nor the index know these keys
+        try (FileWriter writer = new FileWriter(log, StandardCharsets.UTF_8, true)) {
+            writer.write("mid:<second@x>\nsf:offre|a@b.fr\n");
+        }
+        try (ProcessedKeyFilter filter = new ProcessedKeyFilter(bloom, log, index)) {
+            assertTrue(filter.contains("mid:<first@x>"));
+            assertTrue(filter.contains("mid:<second@x>"));
+            assertTrue(filter.contains("sf:offre|a@b.fr"));
+            assertFalse(filter.contains("mid:<third@x>"));
+            assertEquals(3, filter.size());
+        }
+    }
+
+    @Test
+    void damagedIndexIsRebuiltFromTheLog() throws IOException {
+        File bloom = new File(dir, "h.keys.bloom");
+        File log = new File(dir, "h.keys.log");
+        File index = new File(dir, "h.keys.idx");
+        try (ProcessedKeyFilter filter = new ProcessedKeyFilter(bloom, log, index)) {
+            for (int i = 0; i < 1000; i++) {
+                filter.add(key(i));
+            }
+        }
+        try (ProcessedKeyFilter filter = new ProcessedKeyFilter(bloom, log, index)) {
+            assertTrue(filter.contains(key(999)));  // index merged with the log
+        }
+        try (RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+            file.setLength(file.length() - 10);
+        }
+        try (ProcessedKeyFilter filter = new ProcessedKeyFilter(bloom, log, index)) {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(filter.contains(key(i)), key(i));
+            }
+            assertFalse(filter.contains(key(1000)));
+        }
+    }
+
+    @Test
+    void foldedKeysAreCleaned() throws IOException {
+        try (ProcessedKeyFilter filter = new ProcessedKeyFilter(new File(dir, "k.bloom"), new File(dir, "k.log"), new File(dir, "k.idx"))) {
+            filter.add("mid:<a@x>\r\n <b@y>");
+            assertTrue(filter.contains("mid:<a@x>\r\n <b@y>"));
+        }
+        try (ProcessedKeyFilter filter = new ProcessedKeyFilter(new File(dir, "k.bloom"), new File(dir, "k.log"), new File(dir, "k.idx"))) {
+            assertTrue(filter.contains("mid:<a@x>\r\n <b@y>"));
+        }
+    }
+
+    @Test
+    void resetOnlyWhenTheHistoryIsGone() throws IOException {
+        String history = new File(dir, "emails.json").getPath();
+        File store = new File(history + ".store.mv.db");
+
+        Files.writeString(store.toPath(), "");  // history kept in its store only (no JSON export)
+        try (ProcessedKeyFilter filter = ProcessedKeyFilter.forHistoryFile(history)) {
+            filter.add("mid:<kept@x>");
+        }
+        try (ProcessedKeyFilter filter = ProcessedKeyFilter.forHistoryFile(history)) {
+            assertTrue(filter.contains("mid:<kept@x>"));
+        }
+
+        Files.delete(store.toPath());  // history deleted to start over
+        try (ProcessedKeyFilter filter = ProcessedKeyFilter.forHistoryFile(history)) {
+            assertTrue(filter.isEmpty());
+            assertFalse(filter.contains("mid:<kept@x>"));
+        }
+    }
+
+    private static String key(int i) {
+        return "mid:<" + Integer.toHexString(i * 0x9E3779B1) + "." + i + "@mail.example.com>";
+    }
+}
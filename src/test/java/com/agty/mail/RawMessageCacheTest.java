@@ -0,0 +1,52 @@
+package com.agty.mail;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Least recently used blobs are evicted below the size limit, with all their keys
+ */
+class RawMessageCacheTest {
+
+    private static final int BLOB_BYTES = 10_000;  // random bytes: gzip does not shrink them
+
+    @TempDir
+    File dir;
+
+    @Test
+    void evictionGoesBelowTheLimitAndDropsTheKeys() throws Exception {
+        RawMessageCache cache = new RawMessageCache(dir, 10 * BLOB_BYTES);
+        byte[][] raws = new byte[12][];
+        for (int i = 0; i < raws.length; i++) {
+            raws[i] = message(i);
+            cache.put(List.of("mid:<" + i + "@example.com>", "uid:INBOX|1|" + i), raws[i]);
+            Thread.sleep(2);
+            if (i >= 1) {
+                assertNotNull(cache.get(List.of("mid:<0@example.com>")), "recently read");
+            }
+        }
+
+        assertArrayEquals(raws[0], cache.get(List.of("uid:INBOX|1|0")));
+        assertArrayEquals(raws[11], cache.get(List.of("mid:<11@example.com>")));
+        assertNull(cache.get(List.of("mid:<1@example.com>")));
+        assertNull(cache.get(List.of("uid:INBOX|1|1")), "every key of an evicted blob goes");
+        String stats = cache.getStats();
+        int blobs = Integer.parseInt(stats.replaceAll(".* misses, (\\d+) blobs.*", "$1"));
+        assertTrue(blobs <= 9, stats);
+    }
+
+    private static byte[] message(int seed) {
+        byte[] raw = new byte[BLOB_BYTES];
+        new Random(seed).nextBytes(raw);
+        return raw;
+    }
+}
@@ -0,0 +1,99 @@
+package com.agty.scoring;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Aho-Corasick matcher: group masks against a naive substring search
+ */
+class MultiPatternMatcherTest {
+
+    @Test
+    void overlappingPatternsAreAllMatched() {
+        MultiPatternMatcher matcher = MultiPatternMatcher.builder()
+                .add("he", 0).add("she", 1).add("his", 2).add("hers", 3)
+                .build();
+
+        assertEquals(MultiPatternMatcher.bit(0) | MultiPatternMatcher.bit(1) | MultiPatternMatcher.bit(3),
+                matcher.match("ushers"));
+        assertEquals(0L, matcher.match("a quiet text, h-e"));
+    }
+
+    @Test
+    void patternReachedThroughFailureLinkIsMatched() {
+        // "abce" leaves the "abcd" branch: "bc" is only found through the failure link of "abc"
+        MultiPatternMatcher matcher = MultiPatternMatcher.builder().add("abcd", 0).add("bc", 1).build();
+
+        assertEquals(MultiPatternMatcher.bit(1), matcher.match("abce"));
+        assertEquals(MultiPatternMatcher.bit(0) | MultiPatternMatcher.bit(1), matcher.match("xabcd"));
+    }
+
+    @Test
+    void matchingIsCaseInsensitiveIncludingAccents() {
+        MultiPatternMatcher matcher = MultiPatternMatcher.builder()
+                .add("Développeur", 0).add("java", 1)
+                .build();
+
+        assertEquals(MultiPatternMatcher.bit(0) | MultiPatternMatcher.bit(1),
+                matcher.match("Offre : DÉVELOPPEUR JAVA senior"));
+    }
+
+    @Test
+    void samePatternInSeveralGroups() {
+        MultiPatternMatcher matcher = MultiPatternMatcher.builder().add("cdi", 4).add("CDI", 63).build();
+
+        assertEquals(MultiPatternMatcher.bit(4) | MultiPatternMatcher.bit(63), matcher.match("Poste en CDI"));
+    }
+
+    @Test
+    void partsAreMatchedAsConcatenated() {
+        MultiPatternMatcher matcher = MultiPatternMatcher.builder().add("job offer", 0).build();
+
+        assertEquals(MultiPatternMatcher.bit(0), matcher.match("new job", null, " offer"));
+        MultiPatternMatcher.Scanner scanner = matcher.scanner().feed("job ").feed("offer");
+        assertEquals(MultiPatternMatcher.bit(0), scanner.getMatched());
+        assertEquals(0L, scanner.reset().feed("offer").getMatched());
+    }
+
+    @Test
+    void invalidGroupIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MultiPatternMatcher.builder().add("x", 64));
+    }
+
+    @Test
+    void agreesWithNaiveSearchOnRandomTexts() {
+        Random random = new Random(42);
+        String alphabet = "abcAB é";
+        for (int round = 0; round < 200; round++) {
+            String[] patterns = new String[1 + random.nextInt(12)];
+            MultiPatternMatcher.Builder builder = MultiPatternMatcher.builder();
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = randomText(random, alphabet, 1 + random.nextInt(4));
+                builder.add(patterns[i], i);
+            }
+            MultiPatternMatcher matcher = builder.build();
+            for (int t = 0; t < 20; t++) {
+                String text = randomText(random, alphabet, random.nextInt(40));
+                long expected = 0;
+                for (int i = 0; i < patterns.length; i++) {
+                    if (text.toLowerCase().contains(patterns[i].toLowerCase())) {
+                        expected |= MultiPatternMatcher.bit(i);
+                    }
+                }
+                assertEquals(expected, matcher.match(text), () -> "text=" + text);
+            }
+        }
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,141 @@
+package com.agty.store;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Smile rows with content-addressed blobs
+ */
+class RecordCodecTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String LONG_BODY = "<p>Développeur Java senior, CDI à Paris.</p>".repeat(40);
+
+    private final RecordCodec codec = new RecordCodec(MAPPER, Set.of("body"));
+    private final Map<String, byte[]> blobs = new HashMap<>();
+
+    @Test
+    void longTextGoesToABlobAndComesBack() throws IOException {
+        Note note = new Note("mid:<1@example.com>", "Offre Java", LONG_BODY);
+        byte[] row = codec.encode(note, blobs::put);
+
+        assertEquals(1, blobs.size());
+        assertTrue(row.length < LONG_BODY.length() / 4, "row keeps the hash, not the text");
+        Note decoded = codec.decode(row, Note.class, Set.of(), blobs::get);
+        assertEquals(note, decoded);
+    }
+
+    @Test
+    void shortTextStaysInTheRow() throws IOException {
+        Note note = new Note("mid:<2@example.com>", "Offre Java", "Bonjour, une offre pour vous.");
+        byte[] row = codec.encode(note, blobs::put);
+
+        assertTrue(blobs.isEmpty());
+        assertEquals(note, codec.decode(row, Note.class, Set.of(), hash -> {
+            throw new AssertionError("no blob to read");
+        }));
+    }
+
+    @Test
+    void sameTextIsOneBlob() throws IOException {
+        codec.encode(new Note("mid:<3@example.com>", "Alerte APEC", LONG_BODY), blobs::put);
+        codec.encode(new Note("mid:<4@example.com>", "Alerte Cadremploi", LONG_BODY), blobs::put);
+        codec.encode(new Note("mid:<5@example.com>", "Autre", LONG_BODY + "!"), blobs::put);
+
+        assertEquals(2, blobs.size());
+    }
+
+    @Test
+    void skippedBlobFieldsAreNotRead() throws IOException {
+        Note note = new Note("mid:<6@example.com>", "Offre Java", LONG_BODY);
+        byte[] row = codec.encode(note, blobs::put);
+
+        Note decoded = codec.decode(row, Note.class, Set.of("body"), hash -> {
+            throw new AssertionError("skipped blob read");
+        });
+        assertEquals(note.id, decoded.id);
+        assertEquals(note.subject, decoded.subject);
+        assertNull(decoded.body);
+        assertNull(codec.decode(row, Note.class, Set.of("subject"), blobs::get).subject);
+    }
+
+    @Test
+    void jsonOfARowIsTheJsonOfTheRecord() throws IOException {
+        for (String body : new String[]{LONG_BODY, "court", null}) {
+            Note note = new Note("mid:<7@example.com>", "Offre Java", body);
+            byte[] row = codec.encode(note, blobs::put);
+
+            assertEquals(MAPPER.valueToTree(note), MAPPER.readTree(json(codec, row)));
+            RecordCodec withoutBlobs = new RecordCodec(MAPPER, Set.of());
+            byte[] plainRow = withoutBlobs.encode(note, (hash, text) -> {
+                throw new AssertionError("no blob field");
+            });
+            assertEquals(MAPPER.valueToTree(note), MAPPER.readTree(json(withoutBlobs, plainRow)));
+        }
+    }
+
+    @Test
+    void deflatedBlobsInflateBack() throws IOException {
+        byte[] text = LONG_BODY.getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = RecordCodec.deflate(text);
+
+        assertTrue(deflated.length < text.length / 4);
+        assertArrayEquals(text, RecordCodec.inflate(deflated));
+        assertArrayEquals(new byte[0], RecordCodec.inflate(RecordCodec.deflate(new byte[0])));
+        byte[] bufferSized = new byte[8192 * 3];  // output ending exactly on a buffer boundary
+        Arrays.fill(bufferSized, (byte) 'a');
+        assertArrayEquals(bufferSized, RecordCodec.inflate(RecordCodec.deflate(bufferSized)));
+        assertThrows(IOException.class, () -> RecordCodec.inflate(Arrays.copyOf(deflated, deflated.length / 2)));
+        assertThrows(IOException.class, () -> RecordCodec.inflate(text));
+    }
+
+    private String json(RecordCodec rowCodec, byte[] row) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+            rowCodec.writeJson(row, generator, blobs::get);
+        }
+        return out.toString();
+    }
+
+    static class Note {
+        public String id;
+        public String subject;
+        public String body;
+
+        Note() {
+        }
+
+        Note(String id, String subject, String body) {
+            this.id = id;
+            this.subject = subject;
+            this.body = body;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Note note && Objects.equals(id, note.id)
+                    && Objects.equals(subject, note.subject) && Objects.equals(body, note.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, subject, body);
+        }
+    }
+}
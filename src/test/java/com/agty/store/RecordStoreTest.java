@@ -0,0 +1,174 @@
+package com.agty.store;
+
+import com.agty.store.RecordCodecTest.Note;
+import com.agty.utils.GlobalConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Blobs of the store are deleted with their last reference; imports are all or nothing
+ */
+class RecordStoreTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final RecordStore.Schema<Note> NOTES = new RecordStore.Schema<>(
+            "notes", Note.class, note -> note.id, note -> null, note -> null, note -> null, note -> null, "body");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replacedBodiesAreDeletedSharedOnesKept() throws Exception {
+        String history = dir.resolve("notes.json").toString();
+        try (RecordStore<Note> store = RecordStore.open(history, NOTES, MAPPER)) {
+            store.put(new Note("a", "Alerte", body("x")));
+            store.put(new Note("b", "Alerte", body("x")));
+            assertEquals(1, blobCount(history));
+
+            store.put(new Note("a", "Alerte", body("y")));
+            assertEquals(2, blobCount(history), "x still used by b");
+            store.put(new Note("b", "Alerte", "court"));
+            assertEquals(1, blobCount(history));
+            assertEquals(body("y"), store.get("a").get(0).body);
+
+            store.put(new Note("a", "Alerte", body("y")));
+            assertEquals(1, blobCount(history), "same body written again");
+            assertEquals(body("y"), store.get("a").get(0).body);
+        }
+    }
+
+    @Test
+    void trimmedRowsReleaseTheirBlobs() throws Exception {
+        String history = dir.resolve("digests.json").toString();
+        try (RecordStore<Note> store = RecordStore.open(history, NOTES, MAPPER)) {
+            store.putAll(List.of(new Note("d", "Offre 1", body("1")), new Note("d", "Offre 2", body("2"))));
+            assertEquals(2, blobCount(history));
+
+            store.putAll(List.of(new Note("d", "Offre 1", body("1"))));
+            assertEquals(1, store.size());
+            assertEquals(1, blobCount(history));
+        }
+    }
+
+    @Test
+    void replaceAllKeepsOnlyTheBlobsOfTheNewRecords() throws Exception {
+        String history = dir.resolve("replaced.json").toString();
+        try (RecordStore<Note> store = RecordStore.open(history, NOTES, MAPPER)) {
+            store.putAll(List.of(new Note("a", "A", body("a")), new Note("b", "B", body("b"))));
+            store.replaceAll(List.of(new Note("b", "B", body("b")), new Note("c", "C", body("c"))));
+
+            assertEquals(2, store.size());
+            assertEquals(2, blobCount(history));
+            assertEquals(body("c"), store.get("c").get(0).body);
+        }
+    }
+
+    @Test
+    void importedRecordsReferenceTheirBlobs() throws Exception {
+        String history = dir.resolve("imported.json").toString();
+        MAPPER.writeValue(new File(history), List.of(
+                new Note("a", "A", body("shared")), new Note("b", "B", body("shared"))));
+        try (RecordStore<Note> store = RecordStore.open(history, NOTES, MAPPER)) {
+            assertEquals(2, store.size());
+            assertEquals(1, blobCount(history));
+
+            store.put(new Note("a", "A", "court"));
+            assertEquals(1, blobCount(history), "still used by b");
+            store.put(new Note("b", "B", "court"));
+            assertEquals(0, blobCount(history));
+        }
+        List<?> exported = MAPPER.readValue(Files.readString(Path.of(history)), List.class);
+        assertEquals(2, exported.size());
+    }
+
+    @Test
+    void interruptedImportLeavesTheStoreEmptyAndIsRedone() throws Exception {
+        String history = dir.resolve("interrupted.json").toString();
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2500; i++) {
+            json.append(MAPPER.writeValueAsString(new Note("n" + i, "Offre " + i, body(Integer.toString(i % 7))))).append(',');
+        }
+        Files.writeString(Path.of(history), json + "{\"id\": \"cut");
+        assertThrows(IOException.class, () -> RecordStore.open(history, NOTES, MAPPER));
+        assertEquals(0, count(history, "notes"), "no batch of the failed import kept");
+        assertEquals(0, count(history, "notes_blobs"));
+
+        Files.writeString(Path.of(history), json + "{\"id\": \"last\"}]");
+        try (RecordStore<Note> store = RecordStore.open(history, NOTES, MAPPER)) {
+            assertEquals(2501, store.size());
+            assertEquals(7, count(history, "notes_blobs"));
+        }
+    }
+
+    @Test
+    void failedReimportKeepsTheFormerContent() throws Exception {
+        String history = dir.resolve("reimported.json").toString();
+        MAPPER.writeValue(new File(history), List.of(new Note("a", "A", body("a")), new Note("b", "B", body("b"))));
+        try (RecordStore<Note> store = RecordStore.open(history, NOTES, MAPPER)) {
+            Files.writeString(Path.of(history), "[" + MAPPER.writeValueAsString(new Note("c", "C", body("c"))) + ", {\"id\": ");
+            assertThrows(IOException.class, store::importJson);
+            assertEquals(2, store.size());
+            assertEquals(2, blobCount(history));
+            assertEquals(body("a"), store.get("a").get(0).body);
+
+            MAPPER.writeValue(new File(history), List.of(new Note("c", "C", body("c"))));
+            assertEquals(1, store.importJson());
+            assertEquals(1, blobCount(history));
+            assertEquals(body("c"), store.get("c").get(0).body);
+        }
+    }
+
+    @Test
+    void jsonChangedOutsideTheStoreIsNotExportedOver() throws Exception {
+        String history = dir.resolve("edited.json").toString();
+        MAPPER.writeValue(new File(history), List.of(new Note("a", "A", "court")));
+        boolean exportJson = GlobalConfig.STORE_EXPORT_JSON;
+        GlobalConfig.STORE_EXPORT_JSON = true;
+        try {
+            try (RecordStore<Note> store = RecordStore.open(history, NOTES, MAPPER)) {
+                store.put(new Note("b", "B", "court"));
+            }
+            assertEquals(2, MAPPER.readValue(new File(history), List.class).size(), "exported at close");
+
+            MAPPER.writeValue(new File(history), List.of(new Note("x", "X", "édité à la main")));
+            try (RecordStore<Note> store = RecordStore.open(history, NOTES, MAPPER)) {
+                store.put(new Note("c", "C", "court"));
+            }
+            assertEquals(1, MAPPER.readValue(new File(history), List.class).size(), "edit kept");
+        } finally {
+            GlobalConfig.STORE_EXPORT_JSON = exportJson;
+        }
+    }
+
+    private static String body(String seed) {
+        return ("<p>Offre " + seed + " : Développeur Java senior, CDI à Paris.</p>").repeat(30);
+    }
+
+    private static int blobCount(String history) throws Exception {
+        return count(history, "notes_blobs");
+    }
+
+    private static int count(String history, String table) throws Exception {
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:h2:file:" + new File(history).getAbsolutePath() + ".store;AUTO_SERVER=TRUE", "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rows.next();
+            return rows.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.agty.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Token buckets of the LLM calls, and the 429 answers that calibrate them
+ */
+class LlmRateLimiterTest {
+
+    private static final String TPM_429 = "Rate limit reached for gpt-4o-mini in organization org-abc on tokens per min (TPM):"
+            + " Limit 60000, Used 60000, Requested 1200. Please try again in 218ms."
+            + " Visit https://platform.openai.com/account/rate-limits to learn more.";
+
+    @Test
+    void durationsAsWrittenByOpenAi() {
+        assertEquals(218, LlmRateLimiter.parseDuration("218ms"));
+        assertEquals(1500, LlmRateLimiter.parseDuration("1.5s"));
+        assertEquals(360_000, LlmRateLimiter.parseDuration("6m0s"));
+        assertEquals(3_723_500, LlmRateLimiter.parseDuration("1h2m3.5s"));
+        assertEquals(1, LlmRateLimiter.parseDuration("0.2ms"));
+    }
+
+    @Test
+    void backoffStaysBetweenHalfAndAllOfItsCap() {
+        for (int attempt = 0; attempt < 24; attempt++) {
+            long cap = Math.min(60_000, 1000L << Math.min(attempt, 16));
+            for (int i = 0; i < 200; i++) {
+                long delay = LlmRateLimiter.backoffMillis(attempt);
+                assertTrue(delay >= cap / 2 && delay <= cap, "attempt " + attempt + ": " + delay);
+            }
+        }
+    }
+
+    @Test
+    void retryDelayIsReadFromThe429Body() {
+        LlmRateLimiter limiter = new LlmRateLimiter(500, 200_000);
+
+        assertEquals(218, limiter.onRateLimited(TPM_429));
+        assertEquals(-1, limiter.onRateLimited("Rate limit reached on requests per min (RPM): Limit 500, Used 500"));
+        assertEquals(-1, limiter.onRateLimited("Internal server error"));
+        assertEquals(-1, limiter.onRateLimited(null));
+    }
+
+    @Test
+    void fullBucketDoesNotWaitThenTokensArePaced() throws InterruptedException {
+        LlmRateLimiter limiter = new LlmRateLimiter(6000, 60_000);
+
+        assertTrue(millisOf(() -> limiter.acquire(60_000)) < 200, "bucket starts full");
+        long paced = millisOf(() -> limiter.acquire(100));  // 100 tokens at 1000 tokens/s
+        assertTrue(paced >= 90 && paced < 2000, "waited " + paced + " ms");
+    }
+
+    @Test
+    void unusedTokensAreGivenBack() throws InterruptedException {
+        LlmRateLimiter limiter = new LlmRateLimiter(6000, 60_000);
+
+        limiter.acquire(60_000);
+        limiter.settle(60_000, 1000);
+        assertTrue(millisOf(() -> limiter.acquire(50_000)) < 200, "reserved but unused tokens are back");
+    }
+
+    @Test
+    void limitsAreLoweredToTheReportedOnes() throws InterruptedException {
+        LlmRateLimiter tokens = new LlmRateLimiter(6000, 1_000_000);
+        tokens.onRateLimited(TPM_429.replace(" Please try again in 218ms.", ""));
+        long tokenWait = millisOf(() -> tokens.acquire(100));  // empty bucket refilled at 60000/min, not 1000000/min
+        assertTrue(tokenWait >= 90 && tokenWait < 2000, "waited " + tokenWait + " ms");
+
+        LlmRateLimiter requests = new LlmRateLimiter(6000, 1_000_000);
+        requests.onRateLimited("Rate limit reached for gpt-4o-mini on requests per min (RPM): Limit 600, Used 600, Requested 1.");
+        long requestWait = millisOf(() -> requests.acquire(1));  // one request at 10/s
+        assertTrue(requestWait >= 90 && requestWait < 2000, "waited " + requestWait + " ms");
+    }
+
+    @Test
+    void everyCallerPausesForTheAskedDelay() throws InterruptedException {
+        LlmRateLimiter limiter = new LlmRateLimiter(6000, 1_000_000);
+        limiter.onRateLimited("Rate limit reached. Please try again in 150ms.");
+
+        long first = millisOf(() -> limiter.acquire(1));
+        assertTrue(first >= 140 && first < 2000, "waited " + first + " ms");
+        assertTrue(millisOf(() -> limiter.acquire(1)) < 100, "pause over");
+    }
+
+    private static long millisOf(Acquisition acquisition) throws InterruptedException {
+        long start = System.nanoTime();
+        acquisition.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private interface Acquisition {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,31 @@
+package com.agty.utils;
+
+import dev.ai4j.openai4j.OpenAiHttpException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Failures of an OpenAI call that are retried
+ */
+class OpenAiRESTApiCallerTest {
+
+    @Test
+    void rateLimitsServerErrorsAndNetworkFailuresAreRetried() {
+        assertTrue(OpenAiRESTApiCaller.isTransient(new OpenAiHttpException(429, "Rate limit reached")));
+        assertTrue(OpenAiRESTApiCaller.isTransient(new RuntimeException(new OpenAiHttpException(503, "Overloaded"))));
+        assertTrue(OpenAiRESTApiCaller.isTransient(new RuntimeException(new SocketTimeoutException("timeout"))));
+        assertTrue(OpenAiRESTApiCaller.isTransient(new RuntimeException(new IOException("Connection reset"))));
+    }
+
+    @Test
+    void requestErrorsAreNot() {
+        assertFalse(OpenAiRESTApiCaller.isTransient(new OpenAiHttpException(400, "Invalid request")));
+        assertFalse(OpenAiRESTApiCaller.isTransient(new OpenAiHttpException(401, "Incorrect API key")));
+        assertFalse(OpenAiRESTApiCaller.isTransient(new IllegalArgumentException("No model")));
+    }
+}
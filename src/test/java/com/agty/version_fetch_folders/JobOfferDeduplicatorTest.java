@@ -0,0 +1,70 @@
+package com.agty.version_fetch_folders;
+
+import com.agty.JobOfferExtraction;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Offer clusters and duplicate emails of the folder processor
+ */
+class JobOfferDeduplicatorTest {
+
+    @Test
+    void copiesShareTheClusterOfTheFirstOne() {
+        JobOfferDeduplicator deduplicator = new JobOfferDeduplicator();
+        JobOfferExtraction first = offer("Directeur des Systèmes d'Information", "Groupe Acme", "Paris");
+        JobOfferExtraction copy = offer("DIRECTEUR des systèmes d'information (H/F)", "GROUPE ACME", "Paris");
+
+        assertFalse(deduplicator.add(first, "Alerte Cadremploi", "Nouvelle offre DSI"));
+        assertTrue(deduplicator.add(copy, "Alerte APEC", "Une offre pour vous"));
+        assertNotNull(first.getOfferClusterId());
+        assertEquals(first.getOfferClusterId(), copy.getOfferClusterId());
+    }
+
+    @Test
+    void copiesOfHistoryOffersShareTheirCluster() {
+        JobOfferDeduplicator deduplicator = new JobOfferDeduplicator();
+        deduplicator.addExisting(offer("Directeur des Systèmes d'Information", "Groupe Acme", "Paris"));
+        JobOfferExtraction resent = offer("Directeur des Systèmes d'Information", "Groupe Acme", "Paris");
+        JobOfferExtraction copy = offer("DIRECTEUR des systèmes d'information (H/F)", "GROUPE ACME", "Paris");
+
+        assertTrue(deduplicator.add(resent, "Alerte Cadremploi", "Nouvelle offre DSI"));
+        assertTrue(deduplicator.add(copy, "Alerte APEC", "Une offre pour vous"));
+        assertEquals(resent.getOfferClusterId(), copy.getOfferClusterId());
+    }
+
+    @Test
+    void emptyOffersGetNoCluster() {
+        JobOfferDeduplicator deduplicator = new JobOfferDeduplicator();
+        deduplicator.addExisting(offer(null, null, null));
+        deduplicator.addExisting(offer(null, "", null));
+
+        JobOfferExtraction another = offer("", null, "");
+        assertFalse(deduplicator.add(another, "Alerte", "Contenu"));
+        assertNull(another.getOfferClusterId());
+    }
+
+    @Test
+    void resentEmailIsFoundBeforeExtraction() {
+        JobOfferDeduplicator deduplicator = new JobOfferDeduplicator();
+        JobOfferExtraction extraction = offer("Architecte Cloud", "Acme", "Lyon");
+        String content = "Bonjour, une nouvelle offre correspond à votre recherche : Architecte Cloud chez Acme à Lyon.";
+        deduplicator.add(extraction, "Votre alerte emploi", content);
+
+        assertEquals("Votre alerte emploi", deduplicator.findDuplicateEmail("Votre alerte emploi", content));
+        assertNull(deduplicator.findDuplicateEmail("Newsletter", "Les soldes commencent demain dans tous nos magasins."));
+    }
+
+    private static JobOfferExtraction offer(String title, String company, String location) {
+        JobOfferExtraction extraction = new JobOfferExtraction();
+        extraction.setPositionTitle(title);
+        extraction.setCompany(company);
+        extraction.setLocation(location);
+        return extraction;
+    }
+}